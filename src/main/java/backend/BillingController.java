@@ -3,6 +3,7 @@ package backend;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import backend.service.FaturamentoService;
+import backend.service.UserAuthService;
 import java.util.Map;
 import java.util.logging.Logger;
 import java.util.logging.Level;
@@ -13,22 +14,43 @@ import java.util.logging.Level;
 public class BillingController {
     private static final Logger logger = Logger.getLogger(BillingController.class.getName());
     private final FaturamentoService faturamentoService;
+    private final UserAuthService userAuthService;
 
     public BillingController() {
-        this.faturamentoService = new FaturamentoService();
+        this.faturamentoService = FaturamentoService.getInstance();
+        this.userAuthService = new UserAuthService();
     }
 
     /**
      * GET /api/billing/summary
-     * Retorna o resumo de faturamento do mês atual
-     * Mantido para compatibilidade com chamadas legadas
+     * Retorna o resumo de faturamento do mês atual do usuário autenticado (token JWT obrigatório)
      */
     @GetMapping("/summary")
-    public ResponseEntity<?> getBillingSummary() {
+    public ResponseEntity<?> getBillingSummary(@RequestHeader(value = "Authorization", required = false) String authHeader) {
         try {
             logger.info("GET /api/billing/summary");
-            Map<String, Object> resumo = faturamentoService.obterResumoMensal(null, null);
-            return ResponseEntity.ok(resumo);
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
+            return ResponseEntity.ok(faturamentoService.obterResumoMensal(userId, null, null));
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Erro ao obter resumo de faturamento", e);
+            return ResponseEntity.status(500).body(
+                Map.of("erro", "Erro ao calcular faturamento", "mensagem", e.getMessage())
+            );
+        }
+    }
+
+    /**
+     * GET /api/billing/summary/todos
+     * Resumo de faturamento do mês atual de todos os usuários (somente administradores)
+     */
+    @GetMapping("/summary/todos")
+    public ResponseEntity<?> getBillingSummaryTodos(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+        try {
+            logger.info("GET /api/billing/summary/todos");
+            ResponseEntity<?> negado = userAuthService.verificarAdmin(authHeader);
+            if (negado != null) return negado;
+            return ResponseEntity.ok(faturamentoService.obterResumoMensal(null, null));
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Erro ao obter resumo de faturamento", e);
             return ResponseEntity.status(500).body(
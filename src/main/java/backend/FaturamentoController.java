@@ -7,7 +7,11 @@ import org.springframework.http.HttpStatus;
 import backend.dto.Fatura;
 import backend.dto.ErrorResponse;
 import backend.service.FaturamentoService;
+import backend.service.UserAuthService;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -19,9 +23,11 @@ import java.util.logging.Level;
 public class FaturamentoController {
     private static final Logger logger = Logger.getLogger(FaturamentoController.class.getName());
     private final FaturamentoService faturamentoService;
+    private final UserAuthService userAuthService;
 
     public FaturamentoController() {
-        this.faturamentoService = new FaturamentoService();
+        this.faturamentoService = FaturamentoService.getInstance();
+        this.userAuthService = new UserAuthService();
     }
 
     /**
@@ -165,16 +171,18 @@ public class FaturamentoController {
 
     /**
      * GET /api/faturamento/resumo/mensal
-     * Retorna resumo de faturamento do mês/ano
+     * Retorna resumo de faturamento do mês/ano do usuário autenticado (token JWT obrigatório)
      */
     @GetMapping("/resumo/mensal")
     public ResponseEntity<?> obterResumoMensal(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
             @RequestParam(required = false) Integer mes,
             @RequestParam(required = false) Integer ano) {
         try {
             logger.info("GET /api/faturamento/resumo/mensal (mes=" + mes + ", ano=" + ano + ")");
-            Map<String, Object> resumo = faturamentoService.obterResumoMensal(mes, ano);
-            return ResponseEntity.ok(resumo);
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
+            return ResponseEntity.ok(faturamentoService.obterResumoMensal(userId, mes, ano));
             
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Erro ao obter resumo mensal", e);
@@ -184,6 +192,124 @@ public class FaturamentoController {
         }
     }
 
+    /**
+     * GET /api/faturamento/resumo/mensal/todos
+     * Resumo de faturamento do mês/ano de todos os usuários (somente administradores)
+     */
+    @GetMapping("/resumo/mensal/todos")
+    public ResponseEntity<?> obterResumoMensalTodos(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @RequestParam(required = false) Integer mes,
+            @RequestParam(required = false) Integer ano) {
+        try {
+            logger.info("GET /api/faturamento/resumo/mensal/todos (mes=" + mes + ", ano=" + ano + ")");
+            ResponseEntity<?> negado = userAuthService.verificarAdmin(authHeader);
+            if (negado != null) return negado;
+            return ResponseEntity.ok(faturamentoService.obterResumoMensal(mes, ano));
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Erro ao obter resumo mensal", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new ErrorResponse("Erro ao obter resumo", e.getMessage(), 500)
+            );
+        }
+    }
+
+    /**
+     * GET /api/faturamento/resumo/periodo?from=yyyy-MM-dd&to=yyyy-MM-dd&granularity=day|week|month
+     * Totais de vendas e consertos do usuário autenticado por período do intervalo (ex.: os 12 meses de um ano
+     * numa chamada). Token JWT obrigatório
+     */
+    @GetMapping("/resumo/periodo")
+    public ResponseEntity<?> obterResumoPeriodo(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @RequestParam String from,
+            @RequestParam String to,
+            @RequestParam(defaultValue = "day") String granularity) {
+        logger.info("GET /api/faturamento/resumo/periodo (from=" + from + ", to=" + to + ", granularity=" + granularity + ")");
+        String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+        if (userId == null) return UserAuthService.erroAutenticacao();
+        return resumoPeriodo(from, to,
+            (de, ate) -> faturamentoService.obterResumoPeriodo(userId, de, ate, granularity));
+    }
+
+    /**
+     * GET /api/faturamento/resumo/periodo/todos?from=yyyy-MM-dd&to=yyyy-MM-dd&granularity=day|week|month
+     * Totais de vendas e consertos de todos os usuários por período do intervalo. Somente administradores
+     */
+    @GetMapping("/resumo/periodo/todos")
+    public ResponseEntity<?> obterResumoPeriodoTodos(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @RequestParam String from,
+            @RequestParam String to,
+            @RequestParam(defaultValue = "day") String granularity) {
+        logger.info("GET /api/faturamento/resumo/periodo/todos (from=" + from + ", to=" + to + ", granularity=" + granularity + ")");
+        ResponseEntity<?> negado = userAuthService.verificarAdmin(authHeader);
+        if (negado != null) return negado;
+        return resumoPeriodo(from, to,
+            (de, ate) -> faturamentoService.obterResumoPeriodo(de, ate, granularity));
+    }
+
+    /**
+     * Consulta do resumo por período de um escopo (usuário ou todos)
+     */
+    private interface ConsultaPeriodo {
+        Map<String, Object> consultar(LocalDate de, LocalDate ate) throws Exception;
+    }
+
+    /**
+     * Interpreta from e to e responde com a consulta: 400 para data, intervalo ou granularidade inválidos
+     */
+    private ResponseEntity<?> resumoPeriodo(String from, String to, ConsultaPeriodo consulta) {
+        try {
+            LocalDate de;
+            LocalDate ate;
+            try {
+                de = LocalDate.parse(from);
+                ate = LocalDate.parse(to);
+            } catch (DateTimeParseException e) {
+                return ResponseEntity.badRequest().body(
+                    new ErrorResponse("Data inválida", "from e to devem estar no formato yyyy-MM-dd", 400)
+                );
+            }
+            return ResponseEntity.ok(consulta.consultar(de, ate));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Período inválido", e.getMessage(), 400)
+            );
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Erro ao obter resumo por período", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new ErrorResponse("Erro ao obter resumo", e.getMessage(), 500)
+            );
+        }
+    }
+
+    /**
+     * POST /api/faturamento/resumo/reconstruir
+     * Refaz os totais do resumo a partir dos dados gravados (recuperação). Somente administradores
+     */
+    @PostMapping("/resumo/reconstruir")
+    public ResponseEntity<?> reconstruirResumo(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+        try {
+            logger.info("POST /api/faturamento/resumo/reconstruir");
+            ResponseEntity<?> negado = userAuthService.verificarAdmin(authHeader);
+            if (negado != null) return negado;
+            Map<String, Object> resultado = new LinkedHashMap<>();
+            resultado.put("success", true);
+            resultado.put("message", "Totais do resumo reconstruídos");
+            resultado.putAll(faturamentoService.reconstruirResumo());
+            return ResponseEntity.ok(resultado);
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Erro ao reconstruir resumo", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new ErrorResponse("Erro ao reconstruir resumo", e.getMessage(), 500)
+            );
+        }
+    }
+
     /**
      * PATCH /api/faturamento/{id}/status
      * Atualiza apenas o status de uma fatura (pago, pendente, cancelado)
@@ -205,9 +331,7 @@ public class FaturamentoController {
                 );
             }
             
-            Fatura fatura = faturamentoService.obterFatura(id);
-            fatura.setStatus(status);
-            fatura = faturamentoService.atualizarFatura(id, fatura);
+            Fatura fatura = faturamentoService.atualizarStatus(id, status);
             logger.info("Status da fatura atualizado: " + id + " -> " + status);
             return ResponseEntity.ok(fatura);
             
@@ -0,0 +1,45 @@
+package backend;
+
+import backend.service.UserDataService;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Escreve respostas do tipo UserDataService.Transmissao direto no corpo HTTP,
+ * sem passar pelo conversor Jackson padrão (que serializaria o documento inteiro de uma vez).
+ * Registrado automaticamente pelo Spring Boot por ser um bean HttpMessageConverter
+ */
+@Component
+public class TransmissaoHttpMessageConverter extends AbstractHttpMessageConverter<UserDataService.Transmissao> {
+
+    public TransmissaoHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return UserDataService.Transmissao.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected UserDataService.Transmissao readInternal(Class<? extends UserDataService.Transmissao> clazz,
+                                                       HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Transmissão é somente de saída", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(UserDataService.Transmissao transmissao, HttpOutputMessage outputMessage) throws IOException {
+        transmissao.transmitir(outputMessage.getBody());
+    }
+}
@@ -2,11 +2,13 @@ package backend;
 
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.type.TypeReference;
+import org.springframework.http.MediaType;
 import backend.dto.ErrorResponse;
 import backend.service.UserAuthService;
+import backend.service.UserDataService;
+import backend.util.EtagUtil;
 import java.io.*;
 import java.util.*;
 import java.util.logging.Logger;
@@ -22,102 +24,40 @@ import java.util.logging.Level;
 public class UserDataControllerAuth {
     
     private static final Logger logger = Logger.getLogger(UserDataControllerAuth.class.getName());
-    private static final String DATA_DIR = "user_data";
-    private final ObjectMapper objectMapper = new ObjectMapper();
     private final UserAuthService userAuthService;
+    private final UserDataService userDataService;
     
     public UserDataControllerAuth() {
         this.userAuthService = new UserAuthService();
-        try {
-            new File(DATA_DIR).mkdirs();
-            logger.info("Diretório de dados user_data criado/verificado");
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Erro ao criar diretório de dados", e);
-        }
-    }
-
-    /**
-     * Extrai e valida o token JWT do header Authorization
-     * @return userId se válido, null se inválido
-     */
-    private String extrairUserId(String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            logger.warning("Token não fornecido no header Authorization");
-            return null;
-        }
-
-        String token = authHeader.substring(7);
-        if (!userAuthService.validarToken(token)) {
-            logger.warning("Token inválido ou expirado");
-            return null;
-        }
-
-        String userId = userAuthService.extrairUserId(token);
-        logger.info("Acesso autorizado para usuário: " + userId);
-        return userId;
+        this.userDataService = UserDataService.getInstance();
     }
 
     /**
-     * Resposta de erro de autenticação
+     * 304 Not Modified: a versão em memória não mudou, nada é lido do disco nem serializado
      */
-    private ResponseEntity<?> erroAutenticacao() {
-        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
-            new ErrorResponse(
-                "Autenticação requerida",
-                "Adicione um token válido no header: Authorization: Bearer {token}",
-                401
-            )
-        );
-    }
-    
-    private File getUserFile(String userId) {
-        return new File(DATA_DIR, userId + ".json");
-    }
-    
-    private Map<String, Object> loadUserData(String userId) throws IOException {
-        try {
-            File file = getUserFile(userId);
-            if (file.exists()) {
-                logger.info("Carregando dados do usuário: " + userId);
-                return objectMapper.readValue(file, new TypeReference<Map<String, Object>>() {});
-            }
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Erro ao carregar dados do usuário: " + userId, e);
-            throw e;
-        }
-        // Retornar estrutura padrão
-        Map<String, Object> data = new HashMap<>();
-        data.put("ordens", new ArrayList<>());
-        data.put("vendas", new ArrayList<>());
-        data.put("produtos", new ArrayList<>());
-        return data;
+    private ResponseEntity<?> naoModificado(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
     }
     
-    private void saveUserData(String userId, Map<String, Object> data) throws IOException {
-        try {
-            File file = getUserFile(userId);
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, data);
-            logger.info("Dados salvos para usuário: " + userId);
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Erro ao salvar dados do usuário: " + userId, e);
-            throw e;
-        }
-    }
-
     // ========== GET ALL DATA ==========
     /**
      * GET /api/user-data
      * Retorna todos os dados do usuário autenticado
      */
     @GetMapping
-    public ResponseEntity<?> getAllData(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+    public ResponseEntity<?> getAllData(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                        @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
         try {
             logger.info("GET /api/user-data");
-            String userId = extrairUserId(authHeader);
-            if (userId == null) return erroAutenticacao();
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
 
-            Map<String, Object> data = loadUserData(userId);
-            return ResponseEntity.ok(data);
+            // Transmitido direto para a resposta: a memória por requisição não cresce com o tamanho do documento
+            // (ver TransmissaoHttpMessageConverter)
+            String etag = userDataService.etag(userId, null);
+            if (EtagUtil.corresponde(ifNoneMatch, etag)) return naoModificado(etag);
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON).body(userDataService.abrirTransmissao(userId));
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao obter dados", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
@@ -128,14 +68,22 @@ public class UserDataControllerAuth {
     
     // ========== ORDENS ==========
     @GetMapping("/ordens")
-    public ResponseEntity<?> getOrdens(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+    public ResponseEntity<?> getOrdens(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                       @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+                                       @RequestParam Map<String, String> params) {
         try {
             logger.info("GET /api/user-data/ordens");
-            String userId = extrairUserId(authHeader);
-            if (userId == null) return erroAutenticacao();
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
 
-            Map<String, Object> data = loadUserData(userId);
-            return ResponseEntity.ok(data.getOrDefault("ordens", new ArrayList<>()));
+            String etag = EtagUtil.comParametros(userDataService.etag(userId, "ordens"), params);
+            if (EtagUtil.corresponde(ifNoneMatch, etag)) return naoModificado(etag);
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache())
+                .body(userDataService.consultar(userId, "ordens", params));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Parâmetros de consulta inválidos", e.getMessage(), 400)
+            );
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao obter ordens", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
@@ -143,18 +91,113 @@ public class UserDataControllerAuth {
             );
         }
     }
+    /**
+     * GET /api/user-data/ordens/consulta?status=&cliente=&de=&ate=
+     * Consulta ordens pelos índices (ex.: abertas de um cliente, aguardando peça nesta semana)
+     */
+    @GetMapping("/ordens/consulta")
+    public ResponseEntity<?> consultarOrdens(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                             @RequestParam Map<String, String> params) {
+        try {
+            logger.info("GET /api/user-data/ordens/consulta");
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
+
+            return ResponseEntity.ok(userDataService.consultarOrdens(userId, params));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Parâmetros de consulta inválidos", e.getMessage(), 400)
+            );
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Erro ao consultar ordens", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new ErrorResponse("Erro ao consultar ordens", e.getMessage(), 500)
+            );
+        }
+    }
+
+    /**
+     * GET /api/user-data/ordens/historico?de=yyyy-MM&ate=yyyy-MM
+     * Ordens arquivadas (fechadas e antigas), lidas dos segmentos mensais do período
+     */
+    @GetMapping("/ordens/historico")
+    public ResponseEntity<?> historicoOrdens(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                             @RequestParam Map<String, String> params) {
+        try {
+            logger.info("GET /api/user-data/ordens/historico");
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
+
+            return ResponseEntity.ok(userDataService.historicoOrdens(userId, params));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Parâmetros de consulta inválidos", e.getMessage(), 400)
+            );
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Erro ao obter histórico de ordens", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new ErrorResponse("Erro ao obter histórico de ordens", e.getMessage(), 500)
+            );
+        }
+    }
+
+    /**
+     * POST /api/user-data/ordens/arquivar
+     * Arquiva agora as ordens fechadas e antigas do usuário (o mesmo que o arquivamento periódico faz)
+     */
+    @PostMapping("/ordens/arquivar")
+    public ResponseEntity<?> arquivarOrdens(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+        try {
+            logger.info("POST /api/user-data/ordens/arquivar");
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
+
+            int arquivadas = userDataService.arquivarOrdensAgora(userId);
+            return ResponseEntity.ok(Map.of("success", true, "message", "Ordens arquivadas", "arquivadas", arquivadas));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Erro ao arquivar ordens", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new ErrorResponse("Erro ao arquivar ordens", e.getMessage(), 500)
+            );
+        }
+    }
+
+    /**
+     * GET /api/user-data/search?q=&colecao=&limit=
+     * Busca textual em ordens (modelo, defeito) e produtos (nome), sem acentos e por prefixo
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> buscar(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                    @RequestParam(required = false) String q,
+                                    @RequestParam(required = false) String colecao,
+                                    @RequestParam(required = false) String limit) {
+        try {
+            logger.info("GET /api/user-data/search");
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
+
+            return ResponseEntity.ok(userDataService.buscar(userId, q, colecao, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Parâmetros de busca inválidos", e.getMessage(), 400)
+            );
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Erro na busca", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new ErrorResponse("Erro na busca", e.getMessage(), 500)
+            );
+        }
+    }
     
     @PostMapping("/ordens")
     public ResponseEntity<?> saveOrdens(@RequestHeader(value = "Authorization", required = false) String authHeader,
                                        @RequestBody List<Map<String, Object>> ordens) {
         try {
             logger.info("POST /api/user-data/ordens");
-            String userId = extrairUserId(authHeader);
-            if (userId == null) return erroAutenticacao();
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
 
-            Map<String, Object> data = loadUserData(userId);
-            data.put("ordens", ordens);
-            saveUserData(userId, data);
+            userDataService.substituirColecao(userId, "ordens", ordens);
             return ResponseEntity.ok(Map.of("success", true, "message", "Ordens salvas com sucesso", "quantidade", ordens.size()));
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao salvar ordens", e);
@@ -169,20 +212,15 @@ public class UserDataControllerAuth {
                                      @RequestBody Map<String, Object> ordem) {
         try {
             logger.info("POST /api/user-data/ordens/add");
-            String userId = extrairUserId(authHeader);
-            if (userId == null) return erroAutenticacao();
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
 
             if (ordem == null || ordem.isEmpty()) {
                 return ResponseEntity.badRequest().body(
                     new ErrorResponse("Ordem inválida", "Os dados da ordem são obrigatórios", 400)
                 );
             }
-            Map<String, Object> data = loadUserData(userId);
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> ordens = (List<Map<String, Object>>) data.getOrDefault("ordens", new ArrayList<>());
-            ordens.add(ordem);
-            data.put("ordens", ordens);
-            saveUserData(userId, data);
+            userDataService.adicionar(userId, "ordens", ordem);
             return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("success", true, "message", "Ordem adicionada"));
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao adicionar ordem", e);
@@ -194,14 +232,22 @@ public class UserDataControllerAuth {
     
     // ========== VENDAS ==========
     @GetMapping("/vendas")
-    public ResponseEntity<?> getVendas(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+    public ResponseEntity<?> getVendas(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                       @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+                                       @RequestParam Map<String, String> params) {
         try {
             logger.info("GET /api/user-data/vendas");
-            String userId = extrairUserId(authHeader);
-            if (userId == null) return erroAutenticacao();
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
 
-            Map<String, Object> data = loadUserData(userId);
-            return ResponseEntity.ok(data.getOrDefault("vendas", new ArrayList<>()));
+            String etag = EtagUtil.comParametros(userDataService.etag(userId, "vendas"), params);
+            if (EtagUtil.corresponde(ifNoneMatch, etag)) return naoModificado(etag);
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache())
+                .body(userDataService.consultar(userId, "vendas", params));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Parâmetros de consulta inválidos", e.getMessage(), 400)
+            );
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao obter vendas", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
@@ -215,12 +261,10 @@ public class UserDataControllerAuth {
                                        @RequestBody List<Map<String, Object>> vendas) {
         try {
             logger.info("POST /api/user-data/vendas");
-            String userId = extrairUserId(authHeader);
-            if (userId == null) return erroAutenticacao();
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
 
-            Map<String, Object> data = loadUserData(userId);
-            data.put("vendas", vendas);
-            saveUserData(userId, data);
+            userDataService.substituirColecao(userId, "vendas", vendas);
             return ResponseEntity.ok(Map.of("success", true, "message", "Vendas salvas com sucesso", "quantidade", vendas.size()));
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao salvar vendas", e);
@@ -235,20 +279,15 @@ public class UserDataControllerAuth {
                                      @RequestBody Map<String, Object> venda) {
         try {
             logger.info("POST /api/user-data/vendas/add");
-            String userId = extrairUserId(authHeader);
-            if (userId == null) return erroAutenticacao();
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
 
             if (venda == null || venda.isEmpty()) {
                 return ResponseEntity.badRequest().body(
                     new ErrorResponse("Venda inválida", "Os dados da venda são obrigatórios", 400)
                 );
             }
-            Map<String, Object> data = loadUserData(userId);
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> vendas = (List<Map<String, Object>>) data.getOrDefault("vendas", new ArrayList<>());
-            vendas.add(venda);
-            data.put("vendas", vendas);
-            saveUserData(userId, data);
+            userDataService.adicionar(userId, "vendas", venda);
             return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("success", true, "message", "Venda adicionada"));
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao adicionar venda", e);
@@ -260,14 +299,22 @@ public class UserDataControllerAuth {
     
     // ========== PRODUTOS ==========
     @GetMapping("/produtos")
-    public ResponseEntity<?> getProdutos(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+    public ResponseEntity<?> getProdutos(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                       @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+                                       @RequestParam Map<String, String> params) {
         try {
             logger.info("GET /api/user-data/produtos");
-            String userId = extrairUserId(authHeader);
-            if (userId == null) return erroAutenticacao();
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
 
-            Map<String, Object> data = loadUserData(userId);
-            return ResponseEntity.ok(data.getOrDefault("produtos", new ArrayList<>()));
+            String etag = EtagUtil.comParametros(userDataService.etag(userId, "produtos"), params);
+            if (EtagUtil.corresponde(ifNoneMatch, etag)) return naoModificado(etag);
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache())
+                .body(userDataService.consultar(userId, "produtos", params));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Parâmetros de consulta inválidos", e.getMessage(), 400)
+            );
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao obter produtos", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
@@ -281,12 +328,10 @@ public class UserDataControllerAuth {
                                          @RequestBody List<Map<String, Object>> produtos) {
         try {
             logger.info("POST /api/user-data/produtos");
-            String userId = extrairUserId(authHeader);
-            if (userId == null) return erroAutenticacao();
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
 
-            Map<String, Object> data = loadUserData(userId);
-            data.put("produtos", produtos);
-            saveUserData(userId, data);
+            userDataService.substituirColecao(userId, "produtos", produtos);
             return ResponseEntity.ok(Map.of("success", true, "message", "Produtos salvos com sucesso", "quantidade", produtos.size()));
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao salvar produtos", e);
@@ -301,20 +346,15 @@ public class UserDataControllerAuth {
                                        @RequestBody Map<String, Object> produto) {
         try {
             logger.info("POST /api/user-data/produtos/add");
-            String userId = extrairUserId(authHeader);
-            if (userId == null) return erroAutenticacao();
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
 
             if (produto == null || produto.isEmpty()) {
                 return ResponseEntity.badRequest().body(
                     new ErrorResponse("Produto inválido", "Os dados do produto são obrigatórios", 400)
                 );
             }
-            Map<String, Object> data = loadUserData(userId);
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> produtos = (List<Map<String, Object>>) data.getOrDefault("produtos", new ArrayList<>());
-            produtos.add(produto);
-            data.put("produtos", produtos);
-            saveUserData(userId, data);
+            userDataService.adicionar(userId, "produtos", produto);
             return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("success", true, "message", "Produto adicionado"));
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao adicionar produto", e);
@@ -324,22 +364,121 @@ public class UserDataControllerAuth {
         }
     }
     
+    // ========== REGISTRO INDIVIDUAL ==========
+    /**
+     * POST /api/user-data/{ordens|vendas|produtos}/bulk
+     * Inclusão em lote (array JSON ou NDJSON) numa única gravação, com resultado por item
+     */
+    @PostMapping("/{colecao:ordens|vendas|produtos}/bulk")
+    public ResponseEntity<?> addLote(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                     @RequestHeader(value = "Content-Type", required = false) String contentType,
+                                     @PathVariable String colecao, InputStream corpo) {
+        try {
+            logger.info("POST /api/user-data/" + colecao + "/bulk");
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
+
+            Map<String, Object> resumo = userDataService.adicionarLote(userId, colecao, corpo, contentType);
+            // 201 se algum registro foi incluído; os itens recusados vêm em "resultados"
+            HttpStatus status = ((Number) resumo.get("criados")).longValue() > 0 ? HttpStatus.CREATED : HttpStatus.BAD_REQUEST;
+            return ResponseEntity.status(status).body(resumo);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Lote inválido", e.getMessage(), 400)
+            );
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Erro ao incluir lote", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new ErrorResponse("Erro ao incluir lote", e.getMessage(), 500)
+            );
+        }
+    }
+
+    /**
+     * PATCH /api/user-data/{ordens|vendas|produtos}/{id}
+     * Altera apenas os campos enviados de um registro
+     */
+    @PatchMapping("/{colecao:ordens|vendas|produtos}/{id}")
+    public ResponseEntity<?> patchRegistro(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                           @PathVariable String colecao, @PathVariable String id,
+                                           @RequestBody Map<String, Object> campos) {
+        try {
+            logger.info("PATCH /api/user-data/" + colecao + "/" + id);
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
+
+            if (campos == null || campos.isEmpty()) {
+                return ResponseEntity.badRequest().body(
+                    new ErrorResponse("Alteração inválida", "Informe os campos a alterar", 400)
+                );
+            }
+            Map<String, Object> registro = userDataService.atualizarRegistro(userId, colecao, id, campos);
+            if (registro == null) return registroNaoEncontrado(colecao, id);
+            return ResponseEntity.ok(registro);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Alteração inválida", e.getMessage(), 400)
+            );
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Erro ao alterar registro", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new ErrorResponse("Erro ao alterar registro", e.getMessage(), 500)
+            );
+        }
+    }
+
+    /**
+     * DELETE /api/user-data/{ordens|vendas|produtos}/{id}
+     * Remove um registro
+     */
+    @DeleteMapping("/{colecao:ordens|vendas|produtos}/{id}")
+    public ResponseEntity<?> deleteRegistro(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                            @PathVariable String colecao, @PathVariable String id) {
+        try {
+            logger.info("DELETE /api/user-data/" + colecao + "/" + id);
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
+
+            if (!userDataService.removerRegistro(userId, colecao, id)) return registroNaoEncontrado(colecao, id);
+            return ResponseEntity.ok(Map.of("success", true, "message", "Registro removido"));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Erro ao remover registro", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                new ErrorResponse("Erro ao remover registro", e.getMessage(), 500)
+            );
+        }
+    }
+
+    private ResponseEntity<?> registroNaoEncontrado(String colecao, String id) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+            new ErrorResponse("Registro não encontrado", "Nenhum registro com id " + id + " em " + colecao, 404)
+        );
+    }
+
     // ========== SYNC (salvar tudo de uma vez) ==========
     @PostMapping("/sync")
     public ResponseEntity<?> syncData(@RequestHeader(value = "Authorization", required = false) String authHeader,
                                      @RequestBody Map<String, Object> allData) {
         try {
             logger.info("POST /api/user-data/sync");
-            String userId = extrairUserId(authHeader);
-            if (userId == null) return erroAutenticacao();
+            String userId = userAuthService.extrairUserIdDoHeader(authHeader);
+            if (userId == null) return UserAuthService.erroAutenticacao();
 
             if (allData == null || allData.isEmpty()) {
                 return ResponseEntity.badRequest().body(
                     new ErrorResponse("Dados vazios", "Nenhum dado para sincronizar", 400)
                 );
             }
-            saveUserData(userId, allData);
+            if (allData.containsKey("alteracoes") || allData.containsKey("removidos")) {
+                // Sincronização incremental: só o que mudou desde "revisao", nos dois sentidos
+                return ResponseEntity.ok(userDataService.sincronizarDelta(userId, allData));
+            }
+            userDataService.substituirDocumento(userId, allData);
             return ResponseEntity.ok(Map.of("success", true, "message", "Dados sincronizados com sucesso. Seus dados estão disponíveis em qualquer dispositivo."));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Sincronização inválida", e.getMessage(), 400)
+            );
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao sincronizar dados", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
@@ -0,0 +1,86 @@
+package backend.dto;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Ordem de serviço (coleção "ordens"). Valores em centavos; campos não listados ficam nos excedentes
+ */
+public class Ordem extends Registro {
+    private static final Logger logger = Logger.getLogger(Ordem.class.getName());
+    public static final String COLECAO = "ordens";
+
+    private static final Campos<Ordem> CAMPOS = new Campos<Ordem>()
+        .texto("nomeCliente", o -> o.nomeCliente, (o, v) -> o.nomeCliente = v)
+        .texto("cliente", o -> o.cliente, (o, v) -> o.cliente = v)
+        .texto("documentoCliente", o -> o.documentoCliente, (o, v) -> o.documentoCliente = v)
+        .texto("telefoneCliente", o -> o.telefoneCliente, (o, v) -> o.telefoneCliente = v)
+        .textoComum("modeloAparelho", o -> o.modeloAparelho, (o, v) -> o.modeloAparelho = v)
+        .texto("defeitoApresentado", o -> o.defeitoApresentado, (o, v) -> o.defeitoApresentado = v)
+        .textoComum("status", o -> o.status, (o, v) -> o.status = v)
+        .texto("dataEntrada", o -> o.dataEntrada, (o, v) -> o.dataEntrada = v)
+        .texto("observacao", o -> o.observacao, (o, v) -> o.observacao = v)
+        .dinheiro("valorConserto", o -> o.valorConserto, (o, v) -> o.valorConserto = v)
+        .dinheiro("valor", o -> o.valor, (o, v) -> o.valor = v)
+        .comRevisao();
+
+    private String nomeCliente;
+    private String cliente;
+    private String documentoCliente;
+    private String telefoneCliente;
+    private String modeloAparelho;
+    private String defeitoApresentado;
+    private String status;
+    private String dataEntrada;
+    private String observacao;
+    private long valorConserto = AUSENTE;
+    private long valor = AUSENTE;
+
+    @Override
+    protected Campos<?> campos() {
+        return CAMPOS;
+    }
+
+    public String getNomeCliente() { return nomeCliente; }
+    public String getDocumentoCliente() { return documentoCliente; }
+    public String getTelefoneCliente() { return telefoneCliente; }
+    public String getModeloAparelho() { return modeloAparelho; }
+    public String getDefeitoApresentado() { return defeitoApresentado; }
+    public String getStatus() { return status; }
+
+    /**
+     * @return valor do conserto em centavos, ou AUSENTE
+     */
+    public long getValorConsertoCentavos() { return valorConserto; }
+
+    /**
+     * @return valor em centavos, ou AUSENTE
+     */
+    public long getValorCentavos() { return valor; }
+
+    /**
+     * Valor do conserto em centavos de uma ordem tipada ou lida do disco (mapa); valores com mais de
+     * duas casas são arredondados, e inválidos ou ausentes contam como zero
+     */
+    public static long centavosConserto(Map<?, ?> ordem) {
+        long centavos = ordem instanceof Ordem
+            ? ((Ordem) ordem).getValorConsertoCentavos()
+            : Registro.centavos(ordem.get("valorConserto"));
+        if (centavos != AUSENTE) {
+            return centavos;
+        }
+        Object valorConserto = ordem.get("valorConserto");
+        if (valorConserto == null) {
+            return 0;
+        }
+        try {
+            return new BigDecimal(valorConserto.toString().trim()).movePointRight(2)
+                .setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            logger.warning("Valor de conserto inválido: " + valorConserto);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package backend.dto;
+
+/**
+ * Produto do catálogo do usuário (coleção "produtos"). Preço em centavos; campos não listados ficam nos excedentes
+ */
+public class Produto extends Registro {
+    public static final String COLECAO = "produtos";
+
+    private static final Campos<Produto> CAMPOS = new Campos<Produto>()
+        .texto("nome", p -> p.nome, (p, v) -> p.nome = v)
+        .texto("descricao", p -> p.descricao, (p, v) -> p.descricao = v)
+        .textoComum("categoria", p -> p.categoria, (p, v) -> p.categoria = v)
+        .inteiro("quantidade", p -> p.quantidade, (p, v) -> p.quantidade = v)
+        .dinheiro("preco", p -> p.preco, (p, v) -> p.preco = v)
+        .comRevisao();
+
+    private String nome;
+    private String descricao;
+    private String categoria;
+    private long quantidade = AUSENTE;
+    private long preco = AUSENTE;
+
+    @Override
+    protected Campos<?> campos() {
+        return CAMPOS;
+    }
+
+    public String getNome() { return nome; }
+    public String getCategoria() { return categoria; }
+
+    /**
+     * @return quantidade em estoque, ou AUSENTE
+     */
+    public long getQuantidade() { return quantidade; }
+
+    /**
+     * @return preço em centavos, ou AUSENTE
+     */
+    public long getPrecoCentavos() { return preco; }
+}
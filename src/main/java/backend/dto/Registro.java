@@ -0,0 +1,419 @@
+package backend.dto;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Registro tipado de uma coleção do usuário (Ordem, Venda, Produto).
+ *
+ * Os campos conhecidos ficam em atributos (valores monetários em centavos, como long); os demais vão
+ * para um mapa de excedentes, então o contrato livre do frontend continua valendo. Continua sendo um
+ * Map: journal, índices, sincronização e JSON tratam o registro como antes.
+ *
+ * Um valor que não cabe no tipo do campo fica nos excedentes como veio. Campos monetários só guardam em
+ * centavos números do JSON (inteiros ou com até duas casas); textos ("150.50", "R$ 10,00") ficam nos excedentes,
+ * e cada valor volta no tipo em que chegou (150.0 continua 150.0, 150 continua 150).
+ */
+public abstract class Registro extends AbstractMap<String, Object> {
+    public static final long AUSENTE = Long.MIN_VALUE;
+
+    Object id;
+    long rev = AUSENTE;
+    // Um bit por campo monetário: o valor chegou como número decimal (Double), e não inteiro
+    int decimais;
+
+    // Excedentes em arrays paralelos: poucos campos, busca linear
+    private String[] chavesExtras;
+    private Object[] valoresExtras;
+    private int quantidadeExtras;
+
+    /**
+     * Tabela de campos tipados da classe (id primeiro, _rev por último)
+     */
+    protected abstract Campos<?> campos();
+
+    /**
+     * Converte o registro de uma coleção para a classe tipada; outras coleções e registros já tipados
+     * são devolvidos como estão
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> tipar(String colecao, Map<?, ?> registro) {
+        Registro tipado;
+        switch (colecao) {
+            case Ordem.COLECAO:
+                if (registro instanceof Ordem) return (Ordem) registro;
+                tipado = new Ordem();
+                break;
+            case Venda.COLECAO:
+                if (registro instanceof Venda) return (Venda) registro;
+                tipado = new Venda();
+                break;
+            case Produto.COLECAO:
+                if (registro instanceof Produto) return (Produto) registro;
+                tipado = new Produto();
+                break;
+            default:
+                return (Map<String, Object>) registro;
+        }
+        for (Map.Entry<?, ?> e : registro.entrySet()) {
+            tipado.put(String.valueOf(e.getKey()), e.getValue());
+        }
+        return tipado;
+    }
+
+    /**
+     * Converte uma lista de registros de uma coleção (itens que não são objetos ficam como estão)
+     */
+    public static List<Object> tiparTodos(String colecao, List<?> registros) {
+        List<Object> tipados = new ArrayList<>(registros.size());
+        for (Object registro : registros) {
+            tipados.add(registro instanceof Map ? tipar(colecao, (Map<?, ?>) registro) : registro);
+        }
+        return tipados;
+    }
+
+    /**
+     * Valor monetário em centavos: números e textos numéricos ("150.5") com até duas casas decimais
+     * @return AUSENTE se o valor não representa um valor em centavos
+     */
+    public static long centavos(Object valor) {
+        try {
+            BigDecimal decimal;
+            if (valor instanceof Integer || valor instanceof Long || valor instanceof Short || valor instanceof Byte) {
+                return Math.multiplyExact(((Number) valor).longValue(), 100L);
+            } else if (valor instanceof Double || valor instanceof Float) {
+                decimal = BigDecimal.valueOf(((Number) valor).doubleValue());
+            } else if (valor instanceof BigDecimal) {
+                decimal = (BigDecimal) valor;
+            } else if (valor instanceof BigInteger) {
+                decimal = new BigDecimal((BigInteger) valor);
+            } else if (valor instanceof String) {
+                decimal = new BigDecimal(((String) valor).trim());
+            } else {
+                return AUSENTE;
+            }
+            return decimal.movePointRight(2).longValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            // Mais de duas casas, fora do intervalo, NaN ou texto não numérico
+            return AUSENTE;
+        }
+    }
+
+    /**
+     * Centavos como número para o JSON, no tipo em que o valor chegou: Double se decimal, Long se inteiro
+     */
+    static Object valorDeCentavos(long centavos, boolean decimal) {
+        if (centavos == AUSENTE) {
+            return null;
+        }
+        return decimal ? (Object) (centavos / 100.0) : (Object) (centavos / 100);
+    }
+
+    private static boolean numeroInteiro(Object valor) {
+        return valor instanceof Integer || valor instanceof Long || valor instanceof Short || valor instanceof Byte
+            || valor instanceof BigInteger;
+    }
+
+    /**
+     * Inteiro exato (quantidades): só números inteiros
+     */
+    static long inteiro(Object valor) {
+        if (valor instanceof Integer || valor instanceof Long || valor instanceof Short || valor instanceof Byte) {
+            return ((Number) valor).longValue();
+        }
+        if (valor instanceof BigInteger && ((BigInteger) valor).bitLength() < 64) {
+            return ((BigInteger) valor).longValue();
+        }
+        return AUSENTE;
+    }
+
+    /**
+     * Tabela dos campos tipados de uma classe, com leitura e gravação sem reflexão
+     */
+    protected static final class Campos<R extends Registro> {
+        private final List<Campo<R>> lista = new ArrayList<>();
+        private final Map<String, Campo<R>> porNome = new HashMap<>();
+
+        Campos() {
+            adicionar(new Campo<>("id") {
+                Object ler(R r) { return r.id; }
+                boolean gravar(R r, Object valor) { r.id = valor; return valor != null; }
+            });
+        }
+
+        Campos<R> texto(String nome, Function<R, String> leitor, BiConsumer<R, String> gravador) {
+            return texto(nome, leitor, gravador, false);
+        }
+
+        /**
+         * Texto de vocabulário pequeno (status, modelo): internado, uma cópia por valor distinto
+         */
+        Campos<R> textoComum(String nome, Function<R, String> leitor, BiConsumer<R, String> gravador) {
+            return texto(nome, leitor, gravador, true);
+        }
+
+        private Campos<R> texto(String nome, Function<R, String> leitor, BiConsumer<R, String> gravador, boolean internar) {
+            return adicionar(new Campo<>(nome) {
+                Object ler(R r) { return leitor.apply(r); }
+                boolean gravar(R r, Object valor) {
+                    String texto = valor instanceof String ? (String) valor : null;
+                    gravador.accept(r, texto != null && internar ? texto.intern() : texto);
+                    return texto != null;
+                }
+            });
+        }
+
+        /**
+         * Valor monetário em centavos; só números (textos vão para os excedentes como vieram)
+         */
+        Campos<R> dinheiro(String nome, ToLongFunction<R> leitor, ObjLongConsumer<R> gravador) {
+            int bit = 1 << lista.size();
+            return adicionar(new Campo<>(nome) {
+                Object ler(R r) { return valorDeCentavos(leitor.applyAsLong(r), (r.decimais & bit) != 0); }
+                boolean gravar(R r, Object valor) {
+                    long centavos = valor instanceof Number ? centavos(valor) : AUSENTE;
+                    gravador.accept(r, centavos);
+                    if (centavos != AUSENTE && !numeroInteiro(valor)) {
+                        r.decimais |= bit;
+                    } else {
+                        r.decimais &= ~bit;
+                    }
+                    return centavos != AUSENTE;
+                }
+            });
+        }
+
+        Campos<R> inteiro(String nome, ToLongFunction<R> leitor, ObjLongConsumer<R> gravador) {
+            return adicionar(new Campo<>(nome) {
+                Object ler(R r) { long v = leitor.applyAsLong(r); return v != AUSENTE ? (Object) v : null; }
+                boolean gravar(R r, Object valor) {
+                    long v = Registro.inteiro(valor);
+                    gravador.accept(r, v);
+                    return v != AUSENTE;
+                }
+            });
+        }
+
+        /**
+         * Fecha a tabela com a revisão do registro (_rev), sempre o último campo
+         */
+        Campos<R> comRevisao() {
+            return inteiro("_rev", r -> r.rev, (r, v) -> r.rev = v);
+        }
+
+        private Campos<R> adicionar(Campo<R> campo) {
+            lista.add(campo);
+            porNome.put(campo.nome, campo);
+            return this;
+        }
+    }
+
+    /**
+     * Campo tipado: gravar devolve false (e limpa o atributo) quando o valor não cabe no tipo
+     */
+    abstract static class Campo<R extends Registro> {
+        final String nome;
+
+        Campo(String nome) {
+            this.nome = nome;
+        }
+
+        abstract Object ler(R r);
+
+        abstract boolean gravar(R r, Object valor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Campo<Registro> campo(Object chave) {
+        return (Campo<Registro>) campos().porNome.get(chave);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Campo<Registro>> listaCampos() {
+        return (List<Campo<Registro>>) (List<?>) campos().lista;
+    }
+
+    private int indiceExtra(Object chave) {
+        for (int i = 0; i < quantidadeExtras; i++) {
+            if (chavesExtras[i].equals(chave)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void gravarExtra(String chave, Object valor) {
+        int i = indiceExtra(chave);
+        if (i >= 0) {
+            valoresExtras[i] = valor;
+            return;
+        }
+        if (chavesExtras == null) {
+            chavesExtras = new String[2];
+            valoresExtras = new Object[2];
+        } else if (quantidadeExtras == chavesExtras.length) {
+            chavesExtras = Arrays.copyOf(chavesExtras, quantidadeExtras * 2);
+            valoresExtras = Arrays.copyOf(valoresExtras, quantidadeExtras * 2);
+        }
+        chavesExtras[quantidadeExtras] = chave;
+        valoresExtras[quantidadeExtras++] = valor;
+    }
+
+    private void removerExtra(int i) {
+        int depois = quantidadeExtras - i - 1;
+        System.arraycopy(chavesExtras, i + 1, chavesExtras, i, depois);
+        System.arraycopy(valoresExtras, i + 1, valoresExtras, i, depois);
+        quantidadeExtras--;
+        chavesExtras[quantidadeExtras] = null;
+        valoresExtras[quantidadeExtras] = null;
+    }
+
+    @Override
+    public Object get(Object chave) {
+        Campo<Registro> campo = campo(chave);
+        if (campo != null) {
+            Object valor = campo.ler(this);
+            if (valor != null) {
+                return valor;
+            }
+        }
+        int i = indiceExtra(chave);
+        return i >= 0 ? valoresExtras[i] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object chave) {
+        Campo<Registro> campo = campo(chave);
+        return (campo != null && campo.ler(this) != null) || indiceExtra(chave) >= 0;
+    }
+
+    @Override
+    public Object put(String chave, Object valor) {
+        Object anterior = get(chave);
+        Campo<Registro> campo = campo(chave);
+        int i = indiceExtra(chave);
+        if (campo != null && campo.gravar(this, valor)) {
+            if (i >= 0) {
+                removerExtra(i);
+            }
+        } else {
+            gravarExtra(chave, valor);
+        }
+        return anterior;
+    }
+
+    @Override
+    public Object remove(Object chave) {
+        Object anterior = get(chave);
+        Campo<Registro> campo = campo(chave);
+        if (campo != null) {
+            campo.gravar(this, null);
+        }
+        int i = indiceExtra(chave);
+        if (i >= 0) {
+            removerExtra(i);
+        }
+        return anterior;
+    }
+
+    @Override
+    public void clear() {
+        for (Campo<Registro> campo : listaCampos()) {
+            campo.gravar(this, null);
+        }
+        chavesExtras = null;
+        valoresExtras = null;
+        quantidadeExtras = 0;
+    }
+
+    @Override
+    public int size() {
+        int tamanho = quantidadeExtras;
+        for (Campo<Registro> campo : listaCampos()) {
+            if (campo.ler(this) != null) {
+                tamanho++;
+            }
+        }
+        return tamanho;
+    }
+
+    /**
+     * Ordem de iteração: campos tipados, excedentes e por fim _rev
+     */
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return Registro.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private final List<Campo<Registro>> lista = listaCampos();
+                    // Posições 0..n-2: campos tipados; depois os excedentes; por último _rev
+                    private int posicao = -1;
+                    private String ultima;
+                    private boolean ultimaExtra;
+                    private boolean proximaExtra;
+                    private Map.Entry<String, Object> proxima = avancar();
+
+                    private Map.Entry<String, Object> avancar() {
+                        int tipados = lista.size() - 1;
+                        while (++posicao <= tipados + quantidadeExtras) {
+                            if (posicao < tipados || posicao == tipados + quantidadeExtras) {
+                                Campo<Registro> campo = lista.get(Math.min(posicao, tipados));
+                                Object valor = campo.ler(Registro.this);
+                                if (valor != null) {
+                                    proximaExtra = false;
+                                    return new AbstractMap.SimpleImmutableEntry<>(campo.nome, valor);
+                                }
+                            } else {
+                                int i = posicao - tipados;
+                                proximaExtra = true;
+                                return new AbstractMap.SimpleImmutableEntry<>(chavesExtras[i], valoresExtras[i]);
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return proxima != null;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if (proxima == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, Object> atual = proxima;
+                        ultima = atual.getKey();
+                        ultimaExtra = proximaExtra;
+                        proxima = avancar();
+                        return atual;
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (ultima == null) {
+                            throw new IllegalStateException();
+                        }
+                        Registro.this.remove(ultima);
+                        if (ultimaExtra && proxima != null) {
+                            // Os excedentes seguintes andaram uma posição
+                            posicao--;
+                        }
+                        ultima = null;
+                    }
+                };
+            }
+        };
+    }
+}
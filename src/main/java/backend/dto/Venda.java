@@ -0,0 +1,58 @@
+package backend.dto;
+
+import java.util.Map;
+
+/**
+ * Venda (coleção "vendas"). Valor em centavos; campos não listados ficam nos excedentes
+ */
+public class Venda extends Registro {
+    public static final String COLECAO = "vendas";
+
+    private static final Campos<Venda> CAMPOS = new Campos<Venda>()
+        .texto("produto", v -> v.produto, (v, x) -> v.produto = x)
+        .texto("cliente", v -> v.cliente, (v, x) -> v.cliente = x)
+        .textoComum("status", v -> v.status, (v, x) -> v.status = x)
+        .textoComum("formaPagamento", v -> v.formaPagamento, (v, x) -> v.formaPagamento = x)
+        .texto("data", v -> v.data, (v, x) -> v.data = x)
+        .inteiro("quantidade", v -> v.quantidade, (v, x) -> v.quantidade = x)
+        .dinheiro("valor", v -> v.valor, (v, x) -> v.valor = x)
+        .comRevisao();
+
+    private String produto;
+    private String cliente;
+    private String status;
+    private String formaPagamento;
+    private String data;
+    private long quantidade = AUSENTE;
+    private long valor = AUSENTE;
+
+    @Override
+    protected Campos<?> campos() {
+        return CAMPOS;
+    }
+
+    public String getProduto() { return produto; }
+    public String getStatus() { return status; }
+
+    /**
+     * @return quantidade, ou AUSENTE
+     */
+    public long getQuantidade() { return quantidade; }
+
+    /**
+     * @return valor em centavos, ou AUSENTE
+     */
+    public long getValorCentavos() { return valor; }
+
+    /**
+     * Valor em centavos de uma venda tipada ou lida do disco (mapa), inclusive texto numérico ("150.50");
+     * inválido ou ausente conta como zero
+     */
+    public static long centavosValor(Map<?, ?> venda) {
+        long centavos = venda instanceof Venda ? ((Venda) venda).getValorCentavos() : AUSENTE;
+        if (centavos == AUSENTE) {
+            centavos = Registro.centavos(venda.get("valor"));
+        }
+        return centavos != AUSENTE ? centavos : 0;
+    }
+}
@@ -0,0 +1,345 @@
+package backend.service;
+
+import backend.dto.Ordem;
+import backend.storage.DurableFileWriter;
+import backend.storage.IndicesOrdens;
+import backend.storage.IndicesUsuario;
+import backend.storage.SomasPorDia;
+import backend.storage.StorageCodec;
+import backend.util.RegistroUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * Totais de consertos (valorConserto das ordens de todos os usuários, em uso e arquivadas) por dia da ordem
+ * (RegistroUtil.data; sem data em SEM_DATA) e por mês, mantidos a cada alteração pelo UserDataService.
+ * O resumo do faturamento lê daqui sem varrer user_data: um mês em tempo constante, um intervalo
+ * pelas somas acumuladas dos dias (SomasPorDia).
+ *
+ * É um dado derivado: gravado só no encerramento e apagado ao ser carregado, então depois de uma queda
+ * não há arquivo e os totais são reconstruídos pela varredura (reconstrução também disponível sob demanda).
+ * Durante uma reconstrução as alterações continuam valendo: a de um usuário ainda não varrido fica só nos
+ * totais atuais (a varredura dele já a verá); as demais entram também nos totais em construção.
+ */
+public class AgregadoConsertos {
+    private static final Logger logger = Logger.getLogger(AgregadoConsertos.class.getName());
+    public static final String SEM_DATA = "sem-data";
+    private static final TypeReference<Map<String, Object>> TIPO_ARQUIVO = new TypeReference<>() {};
+    /** Resumo por dia gravado em cada segmento arquivado de ordens (dia -> [centavos, quantidade]) */
+    public static final String CAMPO_SEGMENTO = "consertosPorDia";
+    /** Campos das ordens usados nos totais, para leituras seletivas */
+    public static final Set<String> CAMPOS;
+
+    static {
+        Set<String> campos = new HashSet<>(RegistroUtil.CAMPOS_DATA);
+        campos.add("valorConserto");
+        CAMPOS = Collections.unmodifiableSet(campos);
+    }
+
+    private static final class Totais {
+        // yyyy-MM ou SEM_DATA
+        final Map<String, long[]> meses = new ConcurrentHashMap<>();
+        final SomasPorDia dias = new SomasPorDia();
+        final AtomicLong centavos = new AtomicLong();
+        final AtomicLong quantidade = new AtomicLong();
+
+        /**
+         * @param dia yyyy-MM-dd ou SEM_DATA
+         */
+        void somar(String dia, long centavosDelta, long quantidadeDelta) {
+            String mes = dia;
+            if (!SEM_DATA.equals(dia)) {
+                mes = dia.substring(0, 7);
+                dias.somar(data(dia), centavosDelta, quantidadeDelta);
+            }
+            long[] total = meses.computeIfAbsent(mes, k -> new long[2]);
+            synchronized (total) {
+                total[0] += centavosDelta;
+                total[1] += quantidadeDelta;
+            }
+            centavos.addAndGet(centavosDelta);
+            quantidade.addAndGet(quantidadeDelta);
+        }
+    }
+
+    private final ReentrantReadWriteLock troca = new ReentrantReadWriteLock();
+    private volatile Totais atual = new Totais();
+    private volatile boolean pronto;
+    // Reconstrução em andamento: totais novos e usuários ainda não varridos
+    private Totais construindo;
+    private Set<String> pendentes;
+
+    /**
+     * Dia de agregação de uma ordem (yyyy-MM-dd ou SEM_DATA)
+     */
+    public static String dia(Map<?, ?> ordem) {
+        LocalDate data = RegistroUtil.data(ordem);
+        return data != null ? data.toString() : SEM_DATA;
+    }
+
+    /**
+     * Data de uma chave yyyy-MM-dd já validada (gerada por dia); sem o custo do DateTimeFormatter,
+     * pois a reconstrução converte uma chave por dia de cada usuário
+     */
+    static LocalDate data(String dia) {
+        return LocalDate.of(Integer.parseInt(dia, 0, 4, 10), Integer.parseInt(dia, 5, 7, 10), Integer.parseInt(dia, 8, 10, 10));
+    }
+
+    /**
+     * Observador das alterações de um usuário (IndicesUsuario): cada ordem incluída, substituída ou removida
+     */
+    public IndicesUsuario.Observador observador(String userId) {
+        return (colecao, antiga, nova) -> {
+            if (!IndicesOrdens.COLECAO.equals(colecao)) {
+                return;
+            }
+            if (antiga != null) {
+                aplicar(userId, dia(antiga), -Ordem.centavosConserto(antiga), -1);
+            }
+            if (nova != null) {
+                aplicar(userId, dia(nova), Ordem.centavosConserto(nova), 1);
+            }
+        };
+    }
+
+    /**
+     * Soma (sinal 1) ou subtrai (sinal -1) as ordens dos totais. Chamado com o lock do usuário
+     */
+    public void aplicar(String userId, Collection<?> ordens, int sinal) {
+        for (Object ordem : ordens) {
+            if (ordem instanceof Map) {
+                aplicar(userId, dia((Map<?, ?>) ordem), sinal * Ordem.centavosConserto((Map<?, ?>) ordem), sinal);
+            }
+        }
+    }
+
+    /**
+     * Aplica uma variação a um dia (yyyy-MM-dd ou SEM_DATA). Chamado com o lock do usuário
+     */
+    public void aplicar(String userId, String dia, long centavos, long quantidade) {
+        if (centavos == 0 && quantidade == 0) {
+            return;
+        }
+        troca.readLock().lock();
+        try {
+            atual.somar(dia, centavos, quantidade);
+            Totais novos = construindo;
+            if (novos != null && !pendentes.contains(userId)) {
+                novos.somar(dia, centavos, quantidade);
+            }
+        } finally {
+            troca.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inicia uma reconstrução com os usuários que serão varridos
+     */
+    void iniciarReconstrucao(Collection<String> usuarios) {
+        troca.writeLock().lock();
+        try {
+            construindo = new Totais();
+            pendentes = ConcurrentHashMap.newKeySet();
+            pendentes.addAll(usuarios);
+        } finally {
+            troca.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Centavos e quantidade por dia (yyyy-MM-dd ou SEM_DATA) das ordens
+     */
+    static Map<String, long[]> porDia(Collection<?> ordens) {
+        Map<String, long[]> dias = new HashMap<>();
+        for (Object ordem : ordens) {
+            if (ordem instanceof Map) {
+                long[] total = dias.computeIfAbsent(dia((Map<?, ?>) ordem), k -> new long[2]);
+                total[0] += Ordem.centavosConserto((Map<?, ?>) ordem);
+                total[1]++;
+            }
+        }
+        return dias;
+    }
+
+    /**
+     * Resumo por dia de um segmento arquivado (CAMPO_SEGMENTO), ou null se o segmento é anterior a ele
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, long[]> doSegmento(Map<String, Object> segmento) {
+        Object resumo = segmento.get(CAMPO_SEGMENTO);
+        if (!(resumo instanceof Map)) {
+            return null;
+        }
+        Map<String, long[]> dias = new HashMap<>();
+        for (Map.Entry<String, Object> e : ((Map<String, Object>) resumo).entrySet()) {
+            List<?> total = (List<?>) e.getValue();
+            dias.put(e.getKey(), new long[]{numero(total.get(0)), numero(total.get(1))});
+        }
+        return dias;
+    }
+
+    /**
+     * Resumo por dia no formato gravado no segmento (dia -> [centavos, quantidade])
+     */
+    static Map<String, Object> paraSegmento(Map<String, long[]> dias) {
+        Map<String, Object> resumo = new TreeMap<>();
+        dias.forEach((dia, total) -> resumo.put(dia, List.of(total[0], total[1])));
+        return resumo;
+    }
+
+    /**
+     * Soma os totais por dia de origem em destino (sinal 1 ou -1)
+     */
+    static void somar(Map<String, long[]> destino, Map<String, long[]> origem, int sinal) {
+        origem.forEach((dia, total) -> {
+            long[] soma = destino.computeIfAbsent(dia, k -> new long[2]);
+            soma[0] += sinal * total[0];
+            soma[1] += sinal * total[1];
+        });
+    }
+
+    /**
+     * Contribuição varrida de um usuário (dia -> centavos e quantidade). Chamado com o lock do usuário
+     */
+    void reconstruido(String userId, Map<String, long[]> dias) {
+        Totais novos = construindo;
+        dias.forEach((dia, total) -> novos.somar(dia, total[0], total[1]));
+        pendentes.remove(userId);
+    }
+
+    /**
+     * Usuário que a reconstrução não conseguiu ler: fica de fora, como na varredura do faturamento
+     */
+    void ignorado(String userId) {
+        pendentes.remove(userId);
+    }
+
+    void concluirReconstrucao() {
+        troca.writeLock().lock();
+        try {
+            atual = construindo;
+            construindo = null;
+            pendentes = null;
+            pronto = true;
+        } finally {
+            troca.writeLock().unlock();
+        }
+    }
+
+    void cancelarReconstrucao() {
+        troca.writeLock().lock();
+        try {
+            construindo = null;
+            pendentes = null;
+        } finally {
+            troca.writeLock().unlock();
+        }
+    }
+
+    private static long numero(Object valor) {
+        return valor instanceof Number ? ((Number) valor).longValue() : 0;
+    }
+
+    /**
+     * Se os totais refletem todos os dados (carregados de um encerramento limpo ou reconstruídos)
+     */
+    public boolean isPronto() {
+        return pronto;
+    }
+
+    public long getCentavos() {
+        return atual.centavos.get();
+    }
+
+    public long getQuantidade() {
+        return atual.quantidade.get();
+    }
+
+    /**
+     * Centavos e quantidade de de até ate (inclusive; ordens sem data não entram)
+     */
+    public long[] intervalo(LocalDate de, LocalDate ate) {
+        return atual.dias.intervalo(de, ate);
+    }
+
+    /**
+     * Centavos e quantidade de um mês (yyyy-MM ou SEM_DATA)
+     */
+    public long[] doMes(String mes) {
+        long[] total = atual.meses.get(mes);
+        if (total == null) {
+            return new long[2];
+        }
+        synchronized (total) {
+            return total.clone();
+        }
+    }
+
+    /**
+     * Carrega os totais gravados no encerramento anterior e apaga o arquivo
+     * @return false se não havia arquivo ou se ele é de uma versão só com meses (é preciso reconstruir)
+     */
+    @SuppressWarnings("unchecked")
+    boolean carregar(File arquivo) throws IOException {
+        if (!arquivo.exists()) {
+            return false;
+        }
+        Map<String, Object> gravado = StorageCodec.lerArquivo(arquivo, TIPO_ARQUIVO);
+        Totais totais = new Totais();
+        Object dias = gravado.get("dias");
+        if (dias instanceof Map) {
+            for (Map.Entry<String, Object> e : ((Map<String, Object>) dias).entrySet()) {
+                Map<String, Object> total = (Map<String, Object>) e.getValue();
+                totais.somar(e.getKey(), numero(total.get("centavos")), numero(total.get("quantidade")));
+            }
+        }
+        if (!arquivo.delete()) {
+            throw new IOException("Não foi possível remover " + arquivo.getName() + " depois de carregar");
+        }
+        if (!(dias instanceof Map)) {
+            return false;
+        }
+        troca.writeLock().lock();
+        try {
+            atual = totais;
+            pronto = true;
+        } finally {
+            troca.writeLock().unlock();
+        }
+        logger.info("Totais de consertos carregados: " + totais.meses.size() + " meses");
+        return true;
+    }
+
+    /**
+     * Grava os totais no encerramento, depois da última alteração
+     */
+    void gravar(File arquivo, DurableFileWriter writer) throws IOException {
+        if (!pronto) {
+            return;
+        }
+        Totais totais = atual;
+        Map<String, Object> dias = new LinkedHashMap<>();
+        long[] semData = doMes(SEM_DATA);
+        dias.put(SEM_DATA, Map.of("centavos", semData[0], "quantidade", semData[1]));
+        totais.dias.copia().forEach((dia, total) -> dias.put(dia.toString(), Map.of("centavos", total[0], "quantidade", total[1])));
+        writer.escrever(arquivo.toPath(), out -> StorageCodec.JSON.escrever(out, Map.of("dias", dias)));
+    }
+
+    public Map<String, Object> estatisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pronto", pronto);
+        stats.put("meses", atual.meses.size());
+        stats.put("dias", atual.dias.getDias());
+        stats.put("centavos", getCentavos());
+        stats.put("quantidade", getQuantidade());
+        return stats;
+    }
+}
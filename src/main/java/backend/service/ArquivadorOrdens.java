@@ -0,0 +1,138 @@
+package backend.service;
+
+import backend.storage.IndicesOrdens;
+import backend.util.ConfigUtil;
+import backend.util.RegistroUtil;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Arquivamento em segundo plano das ordens fechadas e antigas (ver UserDataService.arquivarOrdens):
+ *  - scartech.arquivo.status: status considerados fechados, separados por vírgula (sem acento/maiúsculas)
+ *  - scartech.arquivo.idade-dias: idade mínima pela data do registro (RegistroUtil.data)
+ *  - scartech.arquivo.intervalo-ms: intervalo entre execuções; 0 desliga o agendamento
+ *
+ * Uma thread percorre os usuários um por vez. Quem não tem ordens a arquivar é verificado pela leitura
+ * de varredura (sem lock e sem popular o cache); só os demais são carregados e alterados.
+ */
+public class ArquivadorOrdens {
+    private static final Logger logger = Logger.getLogger(ArquivadorOrdens.class.getName());
+
+    private final UserDataService userDataService;
+    private final Set<String> statusFechados = new HashSet<>();
+    private final int idadeDias;
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong execucoes = new AtomicLong();
+    private final AtomicLong ordensArquivadas = new AtomicLong();
+    private volatile long ultimaExecucao;
+
+    ArquivadorOrdens(UserDataService userDataService) {
+        this.userDataService = userDataService;
+        for (String status : ConfigUtil.getString("scartech.arquivo.status",
+                "concluida,concluido,entregue,finalizada,finalizado,fechada,cancelada").split(",")) {
+            String chave = IndicesOrdens.chaveStatus(status);
+            if (chave != null) {
+                statusFechados.add(chave);
+            }
+        }
+        this.idadeDias = ConfigUtil.getInt("scartech.arquivo.idade-dias", 180);
+        long intervalo = ConfigUtil.getLong("scartech.arquivo.intervalo-ms", 6 * 60 * 60 * 1000L);
+        if (intervalo > 0) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "arquivador-ordens");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.scheduleWithFixedDelay(this::executar, intervalo, intervalo, TimeUnit.MILLISECONDS);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Ordem fechada com data anterior ao corte
+     */
+    private boolean arquivavel(Map<?, ?> ordem, LocalDate corte) {
+        String status = IndicesOrdens.chaveStatus(RegistroUtil.texto(ordem, "status"));
+        if (status == null || !statusFechados.contains(status)) {
+            return false;
+        }
+        LocalDate data = RegistroUtil.data(ordem);
+        return data != null && data.isBefore(corte);
+    }
+
+    /**
+     * Arquiva as ordens de um usuário que atendem à política
+     * @return quantidade de ordens arquivadas
+     */
+    public int executar(String userId) throws IOException {
+        LocalDate corte = LocalDate.now().minusDays(idadeDias);
+        int arquivadas = userDataService.arquivarOrdens(userId, ordem -> arquivavel(ordem, corte));
+        ordensArquivadas.addAndGet(arquivadas);
+        return arquivadas;
+    }
+
+    /**
+     * Execução periódica: todos os usuários, fragmento a fragmento
+     */
+    private void executar() {
+        long inicio = System.currentTimeMillis();
+        LocalDate corte = LocalDate.now().minusDays(idadeDias);
+        int usuarios = 0;
+        int arquivadas = 0;
+        try {
+            for (List<String> fragmento : userDataService.listarUsuariosPorFragmento()) {
+                for (String userId : fragmento) {
+                    try {
+                        if (temArquivaveis(userId, corte)) {
+                            arquivadas += executar(userId);
+                            usuarios++;
+                        }
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "Erro ao arquivar ordens do usuário: " + userId, e);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Erro no arquivamento de ordens", e);
+        }
+        execucoes.incrementAndGet();
+        ultimaExecucao = System.currentTimeMillis();
+        logger.info("Arquivamento de ordens: " + arquivadas + " ordens de " + usuarios + " usuários em "
+            + (ultimaExecucao - inicio) + " ms");
+    }
+
+    private boolean temArquivaveis(String userId, LocalDate corte) throws IOException {
+        for (Object ordem : userDataService.lerColecaoParaVarredura(userId, IndicesOrdens.COLECAO)) {
+            if (ordem instanceof Map && arquivavel((Map<?, ?>) ordem, corte)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void encerrar() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public Map<String, Object> estatisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("statusFechados", new TreeSet<>(statusFechados));
+        stats.put("idadeDias", idadeDias);
+        stats.put("execucoes", execucoes.get());
+        stats.put("ultimaExecucao", ultimaExecucao);
+        stats.put("ordensArquivadas", ordensArquivadas.get());
+        return stats;
+    }
+}
@@ -0,0 +1,173 @@
+package backend.service;
+
+import backend.util.RegistroUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Paginação por cursor e filtros (status, cliente, intervalo de datas) sobre uma coleção do usuário.
+ *
+ * O cursor guarda a posição e o id do último registro devolvido. Inclusões no fim da coleção não o afetam;
+ * se registros anteriores forem removidos, a posição é corrigida procurando o id.
+ */
+public class ConsultaColecao {
+    public static final int LIMITE_PADRAO = 50;
+    public static final int LIMITE_MAXIMO = 500;
+
+    private final String status;
+    private final String cliente;
+    private final LocalDate de;
+    private final LocalDate ate;
+    private final int limite;
+    private final String cursor;
+
+    private ConsultaColecao(Map<String, String> params) {
+        this.status = vazioParaNulo(params.get("status"));
+        this.cliente = vazioParaNulo(params.get("cliente"));
+        this.de = data(params.get("de"), "de");
+        this.ate = data(params.get("ate"), "ate");
+        this.cursor = vazioParaNulo(params.get("cursor"));
+        int limit = LIMITE_PADRAO;
+        if (params.get("limit") != null) {
+            try {
+                limit = Integer.parseInt(params.get("limit"));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("limit deve ser um número");
+            }
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit deve ser maior que zero");
+        }
+        this.limite = Math.min(limit, LIMITE_MAXIMO);
+    }
+
+    /**
+     * Cria a consulta a partir dos parâmetros da requisição
+     * @return null se nenhum parâmetro de consulta foi informado (devolver a coleção completa)
+     */
+    public static ConsultaColecao of(Map<String, String> params) {
+        if (params == null) {
+            return null;
+        }
+        for (String chave : List.of("limit", "cursor", "status", "cliente", "de", "ate")) {
+            if (params.containsKey(chave)) {
+                return new ConsultaColecao(params);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Executa a consulta sobre a coleção (lista somente leitura)
+     * @return página com itens, quantidade e proximoCursor (null na última página)
+     */
+    public Map<String, Object> executar(List<?> colecao) {
+        // Cópia instantânea: inclusões concorrentes não mudam a página no meio da varredura
+        List<?> registros = Arrays.asList(colecao.toArray());
+        List<Object> itens = new ArrayList<>();
+        int posicao = posicaoInicial(registros);
+        String proximoCursor = null;
+        int posicaoUltimo = -1;
+        for (int i = posicao; i < registros.size(); i++) {
+            Object registro = registros.get(i);
+            if (!(registro instanceof Map) || !aceita((Map<?, ?>) registro)) {
+                continue;
+            }
+            if (itens.size() == limite) {
+                // Há mais resultados: o cursor aponta logo depois do último item devolvido
+                proximoCursor = codificar(posicaoUltimo + 1, idDe(registros.get(posicaoUltimo)));
+                break;
+            }
+            itens.add(registro);
+            posicaoUltimo = i;
+        }
+
+        Map<String, Object> pagina = new LinkedHashMap<>();
+        pagina.put("itens", itens);
+        pagina.put("quantidade", itens.size());
+        pagina.put("proximoCursor", proximoCursor);
+        return pagina;
+    }
+
+    private boolean aceita(Map<?, ?> registro) {
+        if (status != null && !status.equalsIgnoreCase(RegistroUtil.texto(registro, "status"))) {
+            return false;
+        }
+        if (cliente != null && !contemCliente(registro)) {
+            return false;
+        }
+        if (de != null || ate != null) {
+            LocalDate data = RegistroUtil.data(registro);
+            if (data == null || (de != null && data.isBefore(de)) || (ate != null && data.isAfter(ate))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contemCliente(Map<?, ?> registro) {
+        String procurado = RegistroUtil.normalizar(cliente);
+        for (String campo : RegistroUtil.CAMPOS_CLIENTE) {
+            String valor = RegistroUtil.texto(registro, campo);
+            if (valor != null && RegistroUtil.normalizar(valor).contains(procurado)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int posicaoInicial(List<?> registros) {
+        if (cursor == null) {
+            return 0;
+        }
+        String decodificado;
+        int posicao;
+        try {
+            decodificado = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            posicao = Integer.parseInt(decodificado.substring(0, decodificado.indexOf(':')));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("cursor inválido");
+        }
+        String idAnterior = decodificado.substring(decodificado.indexOf(':') + 1);
+        if (idAnterior.isEmpty() || posicao <= 0) {
+            return Math.max(0, Math.min(posicao, registros.size()));
+        }
+        // Caso comum: nada foi removido antes do cursor
+        if (posicao <= registros.size() && idAnterior.equals(idDe(registros.get(posicao - 1)))) {
+            return posicao;
+        }
+        // Registros anteriores foram removidos/substituídos: procura o último id devolvido
+        for (int i = Math.min(posicao, registros.size()) - 1; i >= 0; i--) {
+            if (idAnterior.equals(idDe(registros.get(i)))) {
+                return i + 1;
+            }
+        }
+        return Math.min(posicao, registros.size());
+    }
+
+    private static String idDe(Object registro) {
+        return registro instanceof Map ? RegistroUtil.id((Map<?, ?>) registro) : null;
+    }
+
+    private static String codificar(int posicao, String id) {
+        String valor = posicao + ":" + (id != null ? id : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(valor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String vazioParaNulo(String valor) {
+        return valor == null || valor.trim().isEmpty() ? null : valor.trim();
+    }
+
+    static LocalDate data(String valor, String nome) {
+        if (vazioParaNulo(valor) == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(valor.trim());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(nome + " deve estar no formato yyyy-MM-dd");
+        }
+    }
+}
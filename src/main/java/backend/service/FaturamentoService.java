@@ -1,54 +1,51 @@
 package backend.service;
 
 import backend.dto.Fatura;
+import backend.storage.DurableFileWriter;
+import backend.storage.FaturaStore;
+import backend.storage.SomasPorDia;
 import backend.util.FileUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.core.type.TypeReference;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
 import java.util.logging.Logger;
-import java.util.logging.Level;
 
+/**
+ * Faturas (faturamento_db) e resumo mensal. Instância única: as faturas ficam no FaturaStore, em partições
+ * por mês lidas sob demanda e indexadas por id e por mês, e cada alteração grava a sua partição de forma
+ * durável antes de responder.
+ * O resumo lê totais mantidos a cada alteração de faturas e de ordens (ver obterResumoMensal e obterResumoPeriodo).
+ */
 public class FaturamentoService {
     private static final Logger logger = Logger.getLogger(FaturamentoService.class.getName());
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final String dbFilePath;
+    private static final String DB_NOME = "faturamento_db";
+    private static final TypeReference<Map<String, Object>> TIPO_FATURA = new TypeReference<>() {};
+    private static final int MAX_PERIODOS_RESUMO = 1000;
+    private static final String ESCOPO_TODOS = "todos";
+    private static final String ESCOPO_USUARIO = "usuario";
 
-    public FaturamentoService() {
-        File pythonDir = FileUtil.getPythonDirectory();
-        this.dbFilePath = new File(pythonDir, "faturamento_db.json").getAbsolutePath();
-    }
+    private static final FaturamentoService INSTANCE = new FaturamentoService();
 
-    private Map<String, Object> loadDatabase() throws IOException {
-        File dbFile = new File(dbFilePath);
-        if (!dbFile.exists()) {
-            logger.warning("Banco de dados não encontrado. Criando novo...");
-            return createEmptyDatabase();
-        }
-        return objectMapper.readValue(dbFile, new TypeReference<Map<String, Object>>() {});
-    }
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FaturaStore faturas;
 
-    private Map<String, Object> createEmptyDatabase() {
-        Map<String, Object> db = new HashMap<>();
-        db.put("faturas", new ArrayList<>());
-        db.put("ordens", new ArrayList<>());
-        db.put("vendas", new ArrayList<>());
-        try {
-            saveDatabase(db);
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Erro ao criar banco de dados", e);
-        }
-        return db;
+    /**
+     * Banco, manifesto e partições são lidos em qualquer formato conhecido; cada gravação usa o formato
+     * configurado. Os scripts Python só entendem o formato json.
+     */
+    private FaturamentoService() {
+        this.faturas = new FaturaStore(FileUtil.getPythonDirectory().getAbsoluteFile(), DB_NOME, DurableFileWriter.getInstance());
     }
 
-    private void saveDatabase(Map<String, Object> db) throws IOException {
-        File dbFile = new File(dbFilePath);
-        dbFile.getParentFile().mkdirs();
-        objectMapper.writerWithDefaultPrettyPrinter().writeValue(dbFile, db);
-        logger.info("Banco de dados salvo com sucesso");
+    public static FaturamentoService getInstance() {
+        return INSTANCE;
     }
 
     public Fatura criarFatura(Fatura fatura) throws IOException {
@@ -56,10 +53,6 @@ public class FaturamentoService {
             throw new IllegalArgumentException("Valor da fatura deve ser maior que zero");
         }
         
-        Map<String, Object> db = loadDatabase();
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> faturas = (List<Map<String, Object>>) db.get("faturas");
-        
         if (fatura.getId() == null) {
             fatura.setId(UUID.randomUUID().toString());
         }
@@ -75,30 +68,20 @@ public class FaturamentoService {
             fatura.setDataEmissao(LocalDate.now().toString());
         }
         
-        faturas.add(objectMapper.convertValue(fatura, new TypeReference<Map<String, Object>>() {}));
-        saveDatabase(db);
+        faturas.incluir(objectMapper.convertValue(fatura, TIPO_FATURA));
         
         logger.info("Fatura criada: " + fatura.getId());
         return fatura;
     }
 
     public List<Fatura> listarFaturas(Integer mes, Integer ano) throws IOException {
-        Map<String, Object> db = loadDatabase();
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> faturas = (List<Map<String, Object>>) db.get("faturas");
-        
-        List<Fatura> resultado = new ArrayList<>();
         LocalDate hoje = LocalDate.now();
         int mesAtual = mes != null ? mes : hoje.getMonthValue();
         int anoAtual = ano != null ? ano : hoje.getYear();
         
-        for (Map<String, Object> f : faturas) {
-            Integer fMes = ((Number) f.getOrDefault("mes", mesAtual)).intValue();
-            Integer fAno = ((Number) f.getOrDefault("ano", anoAtual)).intValue();
-            
-            if (fMes == mesAtual && fAno == anoAtual) {
-                resultado.add(objectMapper.convertValue(f, Fatura.class));
-            }
+        List<Fatura> resultado = new ArrayList<>();
+        for (Map<String, Object> f : faturas.listar(anoAtual, mesAtual)) {
+            resultado.add(objectMapper.convertValue(f, Fatura.class));
         }
         
         logger.info("Listadas " + resultado.size() + " faturas para " + mesAtual + "/" + anoAtual);
@@ -106,14 +89,9 @@ public class FaturamentoService {
     }
 
     public Fatura obterFatura(String id) throws IOException {
-        Map<String, Object> db = loadDatabase();
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> faturas = (List<Map<String, Object>>) db.get("faturas");
-        
-        for (Map<String, Object> f : faturas) {
-            if (f.get("id").equals(id)) {
-                return objectMapper.convertValue(f, Fatura.class);
-            }
+        Map<String, Object> f = faturas.obter(id);
+        if (f != null) {
+            return objectMapper.convertValue(f, Fatura.class);
         }
         
         logger.warning("Fatura não encontrada: " + id);
@@ -121,19 +99,29 @@ public class FaturamentoService {
     }
 
     public Fatura atualizarFatura(String id, Fatura fatura) throws IOException {
-        Map<String, Object> db = loadDatabase();
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> faturas = (List<Map<String, Object>>) db.get("faturas");
+        fatura.setId(id);
+        Map<String, Object> nova = objectMapper.convertValue(fatura, TIPO_FATURA);
+        if (faturas.alterar(id, atual -> nova) != null) {
+            logger.info("Fatura atualizada: " + id);
+            return fatura;
+        }
         
-        for (int i = 0; i < faturas.size(); i++) {
-            Map<String, Object> f = faturas.get(i);
-            if (f.get("id").equals(id)) {
-                fatura.setId(id);
-                faturas.set(i, objectMapper.convertValue(fatura, new TypeReference<Map<String, Object>>() {}));
-                saveDatabase(db);
-                logger.info("Fatura atualizada: " + id);
-                return fatura;
-            }
+        logger.warning("Fatura não encontrada para atualização: " + id);
+        throw new IOException("Fatura não encontrada");
+    }
+
+    /**
+     * Altera só o status, lendo e gravando a fatura uma única vez
+     */
+    public Fatura atualizarStatus(String id, String status) throws IOException {
+        Map<String, Object> nova = faturas.alterar(id, atual -> {
+            Map<String, Object> copia = new LinkedHashMap<>(atual);
+            copia.put("status", status);
+            return copia;
+        });
+        if (nova != null) {
+            logger.info("Status da fatura atualizado: " + id + " -> " + status);
+            return objectMapper.convertValue(nova, Fatura.class);
         }
         
         logger.warning("Fatura não encontrada para atualização: " + id);
@@ -141,14 +129,7 @@ public class FaturamentoService {
     }
 
     public void deletarFatura(String id) throws IOException {
-        Map<String, Object> db = loadDatabase();
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> faturas = (List<Map<String, Object>>) db.get("faturas");
-        
-        boolean removido = faturas.removeIf(f -> f.get("id").equals(id));
-        
-        if (removido) {
-            saveDatabase(db);
+        if (faturas.remover(id)) {
             logger.info("Fatura deletada: " + id);
         } else {
             logger.warning("Fatura não encontrada para deleção: " + id);
@@ -156,68 +137,262 @@ public class FaturamentoService {
         }
     }
 
+    /**
+     * Resumo do mês de todos os usuários (visão administrativa; o de um usuário é obterResumoMensal(userId, ...))
+     * a partir dos totais mantidos a cada alteração, sem listar faturas nem ler user_data:
+     * vendas pelos totais por período do FaturaStore e consertos pelo AgregadoConsertos.
+     * totalConsertos continua sendo o total de todas as ordens; as do mês vêm em totalConsertosMes.
+     * Enquanto os totais de consertos estão sendo reconstruídos (depois de uma queda), faz a varredura
+     */
     public Map<String, Object> obterResumoMensal(Integer mes, Integer ano) throws IOException {
-        List<Fatura> faturas = listarFaturas(mes, ano);
-        
-        // FILTRA FATURAS DO TIPO "VENDA"
-        List<Fatura> faturasVenda = new ArrayList<>();
-        for (Fatura f : faturas) {
-            if ("venda".equals(f.getTipo())) {
-                faturasVenda.add(f);
-            }
-        }
-        
-        Double totalVendas = 0.0;
-        Double totalConsertos = 0.0;
-        
-        // Calcula total de vendas
-        for (Fatura f : faturasVenda) {
-            totalVendas += f.getValor();
-        }
-        
-        // Carrega e calcula total de consertos (ordens de serviço)
-        File userDataDir = new File("user_data");
-        if (userDataDir.exists()) {
-            File[] userFiles = userDataDir.listFiles((dir, name) -> name.endsWith(".json"));
-            if (userFiles != null) {
-                for (File userFile : userFiles) {
-                    try {
-                        Map<String, Object> userData = objectMapper.readValue(userFile, new TypeReference<Map<String, Object>>() {});
-                        @SuppressWarnings("unchecked")
-                        List<Map<String, Object>> ordens = (List<Map<String, Object>>) userData.getOrDefault("ordens", new ArrayList<>());
-                        
-                        for (Map<String, Object> ordem : ordens) {
-                            Object valorConserto = ordem.get("valorConserto");
-                            if (valorConserto != null) {
-                                if (valorConserto instanceof Number) {
-                                    totalConsertos += ((Number) valorConserto).doubleValue();
-                                } else if (valorConserto instanceof String) {
-                                    try {
-                                        totalConsertos += Double.parseDouble((String) valorConserto);
-                                    } catch (NumberFormatException e) {
-                                        logger.warning("Valor de conserto inválido: " + valorConserto);
-                                    }
-                                }
-                            }
-                        }
-                    } catch (IOException e) {
-                        logger.log(Level.WARNING, "Erro ao ler dados do usuário: " + userFile.getName(), e);
-                    }
-                }
-            }
+        LocalDate hoje = LocalDate.now();
+        int mesAtual = mes != null ? mes : hoje.getMonthValue();
+        int anoAtual = ano != null ? ano : hoje.getYear();
+        FaturaStore.ResumoVendas vendas = faturas.resumoVendas(anoAtual, mesAtual);
+        Double totalVendas = vendas.getTotal().doubleValue();
+
+        String mesConsertos = String.format("%04d-%02d", anoAtual, mesAtual);
+        UserDataService userDataService = UserDataService.getInstance();
+        AgregadoConsertos agregado = userDataService.getConsertos();
+        long[] consertos;
+        if (agregado.isPronto()) {
+            long[] doMes = agregado.doMes(mesConsertos);
+            consertos = new long[]{agregado.getCentavos(), doMes[0], doMes[1]};
+        } else {
+            consertos = somarConsertos(userDataService, mesConsertos);
         }
-        
+
+        return resumo(mesAtual, anoAtual, ESCOPO_TODOS, totalVendas, vendas.getQuantidade(), consertos);
+    }
+
+    /**
+     * Resumo do mês só com os dados de um usuário, sem ler os demais nem o faturamento_db (as faturas não têm dono):
+     * vendas da coleção vendas do usuário, pela data da venda, e consertos das suas ordens em uso e arquivadas
+     * (UserDataService.vendasPorDia e consertosPorDia; os consertos de um usuário fora do cache vêm dos totais
+     * memorizados enquanto os arquivos dele não mudarem). Mesmos campos do resumo de todos os usuários,
+     * com totalConsertos sendo o total de todas as ordens do usuário
+     */
+    public Map<String, Object> obterResumoMensal(String userId, Integer mes, Integer ano) throws IOException {
+        LocalDate hoje = LocalDate.now();
+        int mesAtual = mes != null ? mes : hoje.getMonthValue();
+        int anoAtual = ano != null ? ano : hoje.getYear();
+        String doMes = String.format("%04d-%02d", anoAtual, mesAtual);
+        UserDataService userDataService = UserDataService.getInstance();
+        long[] vendas = totaisDoMes(userDataService.vendasPorDia(userId), doMes);
+        long[] consertos = totaisDoMes(userDataService.consertosPorDia(userId), doMes);
+        return resumo(mesAtual, anoAtual, ESCOPO_USUARIO, vendas[1] / 100.0, vendas[2], consertos);
+    }
+
+    /**
+     * @param consertos centavos de todas as ordens, centavos e quantidade das do mês
+     */
+    private static Map<String, Object> resumo(int mes, int ano, String escopo, Double totalVendas, long quantidadeVendas,
+                                              long[] consertos) {
+        Double totalConsertos = consertos[0] / 100.0;
         Double totalGeral = totalVendas + totalConsertos;
-        
+
         Map<String, Object> resumo = new HashMap<>();
-        resumo.put("mes", mes != null ? mes : LocalDate.now().getMonthValue());
-        resumo.put("ano", ano != null ? ano : LocalDate.now().getYear());
+        resumo.put("mes", mes);
+        resumo.put("ano", ano);
+        resumo.put("escopo", escopo);
         resumo.put("totalVendas", totalVendas);
         resumo.put("totalConsertos", totalConsertos);
+        resumo.put("totalConsertosMes", consertos[1] / 100.0);
+        resumo.put("quantidadeConsertosMes", consertos[2]);
         resumo.put("totalGeral", totalGeral);
-        resumo.put("quantidade", faturasVenda.size());
+        resumo.put("quantidade", quantidadeVendas);
         resumo.put("observacao", "Total de vendas e consertos (ordens de serviço) computados juntos no faturamento.");
-        
         return resumo;
     }
+
+    /**
+     * Centavos de todos os dias, centavos e quantidade dos dias do mês (yyyy-MM), de totais por dia
+     */
+    private static long[] totaisDoMes(Map<String, long[]> dias, String mes) {
+        long[] totais = new long[3];
+        for (Map.Entry<String, long[]> e : dias.entrySet()) {
+            totais[0] += e.getValue()[0];
+            if (e.getKey().startsWith(mes)) {
+                totais[1] += e.getValue()[0];
+                totais[2] += e.getValue()[1];
+            }
+        }
+        return totais;
+    }
+
+    /**
+     * Vendas e consertos de todos os usuários em cada período (granularidade day, week ou month; semanas de
+     * segunda a domingo) de de até ate, inclusive; o primeiro e o último período são cortados no intervalo.
+     * Visão administrativa; a de um usuário é obterResumoPeriodo(userId, ...).
+     * Cada período sai das somas acumuladas por dia (FaturaStore.vendasPorDia, AgregadoConsertos.intervalo),
+     * então o custo depende só do número de períodos. Enquanto os totais de consertos estão sendo
+     * reconstruídos, os consertos vêm da varredura
+     * @throws IllegalArgumentException intervalo invertido, granularidade desconhecida ou mais de MAX_PERIODOS_RESUMO períodos
+     */
+    public Map<String, Object> obterResumoPeriodo(LocalDate de, LocalDate ate, String granularidade) throws IOException {
+        List<LocalDate[]> periodos = periodos(de, ate, granularidade);
+        SomasPorDia vendas = faturas.vendasPorDia();
+        UserDataService userDataService = UserDataService.getInstance();
+        AgregadoConsertos agregado = userDataService.getConsertos();
+        BiFunction<LocalDate, LocalDate, long[]> consertos;
+        if (agregado.isPronto()) {
+            consertos = agregado::intervalo;
+        } else {
+            consertos = consertosPorDia(userDataService)::intervalo;
+        }
+        return resumoPeriodo(de, ate, granularidade, ESCOPO_TODOS, periodos, vendas::intervalo, consertos);
+    }
+
+    /**
+     * Como obterResumoPeriodo, só com os dados de um usuário: vendas da sua coleção vendas e consertos das suas
+     * ordens em uso e arquivadas, pelos totais por dia do usuário (UserDataService.vendasPorDia e consertosPorDia),
+     * sem ler os demais usuários nem o faturamento_db
+     * @throws IllegalArgumentException intervalo invertido, granularidade desconhecida ou mais de MAX_PERIODOS_RESUMO períodos
+     */
+    public Map<String, Object> obterResumoPeriodo(String userId, LocalDate de, LocalDate ate, String granularidade) throws IOException {
+        List<LocalDate[]> periodos = periodos(de, ate, granularidade);
+        UserDataService userDataService = UserDataService.getInstance();
+        SomasPorDia vendas = somasPorDia(userDataService.vendasPorDia(userId));
+        SomasPorDia consertos = somasPorDia(userDataService.consertosPorDia(userId));
+        return resumoPeriodo(de, ate, granularidade, ESCOPO_USUARIO, periodos, vendas::intervalo, consertos::intervalo);
+    }
+
+    private static Map<String, Object> resumoPeriodo(LocalDate de, LocalDate ate, String granularidade, String escopo,
+                                                     List<LocalDate[]> periodos,
+                                                     BiFunction<LocalDate, LocalDate, long[]> vendas,
+                                                     BiFunction<LocalDate, LocalDate, long[]> consertos) {
+        List<Map<String, Object>> lista = new ArrayList<>(periodos.size());
+        long[] total = new long[4];
+        for (LocalDate[] periodo : periodos) {
+            long[] doPeriodo = vendas.apply(periodo[0], periodo[1]);
+            long[] consertosDoPeriodo = consertos.apply(periodo[0], periodo[1]);
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("inicio", periodo[0].toString());
+            item.put("fim", periodo[1].toString());
+            item.putAll(totaisPeriodo(doPeriodo, consertosDoPeriodo));
+            lista.add(item);
+            total[0] += doPeriodo[0];
+            total[1] += doPeriodo[1];
+            total[2] += consertosDoPeriodo[0];
+            total[3] += consertosDoPeriodo[1];
+        }
+
+        Map<String, Object> resumo = new LinkedHashMap<>();
+        resumo.put("from", de.toString());
+        resumo.put("to", ate.toString());
+        resumo.put("granularity", granularidade);
+        resumo.put("escopo", escopo);
+        resumo.putAll(totaisPeriodo(new long[]{total[0], total[1]}, new long[]{total[2], total[3]}));
+        resumo.put("periodos", lista);
+        return resumo;
+    }
+
+    private static Map<String, Object> totaisPeriodo(long[] vendas, long[] consertos) {
+        Map<String, Object> totais = new LinkedHashMap<>();
+        totais.put("totalVendas", vendas[0] / 100.0);
+        totais.put("quantidadeVendas", vendas[1]);
+        totais.put("totalConsertos", consertos[0] / 100.0);
+        totais.put("quantidadeConsertos", consertos[1]);
+        totais.put("totalGeral", (vendas[0] + consertos[0]) / 100.0);
+        return totais;
+    }
+
+    /**
+     * Início e fim de cada período de de até ate
+     */
+    private static List<LocalDate[]> periodos(LocalDate de, LocalDate ate, String granularidade) {
+        if (ate.isBefore(de)) {
+            throw new IllegalArgumentException("from deve ser anterior ou igual a to");
+        }
+        if (!List.of("day", "week", "month").contains(granularidade)) {
+            throw new IllegalArgumentException("granularity deve ser day, week ou month");
+        }
+        List<LocalDate[]> periodos = new ArrayList<>();
+        for (LocalDate inicio = de; !inicio.isAfter(ate); ) {
+            LocalDate fim;
+            switch (granularidade) {
+                case "week":
+                    fim = inicio.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
+                    break;
+                case "month":
+                    fim = inicio.with(TemporalAdjusters.lastDayOfMonth());
+                    break;
+                default:
+                    fim = inicio;
+            }
+            if (fim.isAfter(ate)) {
+                fim = ate;
+            }
+            if (periodos.size() == MAX_PERIODOS_RESUMO) {
+                throw new IllegalArgumentException("O intervalo passa de " + MAX_PERIODOS_RESUMO
+                    + " períodos; use uma granularidade maior");
+            }
+            periodos.add(new LocalDate[]{inicio, fim});
+            inicio = fim.plusDays(1);
+        }
+        return periodos;
+    }
+
+    /**
+     * Refaz os totais do resumo a partir dos dados gravados (recuperação): relê o manifesto das faturas
+     * e varre as ordens de todos os usuários
+     */
+    public Map<String, Object> reconstruirResumo() throws IOException {
+        long inicio = System.currentTimeMillis();
+        int quantidadeFaturas = faturas.recarregar();
+        VarreduraUsuarios.Resultado varredura = UserDataService.getInstance().reconstruirConsertos();
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("faturas", quantidadeFaturas);
+        resultado.putAll(varredura.toMap());
+        resultado.put("duracaoMs", System.currentTimeMillis() - inicio);
+        logger.info("Totais do resumo reconstruídos: " + resultado);
+        return resultado;
+    }
+
+    /**
+     * Varredura paralela dos totais por dia de cada usuário (UserDataService.consertosPorDia: só relê
+     * quem foi alterado desde a última varredura). Usuários ilegíveis ficam de fora (ver VarreduraUsuarios)
+     * @return centavos de todas as ordens, centavos e quantidade das do mês (yyyy-MM)
+     */
+    private static long[] somarConsertos(UserDataService userDataService, String mes) throws IOException {
+        LongAdder total = new LongAdder();
+        LongAdder totalMes = new LongAdder();
+        LongAdder quantidadeMes = new LongAdder();
+        userDataService.varrerConsertos((userId, dias) -> {
+            long[] doUsuario = totaisDoMes(dias, mes);
+            total.add(doUsuario[0]);
+            totalMes.add(doUsuario[1]);
+            quantidadeMes.add(doUsuario[2]);
+        });
+        return new long[]{total.sum(), totalMes.sum(), quantidadeMes.sum()};
+    }
+
+    /**
+     * Totais por dia de todos os usuários pela varredura (como somarConsertos), para intervalos
+     */
+    private static SomasPorDia consertosPorDia(UserDataService userDataService) throws IOException {
+        SomasPorDia somas = new SomasPorDia();
+        userDataService.varrerConsertos((userId, dias) -> somar(somas, dias));
+        return somas;
+    }
+
+    /**
+     * Totais por dia de um usuário (yyyy-MM-dd ou SEM_DATA), para intervalos
+     */
+    private static SomasPorDia somasPorDia(Map<String, long[]> dias) {
+        SomasPorDia somas = new SomasPorDia();
+        somar(somas, dias);
+        return somas;
+    }
+
+    /**
+     * Soma os dias com data; SEM_DATA não entra em nenhum intervalo
+     */
+    private static void somar(SomasPorDia somas, Map<String, long[]> dias) {
+        dias.forEach((dia, total) -> {
+            if (!AgregadoConsertos.SEM_DATA.equals(dia)) {
+                somas.somar(AgregadoConsertos.data(dia), total[0], total[1]);
+            }
+        });
+    }
 }
@@ -0,0 +1,137 @@
+package backend.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Leitura do corpo de uma inclusão em lote: array JSON ou NDJSON (um objeto por linha).
+ * Cada item é validado isoladamente; um item inválido vira erro só daquele item.
+ * No NDJSON até uma linha com JSON malformado é isolada; no array, JSON malformado invalida o lote.
+ */
+public class LoteRegistros {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> TIPO_REGISTRO = new TypeReference<>() {};
+
+    /**
+     * Item do lote: registro válido ou mensagem de erro
+     */
+    public static final class Item {
+        private final Map<String, Object> registro;
+        private final String erro;
+
+        private Item(Map<String, Object> registro, String erro) {
+            this.registro = registro;
+            this.erro = erro;
+        }
+
+        public Map<String, Object> getRegistro() { return registro; }
+
+        public String getErro() { return erro; }
+    }
+
+    /**
+     * Lê os itens do corpo. NDJSON se o Content-Type indicar ou se o corpo começar com um objeto
+     * @throws IllegalArgumentException se o corpo estiver vazio, malformado (array) ou exceder maxItens
+     */
+    public static List<Item> ler(InputStream corpo, String contentType, int maxItens) throws IOException {
+        BufferedInputStream entrada = new BufferedInputStream(corpo);
+        int primeiro = primeiroCaractere(entrada);
+        if (primeiro < 0) {
+            throw new IllegalArgumentException("O lote está vazio");
+        }
+        boolean ndjson = (contentType != null && contentType.toLowerCase(Locale.ROOT).contains("ndjson")) || primeiro == '{';
+        List<Item> itens = ndjson ? lerLinhas(entrada, maxItens) : lerArray(entrada, maxItens);
+        if (itens.isEmpty()) {
+            throw new IllegalArgumentException("O lote está vazio");
+        }
+        return itens;
+    }
+
+    private static int primeiroCaractere(BufferedInputStream entrada) throws IOException {
+        while (true) {
+            entrada.mark(1);
+            int c = entrada.read();
+            if (c < 0 || !Character.isWhitespace(c)) {
+                entrada.reset();
+                return c;
+            }
+        }
+    }
+
+    private static List<Item> lerArray(InputStream entrada, int maxItens) throws IOException {
+        List<Item> itens = new ArrayList<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(entrada)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("O lote deve ser um array JSON ou NDJSON");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new IllegalArgumentException("Array JSON incompleto");
+                }
+                limitar(itens, maxItens);
+                if (token == JsonToken.START_OBJECT) {
+                    itens.add(validar(parser.readValueAs(TIPO_REGISTRO)));
+                } else {
+                    parser.skipChildren();
+                    itens.add(new Item(null, "Registro deve ser um objeto JSON"));
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("JSON inválido: " + e.getOriginalMessage());
+        }
+        return itens;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Item> lerLinhas(InputStream entrada, int maxItens) throws IOException {
+        List<Item> itens = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8));
+        String linha;
+        int numero = 0;
+        while ((linha = reader.readLine()) != null) {
+            numero++;
+            if (linha.isBlank()) {
+                continue;
+            }
+            limitar(itens, maxItens);
+            Object valor;
+            try {
+                valor = objectMapper.readValue(linha, Object.class);
+            } catch (JsonProcessingException e) {
+                itens.add(new Item(null, "JSON inválido na linha " + numero + ": " + e.getOriginalMessage()));
+                continue;
+            }
+            itens.add(valor instanceof Map ? validar((Map<String, Object>) valor)
+                : new Item(null, "Registro deve ser um objeto JSON (linha " + numero + ")"));
+        }
+        return itens;
+    }
+
+    private static void limitar(List<Item> itens, int maxItens) {
+        if (itens.size() >= maxItens) {
+            throw new IllegalArgumentException("O lote excede o limite de " + maxItens + " registros");
+        }
+    }
+
+    private static Item validar(Map<String, Object> registro) {
+        if (registro == null || registro.isEmpty()) {
+            return new Item(null, "Os dados do registro são obrigatórios");
+        }
+        Object id = registro.get("id");
+        if (id != null && !(id instanceof String || id instanceof Number)) {
+            return new Item(null, "id deve ser texto ou número");
+        }
+        if (id instanceof String && ((String) id).isBlank()) {
+            return new Item(null, "id não pode ser vazio");
+        }
+        return new Item(registro, null);
+    }
+}
@@ -0,0 +1,137 @@
+package backend.service;
+
+import backend.storage.DurableFileWriter;
+import backend.storage.StorageCodec;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Totais de consertos por dia de cada usuário já varrido, guardados com a assinatura dos arquivos lidos
+ * (UserDataRepository.assinatura: caminho, data e tamanho). Numa nova varredura, o usuário cuja assinatura
+ * não mudou não é relido. Gravado em disco ao fim de cada varredura para valer depois de reiniciar;
+ * por ser só um atalho, um arquivo ausente ou inválido apenas faz tudo ser relido.
+ */
+public class ParciaisConsertos {
+    private static final Logger logger = Logger.getLogger(ParciaisConsertos.class.getName());
+    private static final TypeReference<Map<String, Object>> TIPO_ARQUIVO = new TypeReference<>() {};
+
+    private static final class Parcial {
+        final String assinatura;
+        final Map<String, long[]> dias;
+
+        Parcial(String assinatura, Map<String, long[]> dias) {
+            this.assinatura = assinatura;
+            this.dias = dias;
+        }
+    }
+
+    private final File arquivo;
+    private final Map<String, Parcial> parciais = new ConcurrentHashMap<>();
+    private volatile boolean alterado;
+
+    private final AtomicLong acertos = new AtomicLong();
+    private final AtomicLong releituras = new AtomicLong();
+
+    /**
+     * @param arquivo onde os totais são gravados, ou null para mantê-los só em memória
+     */
+    ParciaisConsertos(File arquivo) {
+        this.arquivo = arquivo;
+    }
+
+    /**
+     * Totais guardados do usuário se a assinatura for a mesma, ou null (conta como releitura)
+     */
+    Map<String, long[]> obter(String userId, String assinatura) {
+        Parcial parcial = parciais.get(userId);
+        if (parcial != null && parcial.assinatura.equals(assinatura)) {
+            acertos.incrementAndGet();
+            return parcial.dias;
+        }
+        releituras.incrementAndGet();
+        return null;
+    }
+
+    void guardar(String userId, String assinatura, Map<String, long[]> dias) {
+        parciais.put(userId, new Parcial(assinatura, dias));
+        alterado = true;
+    }
+
+    /**
+     * Descarta quem não está mais entre os usuários (depois de uma varredura completa)
+     */
+    void manterSomente(Collection<String> usuarios) {
+        if (parciais.keySet().retainAll(new HashSet<>(usuarios))) {
+            alterado = true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void carregar() {
+        if (arquivo == null || !arquivo.exists()) {
+            return;
+        }
+        try {
+            Map<String, Object> gravado = StorageCodec.lerArquivo(arquivo, TIPO_ARQUIVO);
+            Map<String, Object> usuarios = (Map<String, Object>) gravado.getOrDefault("usuarios", Map.of());
+            for (Map.Entry<String, Object> e : usuarios.entrySet()) {
+                Map<String, Object> parcial = (Map<String, Object>) e.getValue();
+                if (!(parcial.get("dias") instanceof Map)) {
+                    // Gravado por uma versão que totalizava por mês: o usuário é relido
+                    continue;
+                }
+                Map<String, long[]> dias = new HashMap<>();
+                for (Map.Entry<String, Object> dia : ((Map<String, Object>) parcial.get("dias")).entrySet()) {
+                    List<Number> total = (List<Number>) dia.getValue();
+                    dias.put(dia.getKey(), new long[]{total.get(0).longValue(), total.get(1).longValue()});
+                }
+                parciais.put(e.getKey(), new Parcial((String) parcial.get("assinatura"), dias));
+            }
+            logger.info("Totais de consertos por usuário carregados: " + parciais.size());
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Totais de consertos por usuário inválidos; os usuários serão relidos", e);
+            parciais.clear();
+        }
+    }
+
+    /**
+     * Grava se algo mudou desde a última gravação
+     */
+    synchronized void gravar(DurableFileWriter writer) {
+        if (arquivo == null || !alterado) {
+            return;
+        }
+        alterado = false;
+        Map<String, Object> usuarios = new LinkedHashMap<>();
+        for (Map.Entry<String, Parcial> e : parciais.entrySet()) {
+            Map<String, Object> dias = new LinkedHashMap<>();
+            e.getValue().dias.forEach((dia, total) -> dias.put(dia, List.of(total[0], total[1])));
+            Map<String, Object> parcial = new LinkedHashMap<>();
+            parcial.put("assinatura", e.getValue().assinatura);
+            parcial.put("dias", dias);
+            usuarios.put(e.getKey(), parcial);
+        }
+        try {
+            arquivo.getParentFile().mkdirs();
+            writer.escrever(arquivo.toPath(), out -> StorageCodec.JSON.escrever(out, Map.of("usuarios", usuarios)));
+        } catch (IOException e) {
+            alterado = true;
+            logger.log(Level.WARNING, "Erro ao gravar os totais de consertos por usuário", e);
+        }
+    }
+
+    public Map<String, Object> estatisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("usuarios", parciais.size());
+        stats.put("acertos", acertos.get());
+        stats.put("releituras", releituras.get());
+        return stats;
+    }
+}
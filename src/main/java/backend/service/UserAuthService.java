@@ -1,12 +1,16 @@
 package backend.service;
 
+import backend.dto.ErrorResponse;
 import backend.dto.User;
+import backend.storage.DurableFileWriter;
+import backend.storage.StorageCodec;
+import backend.util.ConfigUtil;
 import backend.util.JwtUtil;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.core.type.TypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.logging.Logger;
@@ -14,8 +18,11 @@ import java.util.logging.Level;
 
 public class UserAuthService {
     private static final Logger logger = Logger.getLogger(UserAuthService.class.getName());
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final String usersDbPath = "users_db.json";
+    private static final String USERS_DB_NOME = "users_db";
+    private static final String PREFIXO_BEARER = "Bearer ";
+    // Emails com acesso às rotas administrativas (totais de todos os usuários, estatísticas internas)
+    private static final Set<String> ADMINS = admins(ConfigUtil.getString("scartech.admin.emails", ""));
+    private final File usersDbDir = new File(".");
 
     /**
      * Registra um novo usuário
@@ -93,14 +100,14 @@ public class UserAuthService {
      * Carrega todos os usuários do arquivo
      */
     private List<User> carregarUsuarios() throws IOException {
-        File file = new File(usersDbPath);
-        if (!file.exists()) {
+        File file = StorageCodec.localizar(usersDbDir, USERS_DB_NOME);
+        if (file == null) {
             logger.info("Arquivo de usuários não existe, criando novo");
             return new ArrayList<>();
         }
 
         try {
-            return objectMapper.readValue(file, new TypeReference<List<User>>() {});
+            return StorageCodec.lerArquivo(file, new TypeReference<List<User>>() {});
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao carregar usuários", e);
             return new ArrayList<>();
@@ -108,12 +115,15 @@ public class UserAuthService {
     }
 
     /**
-     * Salva usuários no arquivo
+     * Salva usuários no arquivo pelo DurableFileWriter (temporário + fsync + rename): uma falha no meio
+     * mantém o arquivo anterior inteiro. O arquivo em formato antigo só é removido depois da troca
      */
     private void salvarUsuarios(List<User> usuarios) throws IOException {
         try {
-            File file = new File(usersDbPath);
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, usuarios);
+            StorageCodec codec = StorageCodec.configurado();
+            File arquivo = codec.arquivo(usersDbDir, USERS_DB_NOME);
+            DurableFileWriter.getInstance().escrever(arquivo.toPath(), out -> codec.escrever(out, usuarios));
+            StorageCodec.removerFormatosAntigos(usersDbDir, USERS_DB_NOME);
             logger.info("Usuários salvos com sucesso");
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Erro ao salvar usuários", e);
@@ -169,19 +179,84 @@ public class UserAuthService {
         return JwtUtil.extractEmail(token);
     }
 
+    /**
+     * Valida o token Bearer do header Authorization
+     * @return userId se válido, null se ausente ou inválido
+     */
+    public String extrairUserIdDoHeader(String authHeader) {
+        String token = tokenDoHeader(authHeader);
+        if (token == null) {
+            return null;
+        }
+        String userId = extrairUserId(token);
+        logger.info("Token válido para usuário: " + userId);
+        return userId;
+    }
+
+    /**
+     * Resposta 401 para header Authorization ausente ou token inválido
+     */
+    public static ResponseEntity<ErrorResponse> erroAutenticacao() {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
+            new ErrorResponse(
+                "Autenticação requerida",
+                "Adicione um token válido no header: Authorization: Bearer {token}",
+                401
+            )
+        );
+    }
+
+    /**
+     * Confere se o token Bearer do header Authorization é de um administrador (email em scartech.admin.emails)
+     * @return null se for; senão a resposta de erro (401 sem token válido, 403 para quem não é administrador)
+     */
+    public ResponseEntity<ErrorResponse> verificarAdmin(String authHeader) {
+        String token = tokenDoHeader(authHeader);
+        if (token == null) {
+            return erroAutenticacao();
+        }
+        String email = extrairEmail(token);
+        if (email != null && ADMINS.contains(email.toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        logger.warning("Acesso administrativo negado para: " + email);
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body(
+            new ErrorResponse(
+                "Acesso negado",
+                "Rota restrita a administradores (scartech.admin.emails)",
+                403
+            )
+        );
+    }
+
+    private String tokenDoHeader(String authHeader) {
+        if (authHeader == null || !authHeader.startsWith(PREFIXO_BEARER)) {
+            logger.warning("Token não fornecido no header Authorization");
+            return null;
+        }
+        String token = authHeader.substring(PREFIXO_BEARER.length());
+        if (!validarToken(token)) {
+            logger.warning("Token inválido ou expirado");
+            return null;
+        }
+        return token;
+    }
+
+    private static Set<String> admins(String emails) {
+        Set<String> admins = new HashSet<>();
+        for (String email : emails.split(",")) {
+            if (!email.trim().isEmpty()) {
+                admins.add(email.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return admins;
+    }
+
     /**
      * Cria arquivo de dados isolado para novo usuário
      */
     private void criarDadosUsuario(String userId) throws IOException {
         try {
-            // Cria diretório user_data se não existir
-            File userDataDir = new File("user_data");
-            if (!userDataDir.exists()) {
-                if (!userDataDir.mkdirs()) {
-                    logger.warning("Falha ao criar diretório user_data");
-                }
-            }
-
             // Cria estrutura padrão vazia para o usuário
             Map<String, Object> userData = new LinkedHashMap<>();
             userData.put("userId", userId);
@@ -191,9 +266,8 @@ public class UserAuthService {
             userData.put("criadoEm", LocalDateTime.now().toString());
             userData.put("atualizadoEm", LocalDateTime.now().toString());
 
-            // Salva arquivo isolado do usuário
-            File userFile = new File("user_data/" + userId + ".json");
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(userFile, userData);
+            // Salva pelo serviço de dados (cache + lock do usuário) em vez de escrever o arquivo direto
+            UserDataService.getInstance().substituirDocumento(userId, userData);
 
             logger.info("Dados isolados criados para usuário: " + userId);
         } catch (IOException e) {
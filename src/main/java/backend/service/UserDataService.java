@@ -0,0 +1,1233 @@
+package backend.service;
+
+import backend.dto.Registro;
+import backend.dto.Venda;
+import backend.storage.ArquivoFrio;
+import backend.storage.DurableFileWriter;
+import backend.storage.IndiceTexto;
+import backend.storage.IndicesOrdens;
+import backend.storage.IndicesUsuario;
+import backend.storage.Revisoes;
+import backend.storage.StorageCodec;
+import backend.storage.StripedLocks;
+import backend.storage.UserDataCache;
+import backend.storage.UserDataRepository;
+import backend.storage.UserJournal;
+import backend.storage.Versoes;
+import backend.util.ConfigUtil;
+import backend.util.RegistroUtil;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+
+/**
+ * Acesso aos dados isolados de cada usuário, persistidos por um UserDataRepository
+ * (padrão: manifesto user_data/a/b/{userId}.json, um arquivo por coleção e journal; ou .smile/.cbor conforme StorageCodec).
+ * Instância única compartilhada por /api/data e /api/user-data, com cache write-behind.
+ * Cada coleção é carregada e gravada separadamente: GET /ordens não lê vendas nem produtos.
+ * Inclusões (/add) são anexadas como operações; as coleções só são regravadas na compactação.
+ *
+ * Toda alteração de um usuário é feita com o seu lock (StripedLocks): escritas do mesmo usuário
+ * ficam ordenadas e usuários diferentes seguem em paralelo.
+ *
+ * Ordens fechadas antigas vão para o arquivo frio (ArquivoFrio, ArquivadorOrdens) e só são lidas pelo histórico.
+ * Os totais de consertos do faturamento (AgregadoConsertos) acompanham cada alteração de ordens.
+ *
+ * Os documentos devolvidos são compartilhados entre requisições e devem ser tratados como somente leitura:
+ * o mapa de topo é substituído a cada alteração e as coleções são CopyOnWriteArrayList.
+ */
+public class UserDataService {
+    private static final Logger logger = Logger.getLogger(UserDataService.class.getName());
+    public static final String DATA_DIR = "user_data";
+    public static final List<String> COLECOES = List.of("ordens", "vendas", "produtos");
+    private static final int LIMITE_BUSCA_PADRAO = 20;
+    private static final int LIMITE_BUSCA_MAXIMO = 100;
+    private static final int TENTATIVAS_HISTORICO = 3;
+    // Dados derivados ficam fora da raiz: lá todo .json é tomado por arquivo de usuário (layout plano antigo)
+    private static final File DIRETORIO_AGREGADOS = new File(DATA_DIR, "agregados");
+    private static final String ARQUIVO_CONSERTOS = "consertos.json";
+    private static final String ARQUIVO_PARCIAIS_CONSERTOS = "consertos-por-usuario.json";
+    private static final Set<String> CAMPOS_VENDAS;
+
+    static {
+        Set<String> campos = new HashSet<>(RegistroUtil.CAMPOS_DATA);
+        campos.add("valor");
+        CAMPOS_VENDAS = Collections.unmodifiableSet(campos);
+    }
+
+    private static final UserDataService INSTANCE = new UserDataService();
+
+    private final UserDataRepository repositorio;
+    private final StripedLocks locks;
+    private final UserDataCache cache;
+    private final int maxItensLote;
+    private final Versoes versoes = new Versoes();
+    private final ArquivoFrio arquivoFrio;
+    private final ArquivadorOrdens arquivador;
+    private final AgregadoConsertos consertos = new AgregadoConsertos();
+    private final VarreduraUsuarios varredura;
+    private final ParciaisConsertos parciais;
+
+    private UserDataService() {
+        this.repositorio = UserDataRepository.configurado(new File(DATA_DIR), COLECOES);
+        this.maxItensLote = ConfigUtil.getInt("scartech.lote.max-itens", 10000);
+        this.locks = new StripedLocks(ConfigUtil.getInt("scartech.locks.faixas", 64));
+        this.cache = new UserDataCache(
+            userId -> normalizarManifesto(repositorio.carregarManifesto(userId)),
+            (userId, colecao) -> new CopyOnWriteArrayList<>(Registro.tiparTodos(colecao, repositorio.carregarColecao(userId, colecao))),
+            repositorio::gravar,
+            locks,
+            ConfigUtil.getInt("scartech.cache.max-entradas", 1000),
+            ConfigUtil.getLong("scartech.cache.ociosidade-ms", 10 * 60 * 1000L),
+            ConfigUtil.getLong("scartech.cache.flush-intervalo-ms", 2000L)
+        );
+        this.arquivoFrio = new ArquivoFrio(new File(DATA_DIR, "frio"), DurableFileWriter.getInstance());
+        this.arquivador = new ArquivadorOrdens(this);
+        this.varredura = new VarreduraUsuarios(ConfigUtil.getInt("scartech.varredura.paralelismo",
+            2 * Runtime.getRuntime().availableProcessors()));
+        this.parciais = new ParciaisConsertos(repositorio.isPersistente()
+            ? new File(DIRETORIO_AGREGADOS, ARQUIVO_PARCIAIS_CONSERTOS) : null);
+        parciais.carregar();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            arquivador.encerrar();
+            cache.encerrar();
+            gravarConsertos();
+            repositorio.fechar();
+        }, "user-data-cache-shutdown"));
+        iniciarConsertos();
+    }
+
+    /**
+     * Carrega os totais de consertos gravados no último encerramento; sem eles (primeira execução,
+     * queda ou backend em memória), reconstrói em segundo plano. Até lá o faturamento faz a varredura
+     */
+    private void iniciarConsertos() {
+        File arquivo = new File(DIRETORIO_AGREGADOS, ARQUIVO_CONSERTOS);
+        try {
+            if (repositorio.isPersistente() && consertos.carregar(arquivo)) {
+                return;
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Totais de consertos gravados inválidos; serão reconstruídos", e);
+        }
+        arquivo.delete();
+        Thread reconstrucao = new Thread(() -> {
+            try {
+                reconstruirConsertos();
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.SEVERE, "Erro ao reconstruir os totais de consertos", e);
+            }
+        }, "agregado-consertos");
+        reconstrucao.setDaemon(true);
+        reconstrucao.start();
+    }
+
+    private void gravarConsertos() {
+        if (!repositorio.isPersistente()) {
+            return;
+        }
+        try {
+            DIRETORIO_AGREGADOS.mkdirs();
+            consertos.gravar(new File(DIRETORIO_AGREGADOS, ARQUIVO_CONSERTOS), DurableFileWriter.getInstance());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Erro ao gravar os totais de consertos (serão reconstruídos)", e);
+        }
+        parciais.gravar(DurableFileWriter.getInstance());
+    }
+
+    public static UserDataService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Copia o documento garantindo as coleções padrão em listas seguras para leitura concorrente,
+     * com os registros tipados (Ordem, Venda, Produto)
+     */
+    private Map<String, Object> normalizar(Map<String, Object> data) {
+        Map<String, Object> normalizado = new LinkedHashMap<>(data);
+        for (String colecao : COLECOES) {
+            Object valor = normalizado.get(colecao);
+            normalizado.put(colecao, valor instanceof List
+                ? new CopyOnWriteArrayList<>(Registro.tiparTodos(colecao, (List<?>) valor)) : new CopyOnWriteArrayList<>());
+        }
+        normalizado.put(Revisoes.CAMPO_DOCUMENTO, Revisoes.maiorRevisao(normalizado, COLECOES));
+        return normalizado;
+    }
+
+    /**
+     * Manifesto carregado do repositório (sem as coleções), com _revisao coerente com as remoções
+     */
+    private static Map<String, Object> normalizarManifesto(Map<String, Object> manifesto) {
+        Map<String, Object> normalizado = new LinkedHashMap<>(manifesto);
+        normalizado.keySet().removeAll(COLECOES);
+        normalizado.put(Revisoes.CAMPO_DOCUMENTO, Revisoes.maiorRevisao(normalizado, COLECOES));
+        return normalizado;
+    }
+
+    /**
+     * Coleções padrão entre as informadas (as demais listas ficam no manifesto)
+     */
+    private static List<String> colecoesPadrao(Collection<String> colecoes) {
+        List<String> padrao = new ArrayList<>(colecoes);
+        padrao.retainAll(COLECOES);
+        return padrao;
+    }
+
+    /**
+     * Retorna o documento completo do usuário (somente leitura)
+     */
+    public Map<String, Object> carregar(String userId) throws IOException {
+        return cache.obter(userId, COLECOES).getDocumento();
+    }
+
+    /**
+     * ETag atual do documento (colecao null) ou de uma coleção, sem acessar cache nem disco.
+     * Deve ser obtida antes de ler os dados: assim a ETag nunca é mais nova que o conteúdo enviado
+     */
+    public String etag(String userId, String colecao) {
+        return versoes.etag(userId, colecao);
+    }
+
+    /**
+     * Documento pronto para ser transmitido como JSON, sem montar a resposta inteira em memória
+     */
+    public interface Transmissao {
+        void transmitir(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Prepara a transmissão do documento completo do usuário.
+     * Se o usuário não está em cache e o repositório oferece o snapshot sem operações pendentes,
+     * ele é copiado token a token para a resposta (memória constante, sem popular o cache); caso
+     * contrário o documento em memória é serializado diretamente na saída.
+     * O snapshot é aberto com o lock do usuário, então a transmissão reflete um estado consistente
+     */
+    public Transmissao abrirTransmissao(String userId) throws IOException {
+        UserDataRepository.Snapshot snapshot = null;
+        ReentrantLock lock = locks.get(userId);
+        lock.lock();
+        try {
+            if (cache.consultar(userId) == null) {
+                snapshot = repositorio.abrirSnapshot(userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (snapshot == null) {
+            Map<String, Object> documento = carregar(userId);
+            return out -> {
+                try (JsonGenerator gerador = criarGerador(out)) {
+                    StorageCodec.JSON.getMapper().writeValue(gerador, documento);
+                }
+            };
+        }
+        UserDataRepository.Snapshot origem = snapshot;
+        return out -> {
+            try (UserDataRepository.Snapshot aberto = origem;
+                 JsonGenerator gerador = criarGerador(out)) {
+                copiarSnapshot(aberto, gerador);
+            }
+        };
+    }
+
+    private static JsonGenerator criarGerador(OutputStream out) throws IOException {
+        JsonGenerator gerador = StorageCodec.JSON.getMapper().getFactory().createGenerator(out);
+        gerador.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return gerador;
+    }
+
+    /**
+     * Copia o manifesto sem os campos internos do armazenamento, seguido das coleções padrão
+     * (vazias se não houver arquivo), com o mesmo resultado de carregar()
+     */
+    private static void copiarSnapshot(UserDataRepository.Snapshot snapshot, JsonGenerator gerador) throws IOException {
+        JsonParser parser = snapshot.getManifesto();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Snapshot inválido: objeto JSON esperado");
+        }
+        boolean revisaoPresente = false;
+        gerador.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String campo = parser.getCurrentName();
+            parser.nextToken();
+            if (UserDataRepository.CAMPOS_INTERNOS.contains(campo) || COLECOES.contains(campo)) {
+                parser.skipChildren();
+                continue;
+            }
+            revisaoPresente |= Revisoes.CAMPO_DOCUMENTO.equals(campo);
+            gerador.writeFieldName(campo);
+            gerador.copyCurrentStructure(parser);
+        }
+        if (!revisaoPresente) {
+            gerador.writeNumberField(Revisoes.CAMPO_DOCUMENTO, 0);
+        }
+        for (String colecao : COLECOES) {
+            gerador.writeFieldName(colecao);
+            JsonParser registros = snapshot.getColecao(colecao);
+            if (registros != null && registros.nextToken() == JsonToken.START_ARRAY) {
+                gerador.copyCurrentStructure(registros);
+            } else {
+                gerador.writeStartArray();
+                gerador.writeEndArray();
+            }
+        }
+        gerador.writeEndObject();
+    }
+
+    /**
+     * Retorna uma coleção do usuário (somente leitura)
+     */
+    public List<?> listar(String userId, String colecao) throws IOException {
+        Object valor = cache.obter(userId, colecoesPadrao(List.of(colecao))).getDocumento().get(colecao);
+        return valor instanceof List ? (List<?>) valor : new ArrayList<>();
+    }
+
+    /**
+     * Consulta uma coleção com filtros e paginação por cursor (ver ConsultaColecao).
+     * Sem parâmetros de consulta, retorna a coleção completa como antes
+     * @throws IllegalArgumentException se algum parâmetro for inválido
+     */
+    public Object consultar(String userId, String colecao, Map<String, String> params) throws IOException {
+        ConsultaColecao consulta = ConsultaColecao.of(params);
+        List<?> registros = listar(userId, colecao);
+        return consulta != null ? consulta.executar(registros) : registros;
+    }
+
+    /**
+     * Consulta as ordens pelos índices secundários (status, cliente, de/ate) em vez de percorrer a coleção.
+     * cliente é comparado com documentoCliente e telefoneCliente, ignorando pontuação.
+     * Executa com o lock do usuário, pois os índices são mantidos pelas alterações
+     * @throws IllegalArgumentException se nenhum filtro for informado ou uma data for inválida
+     */
+    public Map<String, Object> consultarOrdens(String userId, Map<String, String> params) throws IOException {
+        String status = IndicesOrdens.chaveStatus(params.get("status"));
+        String cliente = IndicesOrdens.chaveCliente(params.get("cliente"));
+        LocalDate de = ConsultaColecao.data(params.get("de"), "de");
+        LocalDate ate = ConsultaColecao.data(params.get("ate"), "ate");
+        if (status == null && cliente == null && de == null && ate == null) {
+            throw new IllegalArgumentException("Informe ao menos um filtro: status, cliente, de ou ate");
+        }
+
+        List<Object> itens = new ArrayList<>();
+        ReentrantLock lock = locks.get(userId);
+        lock.lock();
+        try {
+            UserDataCache.Entrada entrada = cache.obter(userId, List.of(IndicesOrdens.COLECAO));
+            List<?> registros = (List<?>) entrada.getDocumento().get(IndicesOrdens.COLECAO);
+            IndicesUsuario indices = entrada.getIndices();
+            List<Integer> posicoes = new ArrayList<>();
+            for (String id : indices.getOrdens().consultar(registros, status, cliente, de, ate)) {
+                int posicao = indices.getIds().posicao(IndicesOrdens.COLECAO, registros, id);
+                if (posicao >= 0) {
+                    posicoes.add(posicao);
+                }
+            }
+            // Mantém a ordem da coleção
+            Collections.sort(posicoes);
+            for (int posicao : posicoes) {
+                itens.add(registros.get(posicao));
+            }
+        } finally {
+            lock.unlock();
+        }
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("itens", itens);
+        resultado.put("quantidade", itens.size());
+        return resultado;
+    }
+
+    /**
+     * Busca textual em ordens (modeloAparelho, defeitoApresentado) e produtos (nome) pelo índice invertido.
+     * Ignora acentos e maiúsculas; cada termo casa por prefixo e todos precisam casar.
+     * Resultados ordenados pela pontuação (maior primeiro)
+     * @param colecao "ordens", "produtos" ou null para ambas
+     * @throws IllegalArgumentException se q não tiver termos pesquisáveis ou limit/colecao forem inválidos
+     */
+    public Map<String, Object> buscar(String userId, String q, String colecao, String limit) throws IOException {
+        List<String> termos = IndiceTexto.tokenizar(q);
+        if (termos.isEmpty()) {
+            throw new IllegalArgumentException("q deve ter ao menos um termo com 2 ou mais caracteres");
+        }
+        if (colecao != null && !IndiceTexto.CAMPOS.containsKey(colecao)) {
+            throw new IllegalArgumentException("colecao deve ser ordens ou produtos");
+        }
+        int limite = LIMITE_BUSCA_PADRAO;
+        if (limit != null) {
+            try {
+                limite = Integer.parseInt(limit);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("limit deve ser um número");
+            }
+            if (limite < 1) {
+                throw new IllegalArgumentException("limit deve ser maior que zero");
+            }
+            limite = Math.min(limite, LIMITE_BUSCA_MAXIMO);
+        }
+
+        List<Map<String, Object>> itens = new ArrayList<>();
+        int total = 0;
+        ReentrantLock lock = locks.get(userId);
+        lock.lock();
+        try {
+            UserDataCache.Entrada entrada = cache.obter(userId, colecao != null ? List.of(colecao) : IndiceTexto.CAMPOS.keySet());
+            IndicesUsuario indices = entrada.getIndices();
+            List<IndiceTexto.Resultado> resultados = new ArrayList<>();
+            Map<String, List<?>> listas = new HashMap<>();
+            for (String nome : IndiceTexto.CAMPOS.keySet()) {
+                if (colecao != null && !colecao.equals(nome)) {
+                    continue;
+                }
+                List<?> registros = (List<?>) entrada.getDocumento().get(nome);
+                if (registros != null) {
+                    listas.put(nome, registros);
+                    IndiceTexto.Busca busca = indices.getTexto().buscar(nome, registros, termos, limite);
+                    resultados.addAll(busca.getResultados());
+                    total += busca.getTotal();
+                }
+            }
+            // Os melhores de cada coleção já vêm ordenados; junta e corta no limite
+            resultados.sort(IndiceTexto.ORDEM);
+            for (IndiceTexto.Resultado r : resultados.subList(0, Math.min(limite, resultados.size()))) {
+                List<?> registros = listas.get(r.getColecao());
+                int posicao = indices.getIds().posicao(r.getColecao(), registros, r.getId());
+                if (posicao < 0) {
+                    continue;
+                }
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("colecao", r.getColecao());
+                item.put("pontuacao", Math.round(r.getPontuacao() * 1000) / 1000.0);
+                item.put("registro", registros.get(posicao));
+                itens.add(item);
+            }
+        } finally {
+            lock.unlock();
+        }
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("termos", termos);
+        resultado.put("itens", itens);
+        resultado.put("quantidade", itens.size());
+        resultado.put("total", total);
+        return resultado;
+    }
+
+    private interface Alteracao {
+        /**
+         * @return confirmação de durabilidade a aguardar fora do lock, ou null
+         */
+        CompletableFuture<Void> aplicar(UserDataCache.Entrada entrada) throws IOException;
+    }
+
+    /**
+     * Executa uma alteração com o lock do usuário.
+     * Mesmo que a entrada saia do cache no meio, a gravação pendente espera este lock e enxerga a alteração.
+     * A confirmação de durabilidade é aguardada depois de soltar o lock, para que escritas seguintes
+     * do mesmo usuário entrem no mesmo lote de fsync.
+     * As coleções informadas são carregadas antes da alteração. As versões (ETag) do documento
+     * e dessas coleções avançam ainda com o lock, e só se o documento mudou: id inexistente,
+     * lote sem itens válidos ou falha antes de aplicar mantêm a ETag
+     */
+    private void alterar(String userId, Collection<String> colecoes, Alteracao alteracao) throws IOException {
+        alterar(userId, colecoes, colecoes, alteracao);
+    }
+
+    /**
+     * Como alterar, carregando também coleções que a alteração só lê (sem avançar a ETag delas).
+     * Todas são carregadas antes: um carregamento durante a alteração troca o mapa de topo e contaria como mudança
+     */
+    private void alterar(String userId, Collection<String> carregar, Collection<String> colecoes, Alteracao alteracao) throws IOException {
+        CompletableFuture<Void> confirmacao;
+        ReentrantLock lock = locks.get(userId);
+        lock.lock();
+        try {
+            UserDataCache.Entrada entrada = cache.obter(userId, colecoesPadrao(carregar));
+            Map<String, Object> anterior = entrada.getDocumento();
+            try {
+                confirmacao = alteracao.aplicar(entrada);
+            } finally {
+                if (entrada.getDocumento() != anterior) {
+                    versoes.incrementar(userId, colecoes);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (confirmacao != null) {
+            UserDataRepository.Anexo.aguardar(confirmacao);
+        }
+    }
+
+    /**
+     * Anexa as operações no repositório e as aplica a uma cópia do documento (ver UserJournal.aplicar).
+     * Agenda a compactação quando o repositório pede (journal acima do limite)
+     * @return confirmação de durabilidade das operações
+     */
+    private CompletableFuture<Void> aplicarOperacoes(String userId, UserDataCache.Entrada entrada,
+                                                     List<Map<String, Object>> operacoes) throws IOException {
+        UserDataRepository.Anexo anexo = repositorio.anexar(userId, operacoes);
+        Map<String, Object> novo = Revisoes.copiarParaAlteracao(entrada.getDocumento());
+        IndicesUsuario indices = entrada.getIndices();
+        indices.setObservador(consertos.observador(userId));
+        try {
+            UserJournal.aplicarTodas(novo, operacoes, indices);
+        } finally {
+            indices.setObservador(null);
+        }
+        entrada.setDocumento(novo);
+        if (anexo.isCompactar()) {
+            entrada.marcarSujo();
+            cache.gravarEmSegundoPlano(entrada);
+        }
+        return anexo.getConfirmacao();
+    }
+
+    private static Map<String, Object> operacao(String op, String colecao) {
+        Map<String, Object> operacao = new LinkedHashMap<>();
+        operacao.put("op", op);
+        operacao.put("colecao", colecao);
+        return operacao;
+    }
+
+    /**
+     * Adiciona um registro ao final de uma coleção.
+     * Grava apenas uma linha no journal; a compactação é agendada quando ele passa do limite
+     */
+    public void adicionar(String userId, String colecao, Map<String, Object> registro) throws IOException {
+        alterar(userId, List.of(colecao), entrada -> {
+            registro.put(Revisoes.CAMPO_REGISTRO, Revisoes.doDocumento(entrada.getDocumento()) + 1);
+            Map<String, Object> operacao = operacao("add", colecao);
+            operacao.put("registro", registro);
+            return aplicarOperacoes(userId, entrada, List.of(operacao));
+        });
+    }
+
+    /**
+     * Inclusão em lote (array JSON ou NDJSON, ver LoteRegistros) ao final de uma coleção.
+     * Os itens válidos são gravados numa única escrita do journal e aplicados de uma vez;
+     * itens inválidos ou com id já existente (na coleção ou repetido no lote) são recusados individualmente
+     * @return resumo com criados, erros e o resultado de cada item (na ordem do lote)
+     * @throws IllegalArgumentException se o corpo estiver vazio, malformado ou exceder o limite de itens
+     */
+    public Map<String, Object> adicionarLote(String userId, String colecao, InputStream corpo, String contentType) throws IOException {
+        List<LoteRegistros.Item> itens = LoteRegistros.ler(corpo, contentType, maxItensLote);
+        List<Map<String, Object>> resultados = new ArrayList<>(itens.size());
+        for (int i = 0; i < itens.size(); i++) {
+            Map<String, Object> resultado = new LinkedHashMap<>();
+            resultado.put("indice", i);
+            Map<String, Object> registro = itens.get(i).getRegistro();
+            if (registro != null && registro.get("id") != null) {
+                resultado.put("id", Revisoes.idTexto(registro.get("id")));
+            }
+            resultado.put("success", itens.get(i).getErro() == null);
+            if (itens.get(i).getErro() != null) {
+                resultado.put("erro", itens.get(i).getErro());
+            }
+            resultados.add(resultado);
+        }
+
+        if (itens.stream().anyMatch(item -> item.getErro() == null)) {
+            alterar(userId, List.of(colecao), entrada -> {
+                List<?> registros = (List<?>) entrada.getDocumento().get(colecao);
+                long revisao = Revisoes.doDocumento(entrada.getDocumento()) + 1;
+                Set<String> idsDoLote = new HashSet<>();
+                List<Map<String, Object>> operacoes = new ArrayList<>();
+                for (int i = 0; i < itens.size(); i++) {
+                    Map<String, Object> registro = itens.get(i).getRegistro();
+                    if (registro == null) {
+                        continue;
+                    }
+                    String id = Revisoes.idTexto(registro.get("id"));
+                    String erro = null;
+                    if (id != null && registros != null && entrada.getIndices().getIds().posicao(colecao, registros, id) >= 0) {
+                        erro = "Já existe um registro com id " + id;
+                    } else if (id != null && !idsDoLote.add(id)) {
+                        erro = "id repetido no lote: " + id;
+                    }
+                    if (erro != null) {
+                        resultados.get(i).put("success", false);
+                        resultados.get(i).put("erro", erro);
+                        continue;
+                    }
+                    registro.put(Revisoes.CAMPO_REGISTRO, revisao);
+                    Map<String, Object> operacao = operacao("add", colecao);
+                    operacao.put("registro", registro);
+                    operacoes.add(operacao);
+                }
+                return operacoes.isEmpty() ? null : aplicarOperacoes(userId, entrada, operacoes);
+            });
+        }
+
+        long criados = resultados.stream().filter(r -> Boolean.TRUE.equals(r.get("success"))).count();
+        logger.info("Lote em " + colecao + " do usuário " + userId + ": " + criados + " de " + itens.size() + " registros incluídos");
+        Map<String, Object> resumo = new LinkedHashMap<>();
+        resumo.put("quantidade", itens.size());
+        resumo.put("criados", criados);
+        resumo.put("erros", itens.size() - criados);
+        resumo.put("resultados", resultados);
+        return resumo;
+    }
+
+    /**
+     * Altera campos de um registro pelo id (merge raso; o id não muda).
+     * Só o registro alterado vai para o journal, localizado pelo índice de ids
+     * @return registro atualizado, ou null se o id não existe
+     * @throws IllegalArgumentException se os campos tentarem trocar o id
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> atualizarRegistro(String userId, String colecao, String id, Map<String, Object> campos) throws IOException {
+        Object novoId = campos.get("id");
+        if (novoId != null && !id.equals(Revisoes.idTexto(novoId))) {
+            throw new IllegalArgumentException("O id do registro não pode ser alterado");
+        }
+        List<Map<String, Object>> resultado = new ArrayList<>(1);
+        alterar(userId, List.of(colecao), entrada -> {
+            List<?> registros = (List<?>) entrada.getDocumento().get(colecao);
+            int posicao = entrada.getIndices().getIds().posicao(colecao, registros, id);
+            if (posicao < 0) {
+                return null;
+            }
+            Map<String, Object> registro = Registro.tipar(colecao, new LinkedHashMap<>((Map<String, Object>) registros.get(posicao)));
+            registro.putAll(campos);
+            registro.remove(Revisoes.CAMPO_REGISTRO);
+            registro.put(Revisoes.CAMPO_REGISTRO, Revisoes.doDocumento(entrada.getDocumento()) + 1);
+            Map<String, Object> operacao = operacao("upsert", colecao);
+            operacao.put("registro", registro);
+            resultado.add(registro);
+            return aplicarOperacoes(userId, entrada, List.of(operacao));
+        });
+        return resultado.isEmpty() ? null : resultado.get(0);
+    }
+
+    /**
+     * Remove um registro pelo id, registrando a remoção para a sincronização incremental
+     * @return false se o id não existe
+     */
+    public boolean removerRegistro(String userId, String colecao, String id) throws IOException {
+        boolean[] removido = {false};
+        alterar(userId, List.of(colecao), entrada -> {
+            List<?> registros = (List<?>) entrada.getDocumento().get(colecao);
+            if (entrada.getIndices().getIds().posicao(colecao, registros, id) < 0) {
+                return null;
+            }
+            Map<String, Object> operacao = operacao("remove", colecao);
+            operacao.put("id", id);
+            operacao.put("rev", Revisoes.doDocumento(entrada.getDocumento()) + 1);
+            removido[0] = true;
+            return aplicarOperacoes(userId, entrada, List.of(operacao));
+        });
+        return removido[0];
+    }
+
+    /**
+     * Atribui revisões a uma coleção recebida inteira: registros iguais aos atuais mantêm a revisão,
+     * os demais recebem uma nova, e ids que sumiram viram remoções
+     */
+    @SuppressWarnings("unchecked")
+    private void revisarColecao(Map<String, Object> atual, Map<String, Object> novo, String colecao, List<?> registros) {
+        long rev = Revisoes.doDocumento(novo);
+        Map<String, Map<String, Object>> anteriores = new HashMap<>();
+        Object lista = atual.get(colecao);
+        if (lista instanceof List) {
+            for (Object registro : (List<?>) lista) {
+                String id = registro instanceof Map ? RegistroUtil.id((Map<?, ?>) registro) : null;
+                if (id != null) {
+                    anteriores.put(id, (Map<String, Object>) registro);
+                }
+            }
+        }
+        for (Object item : registros) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> registro = (Map<String, Object>) item;
+            String id = RegistroUtil.id(registro);
+            Map<String, Object> anterior = id != null ? anteriores.remove(id) : null;
+            Revisoes.limparRemocao(novo, colecao, id);
+            if (anterior != null && semRevisao(anterior).equals(semRevisao(registro))) {
+                registro.put(Revisoes.CAMPO_REGISTRO, Revisoes.doRegistro(anterior));
+            } else {
+                registro.put(Revisoes.CAMPO_REGISTRO, ++rev);
+            }
+        }
+        for (String id : anteriores.keySet()) {
+            Revisoes.registrarRemocao(novo, colecao, id, ++rev);
+        }
+        Revisoes.avancar(novo, rev);
+    }
+
+    private static Map<String, Object> semRevisao(Map<String, Object> registro) {
+        Map<String, Object> copia = new HashMap<>(registro);
+        copia.remove(Revisoes.CAMPO_REGISTRO);
+        return copia;
+    }
+
+    /**
+     * Substitui uma coleção inteira
+     */
+    public void substituirColecao(String userId, String colecao, List<Map<String, Object>> registros) throws IOException {
+        // Tipados antes da comparação: um registro reenviado igual mantém a revisão
+        List<Object> tipados = Registro.tiparTodos(colecao, registros);
+        alterar(userId, List.of(colecao), entrada -> {
+            Map<String, Object> atual = entrada.getDocumento();
+            Map<String, Object> novo = Revisoes.copiarParaAlteracao(atual);
+            revisarColecao(atual, novo, colecao, tipados);
+            novo.put(colecao, new CopyOnWriteArrayList<>(tipados));
+            if (IndicesOrdens.COLECAO.equals(colecao)) {
+                consertos.aplicar(userId, (List<?>) atual.get(colecao), -1);
+                consertos.aplicar(userId, tipados, 1);
+            }
+            entrada.setDocumento(novo);
+            entrada.marcarSujo(colecao);
+            return null;
+        });
+    }
+
+    /**
+     * Substitui o documento inteiro do usuário (sync completo).
+     * As revisões, remoções e segmentos arquivados continuam sendo os do servidor, não os enviados pelo cliente
+     */
+    public void substituirDocumento(String userId, Map<String, Object> data) throws IOException {
+        Map<String, Object> recebido = normalizar(data);
+        alterar(userId, COLECOES, entrada -> {
+            Map<String, Object> atual = entrada.getDocumento();
+            Map<String, Object> novo = new LinkedHashMap<>(recebido);
+            Map<String, Object> controle = Revisoes.copiarParaAlteracao(atual);
+            novo.put(Revisoes.CAMPO_DOCUMENTO, Revisoes.doDocumento(atual));
+            if (controle.containsKey(Revisoes.CAMPO_REMOVIDOS)) {
+                novo.put(Revisoes.CAMPO_REMOVIDOS, controle.get(Revisoes.CAMPO_REMOVIDOS));
+            } else {
+                novo.remove(Revisoes.CAMPO_REMOVIDOS);
+            }
+            if (atual.containsKey(ArquivoFrio.CAMPO_ARQUIVADOS)) {
+                novo.put(ArquivoFrio.CAMPO_ARQUIVADOS, atual.get(ArquivoFrio.CAMPO_ARQUIVADOS));
+            } else {
+                novo.remove(ArquivoFrio.CAMPO_ARQUIVADOS);
+            }
+            for (String colecao : COLECOES) {
+                revisarColecao(atual, novo, colecao, (List<?>) novo.get(colecao));
+            }
+            consertos.aplicar(userId, (List<?>) atual.get(IndicesOrdens.COLECAO), -1);
+            consertos.aplicar(userId, (List<?>) novo.get(IndicesOrdens.COLECAO), 1);
+            entrada.setDocumento(novo);
+            for (String colecao : COLECOES) {
+                entrada.marcarSujo(colecao);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Sincronização incremental (POST /sync com "alteracoes"/"removidos").
+     * O cliente envia só o que mudou desde a revisão que conhece; cada registro é mesclado pelo id
+     * (o último a chegar vence) e a resposta traz o que mudou no servidor desde aquela revisão.
+     * Registros alterados nos dois lados são aplicados e listados em "conflitos".
+     * Tudo vai para o journal em uma única escrita: o custo acompanha o volume de mudanças
+     * @throws IllegalArgumentException se o pedido for inválido
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> sincronizarDelta(String userId, Map<String, Object> pedido) throws IOException {
+        Object revisaoCliente = pedido.getOrDefault("revisao", 0);
+        if (!(revisaoCliente instanceof Number)) {
+            throw new IllegalArgumentException("revisao deve ser um número");
+        }
+        long desde = ((Number) revisaoCliente).longValue();
+        Map<String, List<Map<String, Object>>> alteracoes = new LinkedHashMap<>();
+        Map<String, List<String>> remocoes = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : mapaDeColecoes(pedido, "alteracoes").entrySet()) {
+            List<Map<String, Object>> registros = new ArrayList<>();
+            for (Object item : (List<?>) e.getValue()) {
+                if (!(item instanceof Map) || RegistroUtil.id((Map<?, ?>) item) == null) {
+                    throw new IllegalArgumentException("Todo registro em alteracoes." + e.getKey() + " precisa de id");
+                }
+                registros.add((Map<String, Object>) item);
+            }
+            alteracoes.put(e.getKey(), registros);
+        }
+        for (Map.Entry<String, Object> e : mapaDeColecoes(pedido, "removidos").entrySet()) {
+            List<String> ids = new ArrayList<>();
+            for (Object id : (List<?>) e.getValue()) {
+                ids.add(Revisoes.idTexto(id));
+            }
+            remocoes.put(e.getKey(), ids);
+        }
+
+        Set<String> afetadas = new LinkedHashSet<>(alteracoes.keySet());
+        afetadas.addAll(remocoes.keySet());
+        Map<String, Object> resposta = new LinkedHashMap<>();
+        // A resposta traz as mudanças de todas as coleções
+        alterar(userId, COLECOES, afetadas, entrada -> {
+            Map<String, Object> atual = entrada.getDocumento();
+            long revisaoAnterior = Revisoes.doDocumento(atual);
+            long rev = revisaoAnterior;
+            List<Map<String, Object>> operacoes = new ArrayList<>();
+            List<Map<String, Object>> conflitos = new ArrayList<>();
+
+            for (Map.Entry<String, List<Map<String, Object>>> e : alteracoes.entrySet()) {
+                List<?> registros = (List<?>) atual.get(e.getKey());
+                for (Map<String, Object> registro : e.getValue()) {
+                    String id = RegistroUtil.id(registro);
+                    int posicao = entrada.getIndices().getIds().posicao(e.getKey(), registros, id);
+                    if (posicao >= 0 && Revisoes.doRegistro((Map<?, ?>) registros.get(posicao)) > desde) {
+                        conflitos.add(Map.of("colecao", e.getKey(), "id", id));
+                    }
+                    registro.put(Revisoes.CAMPO_REGISTRO, ++rev);
+                    Map<String, Object> operacao = operacao("upsert", e.getKey());
+                    operacao.put("registro", registro);
+                    operacoes.add(operacao);
+                }
+            }
+            for (Map.Entry<String, List<String>> e : remocoes.entrySet()) {
+                List<?> registros = (List<?>) atual.get(e.getKey());
+                for (String id : e.getValue()) {
+                    if (entrada.getIndices().getIds().posicao(e.getKey(), registros, id) < 0) {
+                        continue;
+                    }
+                    Map<String, Object> operacao = operacao("remove", e.getKey());
+                    operacao.put("id", id);
+                    operacao.put("rev", ++rev);
+                    operacoes.add(operacao);
+                }
+            }
+
+            CompletableFuture<Void> confirmacao = null;
+            if (!operacoes.isEmpty()) {
+                confirmacao = aplicarOperacoes(userId, entrada, operacoes);
+            }
+            Map<String, Object> documento = entrada.getDocumento();
+            resposta.put("success", true);
+            resposta.put("revisao", Revisoes.doDocumento(documento));
+            resposta.put("aplicados", operacoes.size());
+            // Mudanças do servidor que o cliente não conhece (as do próprio pedido ficam acima de revisaoAnterior)
+            resposta.put("alteracoes", alteracoesEntre(documento, desde, revisaoAnterior));
+            resposta.put("removidos", remocoesEntre(documento, desde, revisaoAnterior));
+            resposta.put("conflitos", conflitos);
+            return confirmacao;
+        });
+        return resposta;
+    }
+
+    private static Map<String, Object> mapaDeColecoes(Map<String, Object> pedido, String campo) {
+        Object valor = pedido.get(campo);
+        if (valor == null) {
+            return Map.of();
+        }
+        if (!(valor instanceof Map)) {
+            throw new IllegalArgumentException(campo + " deve ser um objeto {colecao: [...]}");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> mapa = (Map<String, Object>) valor;
+        for (Map.Entry<String, Object> e : mapa.entrySet()) {
+            if (!COLECOES.contains(e.getKey())) {
+                throw new IllegalArgumentException("Coleção desconhecida em " + campo + ": " + e.getKey());
+            }
+            if (!(e.getValue() instanceof List)) {
+                throw new IllegalArgumentException(campo + "." + e.getKey() + " deve ser uma lista");
+            }
+        }
+        return mapa;
+    }
+
+    private static Map<String, Object> alteracoesEntre(Map<String, Object> documento, long desde, long ate) {
+        Map<String, Object> alteracoes = new LinkedHashMap<>();
+        for (String colecao : COLECOES) {
+            List<Object> registros = new ArrayList<>();
+            for (Object registro : (List<?>) documento.get(colecao)) {
+                if (registro instanceof Map) {
+                    long rev = Revisoes.doRegistro((Map<?, ?>) registro);
+                    if (rev > desde && rev <= ate) {
+                        registros.add(registro);
+                    }
+                }
+            }
+            alteracoes.put(colecao, registros);
+        }
+        return alteracoes;
+    }
+
+    private static Map<String, Object> remocoesEntre(Map<String, Object> documento, long desde, long ate) {
+        Map<String, Object> remocoes = new LinkedHashMap<>();
+        for (String colecao : COLECOES) {
+            List<String> ids = new ArrayList<>();
+            for (Map.Entry<String, Object> e : Revisoes.removidos(documento, colecao).entrySet()) {
+                long rev = ((Number) e.getValue()).longValue();
+                if (rev > desde && rev <= ate) {
+                    ids.add(e.getKey());
+                }
+            }
+            remocoes.put(colecao, ids);
+        }
+        return remocoes;
+    }
+
+    /**
+     * Move para o arquivo frio as ordens selecionadas, em um segmento por mês (data do registro; sem data, fica).
+     * Com o lock do usuário: grava os segmentos, tira as ordens da coleção e grava na hora a coleção e o
+     * manifesto com os segmentos (_arquivados); só depois remove os segmentos substituídos.
+     * As ordens saem sem registro em _removidos, então clientes de sync incremental não as apagam.
+     * Uma ordem reenviada depois de arquivada volta para a coleção e, ao ser arquivada de novo, substitui a
+     * cópia do segmento (mesmo id)
+     * @return quantidade de ordens arquivadas
+     */
+    public int arquivarOrdens(String userId, Predicate<Map<?, ?>> arquivavel) throws IOException {
+        String colecao = IndicesOrdens.COLECAO;
+        ReentrantLock lock = locks.get(userId);
+        lock.lock();
+        try {
+            UserDataCache.Entrada entrada = cache.obter(userId, List.of(colecao));
+            Map<String, Object> atual = entrada.getDocumento();
+            List<?> registros = (List<?>) atual.get(colecao);
+            Map<YearMonth, List<Object>> porMes = new TreeMap<>();
+            Set<Object> arquivadas = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Object registro : registros) {
+                if (!(registro instanceof Map) || !arquivavel.test((Map<?, ?>) registro)) {
+                    continue;
+                }
+                LocalDate data = RegistroUtil.data((Map<?, ?>) registro);
+                if (data != null) {
+                    porMes.computeIfAbsent(YearMonth.from(data), k -> new ArrayList<>()).add(registro);
+                    arquivadas.add(registro);
+                }
+            }
+            if (arquivadas.isEmpty()) {
+                return 0;
+            }
+
+            Map<String, Map<String, Object>> segmentos = new TreeMap<>();
+            for (Map<String, Object> segmento : ArquivoFrio.segmentos(atual, colecao)) {
+                segmentos.put((String) segmento.get("mes"), segmento);
+            }
+            // Nos totais, cada dia passa a valer o segmento novo no lugar do anterior e das ordens que saíram da coleção
+            Map<String, long[]> variacoes = new HashMap<>();
+            for (Map.Entry<YearMonth, List<Object>> mes : porMes.entrySet()) {
+                Map<String, Object> anterior = segmentos.get(mes.getKey().toString());
+                List<Object> conteudo = mes.getValue();
+                long geracao = 1;
+                if (anterior != null) {
+                    List<Object> arquivado = arquivoFrio.lerSegmento(userId, anterior);
+                    AgregadoConsertos.somar(variacoes, AgregadoConsertos.porDia(arquivado), -1);
+                    conteudo = mesclarPorId(arquivado, conteudo);
+                    geracao = ((Number) anterior.get("geracao")).longValue() + 1;
+                }
+                Map<String, Object> segmento = arquivoFrio.gravarSegmento(userId, colecao, mes.getKey(), geracao, conteudo);
+                // Resumo para o faturamento, que soma o arquivado sem abrir os segmentos
+                Map<String, long[]> dias = AgregadoConsertos.porDia(conteudo);
+                long centavos = 0;
+                for (long[] total : dias.values()) {
+                    centavos += total[0];
+                }
+                segmento.put("valorConsertoCentavos", centavos);
+                segmento.put(AgregadoConsertos.CAMPO_SEGMENTO, AgregadoConsertos.paraSegmento(dias));
+                segmentos.put(mes.getKey().toString(), segmento);
+                AgregadoConsertos.somar(variacoes, dias, 1);
+            }
+
+            List<Object> restantes = new ArrayList<>(registros.size() - arquivadas.size());
+            for (Object registro : registros) {
+                if (!arquivadas.contains(registro)) {
+                    restantes.add(registro);
+                }
+            }
+            Map<String, Object> novo = Revisoes.copiarParaAlteracao(atual);
+            novo.put(colecao, new CopyOnWriteArrayList<>(restantes));
+            Map<String, Object> arquivados = new LinkedHashMap<>();
+            if (atual.get(ArquivoFrio.CAMPO_ARQUIVADOS) instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> anteriores = (Map<String, Object>) atual.get(ArquivoFrio.CAMPO_ARQUIVADOS);
+                arquivados.putAll(anteriores);
+            }
+            arquivados.put(colecao, new ArrayList<>(segmentos.values()));
+            novo.put(ArquivoFrio.CAMPO_ARQUIVADOS, arquivados);
+            entrada.setDocumento(novo);
+            consertos.aplicar(userId, arquivadas, -1);
+            variacoes.forEach((dia, variacao) -> consertos.aplicar(userId, dia, variacao[0], variacao[1]));
+            entrada.marcarSujo(colecao);
+            versoes.incrementar(userId, List.of(colecao));
+
+            if (cache.gravarAgora(entrada)) {
+                Set<String> referenciados = new HashSet<>();
+                for (String daColecao : arquivados.keySet()) {
+                    for (Map<String, Object> segmento : ArquivoFrio.segmentos(novo, daColecao)) {
+                        referenciados.add((String) segmento.get("arquivo"));
+                    }
+                }
+                arquivoFrio.removerNaoReferenciados(userId, referenciados);
+            }
+            logger.info("Ordens arquivadas do usuário " + userId + ": " + arquivadas.size() + " (meses: " + porMes.keySet() + ")");
+            return arquivadas.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registros do segmento com os novos no lugar dos de mesmo id (os novos sem id são acrescentados)
+     */
+    private static List<Object> mesclarPorId(List<Object> segmento, List<Object> novos) {
+        Map<String, Object> porId = new LinkedHashMap<>();
+        List<Object> semId = new ArrayList<>();
+        for (List<Object> origem : List.of(segmento, novos)) {
+            for (Object registro : origem) {
+                String id = registro instanceof Map ? RegistroUtil.id((Map<?, ?>) registro) : null;
+                if (id != null) {
+                    porId.remove(id);
+                    porId.put(id, registro);
+                } else {
+                    semId.add(registro);
+                }
+            }
+        }
+        List<Object> mesclados = new ArrayList<>(porId.values());
+        mesclados.addAll(semId);
+        return mesclados;
+    }
+
+    /**
+     * Histórico de ordens arquivadas (GET /ordens/historico?de=yyyy-MM&ate=yyyy-MM, meses inclusivos e opcionais).
+     * Lê só os segmentos do período, sem lock: segmentos não mudam, e se um foi substituído por um novo
+     * arquivamento durante a leitura, a lista é relida. As ordens em uso não entram
+     * @throws IllegalArgumentException se de/ate não estiverem no formato yyyy-MM
+     */
+    public Map<String, Object> historicoOrdens(String userId, Map<String, String> params) throws IOException {
+        YearMonth de = mes(params.get("de"), "de");
+        YearMonth ate = mes(params.get("ate"), "ate");
+        for (int tentativa = 1; ; tentativa++) {
+            List<Map<String, Object>> segmentos = ArquivoFrio.segmentos(cache.obter(userId).getDocumento(), IndicesOrdens.COLECAO);
+            List<Object> itens = new ArrayList<>();
+            List<String> meses = new ArrayList<>();
+            try {
+                for (Map<String, Object> segmento : segmentos) {
+                    YearMonth mes = YearMonth.parse((String) segmento.get("mes"));
+                    if ((de == null || !mes.isBefore(de)) && (ate == null || !mes.isAfter(ate))) {
+                        itens.addAll(arquivoFrio.lerSegmento(userId, segmento));
+                        meses.add(mes.toString());
+                    }
+                }
+            } catch (FileNotFoundException e) {
+                if (tentativa >= TENTATIVAS_HISTORICO) {
+                    throw e;
+                }
+                continue;
+            }
+            Map<String, Object> resultado = new LinkedHashMap<>();
+            resultado.put("meses", meses);
+            resultado.put("itens", itens);
+            resultado.put("quantidade", itens.size());
+            return resultado;
+        }
+    }
+
+    private static YearMonth mes(String valor, String parametro) {
+        if (valor == null || valor.isBlank()) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(valor.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(parametro + " deve estar no formato yyyy-MM");
+        }
+    }
+
+    /**
+     * Segmentos arquivados de uma coleção para varreduras de todos os usuários (sem popular o cache)
+     */
+    public List<Map<String, Object>> segmentosParaVarredura(String userId, String colecao) throws IOException {
+        UserDataCache.Entrada entrada = cache.consultar(userId);
+        return ArquivoFrio.segmentos(entrada != null ? entrada.getDocumento() : repositorio.lerManifestoSomenteLeitura(userId), colecao);
+    }
+
+    /**
+     * Executa o arquivamento agora para um usuário (POST /ordens/arquivar), com a política configurada
+     */
+    public int arquivarOrdensAgora(String userId) throws IOException {
+        return arquivador.executar(userId);
+    }
+
+    /**
+     * Totais de consertos mantidos a cada alteração de ordens (somente leitura)
+     */
+    public AgregadoConsertos getConsertos() {
+        return consertos;
+    }
+
+    /**
+     * Centavos e quantidade por dia (ver AgregadoConsertos.porDia) das ordens de um usuário, em uso e arquivadas,
+     * para varreduras; somente leitura. Com as ordens em cache, calcula da memória. Senão lê do armazenamento só
+     * os campos dos totais e os resumos dos segmentos, e memoriza o resultado pela assinatura dos arquivos
+     * (ParciaisConsertos): numa próxima varredura o usuário sem gravações desde então não é relido.
+     * Só memoriza se a assinatura não mudou durante a leitura
+     */
+    public Map<String, long[]> consertosPorDia(String userId) throws IOException {
+        UserDataCache.Entrada entrada = cache.consultar(userId);
+        if (entrada != null) {
+            Map<String, Object> documento = entrada.getDocumento();
+            Object ordens = documento.get(IndicesOrdens.COLECAO);
+            if (ordens instanceof List) {
+                return consertosPorDia(userId, (List<?>) ordens, documento);
+            }
+        }
+        String assinatura = repositorio.assinatura(userId);
+        Map<String, long[]> dias = assinatura != null ? parciais.obter(userId, assinatura) : null;
+        if (dias != null) {
+            return dias;
+        }
+        dias = consertosPorDia(userId, repositorio.lerCamposSomenteLeitura(userId, IndicesOrdens.COLECAO, AgregadoConsertos.CAMPOS),
+            repositorio.lerManifestoSomenteLeitura(userId));
+        if (assinatura != null && assinatura.equals(repositorio.assinatura(userId))) {
+            parciais.guardar(userId, assinatura, dias);
+        }
+        return dias;
+    }
+
+    /**
+     * Ordens em uso mais os resumos dos segmentos do manifesto; um segmento gravado antes do resumo por dia é lido
+     */
+    private Map<String, long[]> consertosPorDia(String userId, List<?> ordens, Map<String, Object> manifesto) throws IOException {
+        Map<String, long[]> dias = AgregadoConsertos.porDia(ordens);
+        for (Map<String, Object> segmento : ArquivoFrio.segmentos(manifesto, IndicesOrdens.COLECAO)) {
+            Map<String, long[]> doSegmento = AgregadoConsertos.doSegmento(segmento);
+            AgregadoConsertos.somar(dias, doSegmento != null ? doSegmento
+                : AgregadoConsertos.porDia(arquivoFrio.lerSegmento(userId, segmento)), 1);
+        }
+        return dias;
+    }
+
+    /**
+     * Centavos e quantidade por dia (yyyy-MM-dd ou SEM_DATA) das vendas de um usuário (coleção vendas, valor pela
+     * data da venda), para o resumo do próprio usuário; do disco, lê só o valor e os campos de data
+     */
+    public Map<String, long[]> vendasPorDia(String userId) throws IOException {
+        UserDataCache.Entrada entrada = cache.consultar(userId);
+        Object registros = entrada != null ? entrada.getDocumento().get(Venda.COLECAO) : null;
+        List<?> vendas = registros instanceof List
+            ? (List<?>) registros : repositorio.lerCamposSomenteLeitura(userId, Venda.COLECAO, CAMPOS_VENDAS);
+        Map<String, long[]> dias = new HashMap<>();
+        for (Object venda : vendas) {
+            if (venda instanceof Map) {
+                long[] total = dias.computeIfAbsent(AgregadoConsertos.dia((Map<?, ?>) venda), k -> new long[2]);
+                total[0] += Venda.centavosValor((Map<?, ?>) venda);
+                total[1]++;
+            }
+        }
+        return dias;
+    }
+
+    /**
+     * Visita os totais por dia (consertosPorDia) de cada usuário, em paralelo
+     */
+    public VarreduraUsuarios.Resultado varrerConsertos(BiConsumer<String, Map<String, long[]>> visita) throws IOException {
+        List<String> usuarios = repositorio.listarUsuarios();
+        VarreduraUsuarios.Resultado resultado = varredura.executar(usuarios, userId -> visita.accept(userId, consertosPorDia(userId)));
+        concluirVarreduraConsertos(usuarios);
+        return resultado;
+    }
+
+    /**
+     * Depois de varrer todos os usuários: esquece os removidos e grava os totais memorizados
+     */
+    private void concluirVarreduraConsertos(List<String> usuarios) {
+        parciais.manterSomente(usuarios);
+        if (repositorio.isPersistente()) {
+            parciais.gravar(DurableFileWriter.getInstance());
+        }
+    }
+
+    /**
+     * Refaz os totais de consertos a partir dos dados gravados (consertosPorDia), cada usuário com o seu lock.
+     * As alterações feitas durante a varredura não se perdem (ver AgregadoConsertos);
+     * usuários ilegíveis ficam de fora e são listados no resultado
+     */
+    public synchronized VarreduraUsuarios.Resultado reconstruirConsertos() throws IOException {
+        List<String> usuarios = repositorio.listarUsuarios();
+        consertos.iniciarReconstrucao(usuarios);
+        boolean concluida = false;
+        try {
+            VarreduraUsuarios.Resultado resultado = varredura.executar(usuarios, userId -> {
+                ReentrantLock lock = locks.get(userId);
+                lock.lock();
+                try {
+                    consertos.reconstruido(userId, consertosPorDia(userId));
+                } catch (IOException | RuntimeException e) {
+                    consertos.ignorado(userId);
+                    throw e;
+                } finally {
+                    lock.unlock();
+                }
+            });
+            consertos.concluirReconstrucao();
+            concluida = true;
+            concluirVarreduraConsertos(usuarios);
+            logger.info("Totais de consertos reconstruídos: " + usuarios.size() + " usuários ("
+                + resultado.getQuantidadeFalhas() + " com erro) em " + resultado.getDuracaoMs() + " ms");
+            return resultado;
+        } finally {
+            if (!concluida) {
+                consertos.cancelarReconstrucao();
+            }
+        }
+    }
+
+    /**
+     * Lista os usuários com dados gravados no repositório
+     */
+    public List<String> listarUsuarios() {
+        try {
+            return repositorio.listarUsuarios();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Erro ao listar usuários", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Usuários agrupados por fragmento do armazenamento, para varreduras paralelas por fragmento
+     */
+    public List<List<String>> listarUsuariosPorFragmento() {
+        try {
+            return repositorio.listarUsuariosPorFragmento();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Erro ao listar usuários", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Lê uma coleção de um usuário para varreduras de todos os usuários, sem popular o cache
+     * nem ler as outras coleções
+     */
+    public List<?> lerColecaoParaVarredura(String userId, String colecao) throws IOException {
+        UserDataCache.Entrada entrada = cache.consultar(userId);
+        Object registros = entrada != null ? entrada.getDocumento().get(colecao) : null;
+        if (registros instanceof List) {
+            return (List<?>) registros;
+        }
+        return repositorio.lerColecaoSomenteLeitura(userId, colecao);
+    }
+
+    /**
+     * Estatísticas do cache (hits, misses, evictions) para dimensionamento
+     */
+    public Map<String, Object> estatisticasCache() {
+        Map<String, Object> stats = cache.estatisticas();
+        stats.put("armazenamento", repositorio.estatisticas());
+        Map<String, Object> arquivo = arquivador.estatisticas();
+        arquivo.putAll(arquivoFrio.estatisticas());
+        stats.put("arquivo", arquivo);
+        stats.put("consertos", consertos.estatisticas());
+        stats.put("varredura", varredura.estatisticas());
+        stats.put("consertosPorUsuario", parciais.estatisticas());
+        return stats;
+    }
+}
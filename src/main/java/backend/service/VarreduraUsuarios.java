@@ -0,0 +1,141 @@
+package backend.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Varredura de todos os usuários em paralelo (resumo do faturamento, reconstrução dos totais).
+ * Cada usuário é uma tarefa, distribuída entre as threads de um pool compartilhado por todas as varreduras:
+ * scartech.varredura.paralelismo limita as leituras simultâneas (padrão: 2x processadores, pois boa parte
+ * do custo é esperar o disco). Um usuário ilegível entra nas falhas do resultado sem interromper os demais.
+ */
+public class VarreduraUsuarios {
+    private static final Logger logger = Logger.getLogger(VarreduraUsuarios.class.getName());
+    private static final int MAX_FALHAS_LISTADAS = 100;
+
+    /**
+     * Trabalho feito para cada usuário (em várias threads ao mesmo tempo)
+     */
+    public interface Visita {
+        void visitar(String userId) throws IOException;
+    }
+
+    /**
+     * Quantidade de usuários, falhas (as primeiras, com usuário e erro) e duração de uma varredura
+     */
+    public static final class Resultado {
+        private final int usuarios;
+        private final long quantidadeFalhas;
+        private final List<Map<String, Object>> falhas;
+        private final long duracaoMs;
+
+        private Resultado(int usuarios, long quantidadeFalhas, List<Map<String, Object>> falhas, long duracaoMs) {
+            this.usuarios = usuarios;
+            this.quantidadeFalhas = quantidadeFalhas;
+            this.falhas = falhas;
+            this.duracaoMs = duracaoMs;
+        }
+
+        public int getUsuarios() {
+            return usuarios;
+        }
+
+        public long getQuantidadeFalhas() {
+            return quantidadeFalhas;
+        }
+
+        public List<Map<String, Object>> getFalhas() {
+            return falhas;
+        }
+
+        public long getDuracaoMs() {
+            return duracaoMs;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> mapa = new LinkedHashMap<>();
+            mapa.put("usuarios", usuarios);
+            mapa.put("falhas", quantidadeFalhas);
+            mapa.put("erros", falhas);
+            mapa.put("duracaoMs", duracaoMs);
+            return mapa;
+        }
+    }
+
+    private final int paralelismo;
+    private final ExecutorService executor;
+
+    private final AtomicLong varreduras = new AtomicLong();
+    private final AtomicLong usuariosVarridos = new AtomicLong();
+    private final AtomicLong falhas = new AtomicLong();
+
+    VarreduraUsuarios(int paralelismo) {
+        this.paralelismo = Math.max(1, paralelismo);
+        AtomicInteger numero = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.paralelismo, r -> {
+            Thread t = new Thread(r, "varredura-usuarios-" + numero.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Visita todos os usuários e espera o fim
+     * @throws InterruptedIOException se a thread que espera for interrompida (as tarefas são canceladas)
+     */
+    public Resultado executar(List<String> usuarios, Visita visita) throws IOException {
+        long inicio = System.currentTimeMillis();
+        AtomicInteger proximo = new AtomicInteger();
+        AtomicLong quantidadeFalhas = new AtomicLong();
+        List<Map<String, Object>> listadas = Collections.synchronizedList(new ArrayList<>());
+        Callable<Void> trabalhador = () -> {
+            for (int i = proximo.getAndIncrement(); i < usuarios.size(); i = proximo.getAndIncrement()) {
+                String userId = usuarios.get(i);
+                try {
+                    visita.visitar(userId);
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.WARNING, "Erro ao ler dados do usuário: " + userId, e);
+                    if (quantidadeFalhas.incrementAndGet() <= MAX_FALHAS_LISTADAS) {
+                        Map<String, Object> falha = new LinkedHashMap<>();
+                        falha.put("usuario", userId);
+                        falha.put("erro", String.valueOf(e.getMessage()));
+                        listadas.add(falha);
+                    }
+                }
+            }
+            return null;
+        };
+        List<Callable<Void>> trabalhadores = Collections.nCopies(Math.min(paralelismo, Math.max(1, usuarios.size())), trabalhador);
+        try {
+            for (Future<Void> futuro : executor.invokeAll(trabalhadores)) {
+                futuro.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Varredura de usuários interrompida");
+        } catch (ExecutionException e) {
+            // Só erros (não exceções) escapam do trabalhador
+            throw new IllegalStateException(e.getCause());
+        }
+        varreduras.incrementAndGet();
+        usuariosVarridos.addAndGet(usuarios.size());
+        falhas.addAndGet(quantidadeFalhas.get());
+        return new Resultado(usuarios.size(), quantidadeFalhas.get(), new ArrayList<>(listadas),
+            System.currentTimeMillis() - inicio);
+    }
+
+    public Map<String, Object> estatisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("paralelismo", paralelismo);
+        stats.put("varreduras", varreduras.get());
+        stats.put("usuariosVarridos", usuariosVarridos.get());
+        stats.put("falhas", falhas.get());
+        return stats;
+    }
+}
@@ -0,0 +1,127 @@
+package backend.storage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Armazenamento frio: registros antigos fora do documento em uso, em segmentos mensais compactados
+ * (JSON + gzip) em user_data/frio/a/b/{userId}.{colecao}.{yyyy-MM}.{geracao}.json.gz, no mesmo
+ * esquema de fragmentos do LayoutUsuarios.
+ *
+ * Segmentos nunca são alterados: acrescentar registros a um mês grava a próxima geração.
+ * Quais segmentos valem fica no manifesto do documento (campo _arquivados), gravado junto com a coleção
+ * sem os registros arquivados: é o mesmo ponto de confirmação das demais gravações. Segmentos que o
+ * manifesto não referencia (gerações substituídas, sobras de uma queda) são removidos depois.
+ */
+public class ArquivoFrio {
+    private static final Logger logger = Logger.getLogger(ArquivoFrio.class.getName());
+    public static final String CAMPO_ARQUIVADOS = "_arquivados";
+    private static final String EXTENSAO = ".json.gz";
+    private static final ObjectMapper objectMapper = StorageCodec.JSON.getMapper();
+    private static final TypeReference<List<Object>> TIPO_SEGMENTO = new TypeReference<>() {};
+    private static final int BUFFER = 64 * 1024;
+
+    private final LayoutUsuarios layout;
+    private final DurableFileWriter writer;
+
+    private final AtomicLong segmentosGravados = new AtomicLong();
+    private final AtomicLong segmentosLidos = new AtomicLong();
+    private final AtomicLong segmentosRemovidos = new AtomicLong();
+    private final AtomicLong bytesGravados = new AtomicLong();
+
+    public ArquivoFrio(File raiz, DurableFileWriter writer) {
+        this.layout = new LayoutUsuarios(raiz, writer);
+        this.writer = writer;
+        layout.limparTemporarios();
+    }
+
+    /**
+     * Segmentos de uma coleção registrados no documento (manifesto), em ordem de mês; vazio se não houver
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Map<String, Object>> segmentos(Map<String, Object> documento, String colecao) {
+        Object arquivados = documento.get(CAMPO_ARQUIVADOS);
+        if (arquivados instanceof Map) {
+            Object daColecao = ((Map<String, Object>) arquivados).get(colecao);
+            if (daColecao instanceof List) {
+                return (List<Map<String, Object>>) daColecao;
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Grava um segmento novo e devolve sua descrição para o manifesto (mes, geracao, arquivo, quantidade)
+     */
+    public Map<String, Object> gravarSegmento(String userId, String colecao, YearMonth mes, long geracao,
+                                              List<?> registros) throws IOException {
+        File arquivo = new File(layout.garantirDiretorio(userId), userId + "." + colecao + "." + mes + "." + geracao + EXTENSAO);
+        writer.escrever(arquivo.toPath(), out -> {
+            GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER);
+            objectMapper.writeValue(gzip, registros);
+            gzip.finish();
+        });
+        segmentosGravados.incrementAndGet();
+        bytesGravados.addAndGet(arquivo.length());
+        Map<String, Object> segmento = new LinkedHashMap<>();
+        segmento.put("mes", mes.toString());
+        segmento.put("geracao", geracao);
+        segmento.put("arquivo", arquivo.getName());
+        segmento.put("quantidade", registros.size());
+        return segmento;
+    }
+
+    /**
+     * Registros de um segmento descrito no manifesto
+     * @throws FileNotFoundException se o segmento foi substituído depois que o manifesto foi lido
+     */
+    public List<Object> lerSegmento(String userId, Map<String, Object> segmento) throws IOException {
+        File arquivo = new File(layout.diretorio(userId), (String) segmento.get("arquivo"));
+        try (InputStream entrada = new GZIPInputStream(new FileInputStream(arquivo), BUFFER)) {
+            List<Object> registros = objectMapper.readValue(entrada, TIPO_SEGMENTO);
+            segmentosLidos.incrementAndGet();
+            return registros;
+        }
+    }
+
+    /**
+     * Remove os segmentos do usuário que o manifesto gravado não referencia mais.
+     * Só deve ser chamado com o lock do usuário e depois de o manifesto estar gravado
+     * @return quantidade de arquivos removidos
+     */
+    public int removerNaoReferenciados(String userId, Collection<String> referenciados) {
+        String[] nomes = layout.diretorio(userId).list();
+        if (nomes == null) {
+            return 0;
+        }
+        int removidos = 0;
+        for (String nome : nomes) {
+            if (nome.startsWith(userId + ".") && nome.endsWith(EXTENSAO) && !referenciados.contains(nome)) {
+                if (new File(layout.diretorio(userId), nome).delete()) {
+                    removidos++;
+                } else {
+                    logger.warning("Não foi possível remover o segmento substituído: " + nome);
+                }
+            }
+        }
+        segmentosRemovidos.addAndGet(removidos);
+        return removidos;
+    }
+
+    public Map<String, Object> estatisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("segmentosGravados", segmentosGravados.get());
+        stats.put("segmentosLidos", segmentosLidos.get());
+        stats.put("segmentosRemovidos", segmentosRemovidos.get());
+        stats.put("bytesGravados", bytesGravados.get());
+        return stats;
+    }
+}
@@ -0,0 +1,299 @@
+package backend.storage;
+
+import backend.util.ConfigUtil;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+
+/**
+ * Escrita de arquivos resistente a quedas: grava em arquivo temporário, faz fsync e renomeia atomicamente.
+ *
+ * Modos de durabilidade (scartech.durabilidade):
+ *  - por-escrita: fsync a cada escrita, antes de retornar
+ *  - lote: escritas pendentes são confirmadas juntas a cada scartech.durabilidade.lote-ms (group commit);
+ *          o chamador espera o lote, e várias versões do mesmo arquivo no lote viram uma só
+ *  - so: sem fsync, a durabilidade fica a cargo do sistema operacional (rename continua atômico)
+ */
+public class DurableFileWriter {
+    private static final Logger logger = Logger.getLogger(DurableFileWriter.class.getName());
+
+    public enum Durabilidade {
+        POR_ESCRITA, LOTE, SO;
+
+        public static Durabilidade of(String valor) {
+            switch (valor.toLowerCase(Locale.ROOT)) {
+                case "por-escrita": return POR_ESCRITA;
+                case "lote": return LOTE;
+                case "so": return SO;
+                default:
+                    logger.warning("Modo de durabilidade desconhecido: " + valor + " (usando lote)");
+                    return LOTE;
+            }
+        }
+    }
+
+    public interface Conteudo {
+        void escrever(OutputStream out) throws IOException;
+    }
+
+    private static final class Lote {
+        // Destino -> arquivo temporário mais recente
+        final Map<Path, Path> substituicoes = new LinkedHashMap<>();
+        final Set<Path> anexados = new LinkedHashSet<>();
+        final CompletableFuture<Void> concluido = new CompletableFuture<>();
+        int escritas;
+    }
+
+    private static final DurableFileWriter INSTANCE = new DurableFileWriter(
+        Durabilidade.of(ConfigUtil.getString("scartech.durabilidade", "lote")),
+        ConfigUtil.getLong("scartech.durabilidade.lote-ms", 5)
+    );
+
+    private final Durabilidade modo;
+    private final long intervaloLoteMs;
+    private final Object loteLock = new Object();
+    private Lote loteAtual = new Lote();
+    private final ScheduledExecutorService committer;
+
+    private final AtomicLong escritas = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong coalescidas = new AtomicLong();
+
+    public DurableFileWriter(Durabilidade modo, long intervaloLoteMs) {
+        this.modo = modo;
+        this.intervaloLoteMs = Math.max(1, intervaloLoteMs);
+        if (modo == Durabilidade.LOTE) {
+            this.committer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "durable-writer-group-commit");
+                t.setDaemon(true);
+                return t;
+            });
+            committer.scheduleWithFixedDelay(this::confirmarLote, this.intervaloLoteMs, this.intervaloLoteMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.committer = null;
+        }
+        logger.info("Durabilidade de escrita: " + modo + (modo == Durabilidade.LOTE ? " (" + this.intervaloLoteMs + " ms)" : ""));
+    }
+
+    public static DurableFileWriter getInstance() {
+        return INSTANCE;
+    }
+
+    public Durabilidade getModo() {
+        return modo;
+    }
+
+    /**
+     * Substitui o arquivo de destino de forma atômica
+     */
+    public void escrever(Path destino, Conteudo conteudo) throws IOException {
+        destino = destino.toAbsolutePath();
+        Path temporario = Files.createTempFile(destino.getParent(), destino.getFileName() + ".", ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporario))) {
+            conteudo.escrever(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporario);
+            throw e;
+        }
+        escritas.incrementAndGet();
+
+        switch (modo) {
+            case POR_ESCRITA:
+                forcar(temporario);
+                mover(temporario, destino);
+                forcarDiretorio(destino.getParent());
+                break;
+            case SO:
+                mover(temporario, destino);
+                break;
+            default:
+                CompletableFuture<Void> concluido;
+                synchronized (loteLock) {
+                    Path anterior = loteAtual.substituicoes.put(destino, temporario);
+                    if (anterior != null) {
+                        // Versão mais nova do mesmo arquivo no mesmo lote: a anterior nunca precisa ir ao disco
+                        Files.deleteIfExists(anterior);
+                        coalescidas.incrementAndGet();
+                    }
+                    loteAtual.escritas++;
+                    concluido = loteAtual.concluido;
+                }
+                aguardar(concluido);
+        }
+    }
+
+    public void escrever(Path destino, byte[] conteudo) throws IOException {
+        escrever(destino, out -> out.write(conteudo));
+    }
+
+    /**
+     * Anexa bytes ao final do arquivo (journal), com a mesma política de durabilidade
+     */
+    public void anexar(Path destino, byte[] conteudo) throws IOException {
+        aguardar(anexarSemEsperar(destino, conteudo));
+    }
+
+    /**
+     * Anexa bytes e devolve a confirmação de durabilidade sem esperá-la.
+     * Permite liberar locks antes de aguardar o lote, para que escritas do mesmo arquivo entrem no mesmo fsync
+     */
+    public CompletableFuture<Void> anexarSemEsperar(Path destino, byte[] conteudo) throws IOException {
+        destino = destino.toAbsolutePath();
+        escritas.incrementAndGet();
+        if (modo == Durabilidade.POR_ESCRITA) {
+            try (FileChannel canal = FileChannel.open(destino, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                canal.write(ByteBuffer.wrap(conteudo));
+                canal.force(false);
+                fsyncs.incrementAndGet();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        try (OutputStream out = Files.newOutputStream(destino, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            out.write(conteudo);
+        }
+        if (modo == Durabilidade.SO) {
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (loteLock) {
+            loteAtual.anexados.add(destino);
+            loteAtual.escritas++;
+            return loteAtual.concluido;
+        }
+    }
+
+    /**
+     * Espera a confirmação de uma escrita feita com anexarSemEsperar
+     */
+    public void aguardar(CompletableFuture<Void> concluido) throws IOException {
+        try {
+            concluido.join();
+        } catch (CompletionException e) {
+            Throwable causa = e.getCause();
+            throw causa instanceof IOException ? (IOException) causa : new IOException("Falha na confirmação do lote", causa);
+        }
+    }
+
+    /**
+     * Group commit: um fsync por arquivo e por diretório para todas as escritas do lote
+     */
+    private void confirmarLote() {
+        Lote lote;
+        synchronized (loteLock) {
+            if (loteAtual.escritas == 0) {
+                return;
+            }
+            lote = loteAtual;
+            loteAtual = new Lote();
+        }
+        try {
+            Set<Path> diretorios = new LinkedHashSet<>();
+            for (Map.Entry<Path, Path> e : lote.substituicoes.entrySet()) {
+                forcar(e.getValue());
+                mover(e.getValue(), e.getKey());
+                diretorios.add(e.getKey().getParent());
+            }
+            for (Path anexado : lote.anexados) {
+                try {
+                    forcar(anexado);
+                } catch (NoSuchFileException e) {
+                    // Journal descartado por uma compactação no mesmo lote
+                }
+            }
+            for (Path diretorio : diretorios) {
+                forcarDiretorio(diretorio);
+            }
+            lotes.incrementAndGet();
+            lote.concluido.complete(null);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.SEVERE, "Erro ao confirmar lote de escrita", e);
+            lote.concluido.completeExceptionally(e);
+        }
+    }
+
+    private void forcar(Path arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.WRITE)) {
+            canal.force(false);
+        }
+        fsyncs.incrementAndGet();
+    }
+
+    /**
+     * Cria o diretório e os pais que faltarem; fora do modo SO, faz fsync de cada pai alterado
+     * para que a criação sobreviva a uma queda
+     */
+    public void criarDiretorios(Path diretorio) throws IOException {
+        diretorio = diretorio.toAbsolutePath();
+        Deque<Path> criar = new ArrayDeque<>();
+        for (Path atual = diretorio; atual != null && !Files.isDirectory(atual); atual = atual.getParent()) {
+            criar.push(atual);
+        }
+        for (Path novo : criar) {
+            try {
+                Files.createDirectory(novo);
+            } catch (FileAlreadyExistsException e) {
+                // Criado em paralelo por outra escrita
+            }
+            if (modo != Durabilidade.SO) {
+                forcarDiretorio(novo.getParent());
+            }
+        }
+    }
+
+    void forcarDiretorio(Path diretorio) {
+        // Persiste o rename; não suportado em alguns sistemas (ex.: Windows), onde é ignorado
+        try (FileChannel canal = FileChannel.open(diretorio, StandardOpenOption.READ)) {
+            canal.force(true);
+            fsyncs.incrementAndGet();
+        } catch (IOException e) {
+            logger.fine("fsync de diretório não suportado: " + diretorio);
+        }
+    }
+
+    /**
+     * Remove temporários deixados por uma queda antes do rename
+     */
+    public static void limparTemporarios(File diretorio) {
+        File[] temporarios = diretorio.listFiles((dir, name) -> name.endsWith(".tmp"));
+        if (temporarios == null) {
+            return;
+        }
+        for (File temporario : temporarios) {
+            if (temporario.delete()) {
+                logger.info("Arquivo temporário removido: " + temporario.getName());
+            }
+        }
+    }
+
+    private static void mover(Path origem, Path destino) throws IOException {
+        try {
+            Files.move(origem, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(origem, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public Map<String, Object> estatisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("modo", modo.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        if (modo == Durabilidade.LOTE) {
+            stats.put("loteMs", intervaloLoteMs);
+            stats.put("lotes", lotes.get());
+            stats.put("coalescidas", coalescidas.get());
+        }
+        stats.put("escritas", escritas.get());
+        stats.put("fsyncs", fsyncs.get());
+        return stats;
+    }
+}
@@ -0,0 +1,663 @@
+package backend.storage;
+
+import backend.util.RegistroUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+
+/**
+ * Faturas do faturamento_db, particionadas por período (ano, mes): um arquivo por período em
+ * {nomeBase}_faturas/{ano}-{mes}.{geracao}.json ("sem-ano"/"sem-mes" quando ausentes) e um manifesto com as
+ * partições em uso, a quantidade e os totais de vendas de cada uma. As partições são lidas sob demanda e
+ * ficam em memória, indexadas por id e por período: listar um mês lê só as partições que entram nele, e o
+ * resumo do mês sai do manifesto. Busca por id, inclusão (que confere o id) e os totais por dia leem todas
+ * na primeira vez.
+ *
+ * Cada alteração grava só as partições que mudam, numa geração nova, e depois o manifesto, pelo
+ * DurableFileWriter (temporário + fsync + rename): o manifesto é o ponto de confirmação, então se a gravação
+ * falha nada muda em memória e as gerações anteriores continuam valendo. Gerações que o manifesto não
+ * referencia são removidas. Leituras esperam só enquanto uma alteração grava.
+ *
+ * O faturamento_db fica só com as demais chaves (ordens, vendas), dos scripts Python; faturas gravadas nele
+ * por versões anteriores são migradas para as partições na primeira leitura.
+ * Faturas sem mes ou ano aparecem em todos os meses ou anos, como na listagem original, na ordem em que
+ * foram incluídas. Os totais de vendas (faturas de tipo "venda") são mantidos por partição, então o resumo
+ * de um mês soma no máximo quatro. Também por dia (SomasPorDia), para o resumo de intervalos:
+ * o dia é o de dataEmissao quando cai no mes/ano da fatura, senão o primeiro dia do mes/ano; sem mes ou ano,
+ * vale dataEmissao, e a fatura sem nenhuma data fica fora dos intervalos.
+ */
+public class FaturaStore {
+    private static final Logger logger = Logger.getLogger(FaturaStore.class.getName());
+    private static final TypeReference<Map<String, Object>> TIPO_ARQUIVO = new TypeReference<>() {};
+    private static final String FATURAS = "faturas";
+    private static final String POSICOES = "posicoes";
+    private static final String MANIFESTO = "manifesto";
+    private static final String TIPO_VENDA = "venda";
+
+    /**
+     * Total e quantidade das faturas de venda de um período
+     */
+    public static final class ResumoVendas {
+        private BigDecimal total = BigDecimal.ZERO;
+        private int quantidade;
+
+        private void somar(ResumoVendas outro) {
+            total = total.add(outro.total);
+            quantidade += outro.quantidade;
+        }
+
+        public BigDecimal getTotal() {
+            return total;
+        }
+
+        public int getQuantidade() {
+            return quantidade;
+        }
+    }
+
+    /**
+     * Partição registrada no manifesto
+     */
+    private static final class Particao {
+        final Integer ano;
+        final Integer mes;
+        final String arquivo;
+        final long geracao;
+        final int quantidade;
+        final ResumoVendas vendas;
+
+        Particao(Integer ano, Integer mes, String arquivo, long geracao, int quantidade, ResumoVendas vendas) {
+            this.ano = ano;
+            this.mes = mes;
+            this.arquivo = arquivo;
+            this.geracao = geracao;
+            this.quantidade = quantidade;
+            this.vendas = vendas;
+        }
+    }
+
+    private final File diretorio;
+    private final String nomeBase;
+    private final File pasta;
+    private final DurableFileWriter writer;
+    // Escritas ficam com o lock de escrita até o manifesto estar gravado: a ordem no disco é a ordem em memória
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // "ano/mes" (null quando ausente) -> partição gravada (mapa substituído a cada gravação)
+    private Map<String, Particao> particoes = new TreeMap<>();
+    // Períodos já lidos (ou sem partição); todasLidas quando todas as partições estão em memória
+    private Set<String> lidas = new HashSet<>();
+    private boolean todasLidas;
+    // Posição de inclusão -> fatura (mapa nunca alterado depois de indexado), só das partições lidas
+    private TreeMap<Long, Map<String, Object>> faturas = new TreeMap<>();
+    private Map<String, Long> porId = new HashMap<>();
+    private Map<String, TreeSet<Long>> porPeriodo = new HashMap<>();
+    private SomasPorDia vendasPorDia = new SomasPorDia();
+    private long proximaChave;
+    private boolean carregado;
+
+    private final AtomicLong particoesLidas = new AtomicLong();
+    private final AtomicLong particoesGravadas = new AtomicLong();
+
+    public FaturaStore(File diretorio, String nomeBase, DurableFileWriter writer) {
+        this.diretorio = diretorio;
+        this.nomeBase = nomeBase;
+        this.pasta = new File(diretorio, nomeBase + "_faturas");
+        this.writer = writer;
+    }
+
+    private static Integer inteiro(Object valor) {
+        return valor instanceof Number ? ((Number) valor).intValue() : null;
+    }
+
+    private static String periodo(Integer ano, Integer mes) {
+        return ano + "/" + mes;
+    }
+
+    private static String periodo(Map<String, Object> fatura) {
+        return periodo(inteiro(fatura.get("ano")), inteiro(fatura.get("mes")));
+    }
+
+    /**
+     * Períodos que entram num mês: o próprio, e os sem mes e/ou ano
+     */
+    private static List<String> periodosDoMes(int ano, int mes) {
+        return Arrays.asList(periodo(ano, mes), periodo(ano, null), periodo(null, mes), periodo(null, null));
+    }
+
+    /**
+     * Valor de uma fatura de venda, ou null se não for venda
+     */
+    private static BigDecimal valorVenda(Map<String, Object> fatura) {
+        if (!TIPO_VENDA.equals(fatura.get("tipo"))) {
+            return null;
+        }
+        Object valor = fatura.get("valor");
+        return valor instanceof Number ? new BigDecimal(valor.toString()) : BigDecimal.ZERO;
+    }
+
+    /**
+     * Dia da fatura nos totais por dia, ou null se não tiver data
+     */
+    private static LocalDate dia(Map<String, Object> fatura) {
+        LocalDate emissao = RegistroUtil.data(fatura);
+        Integer ano = inteiro(fatura.get("ano"));
+        Integer mes = inteiro(fatura.get("mes"));
+        if (ano == null || mes == null) {
+            return emissao;
+        }
+        try {
+            YearMonth periodo = YearMonth.of(ano, mes);
+            return emissao != null && YearMonth.from(emissao).equals(periodo) ? emissao : periodo.atDay(1);
+        } catch (DateTimeException e) {
+            return emissao;
+        }
+    }
+
+    private static long centavos(BigDecimal valor) {
+        return valor.movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValue();
+    }
+
+    /**
+     * Nome da partição de um período: {ano}-{mes}, com sem-ano/sem-mes quando ausentes
+     */
+    private static String nomeParticao(Integer ano, Integer mes) {
+        return (ano != null ? ano.toString() : "sem-ano") + "-" + (mes != null ? String.format(Locale.ROOT, "%02d", mes) : "sem-mes");
+    }
+
+    private static String id(Map<String, Object> fatura) {
+        Object id = fatura.get("id");
+        return id != null ? id.toString() : null;
+    }
+
+    private void indexar(long chave, Map<String, Object> fatura) {
+        faturas.put(chave, fatura);
+        String id = id(fatura);
+        if (id != null) {
+            // Com ids repetidos vale o primeiro incluído, seja qual for a ordem de leitura das partições
+            porId.merge(id, chave, Math::min);
+        }
+        porPeriodo.computeIfAbsent(periodo(fatura), k -> new TreeSet<>()).add(chave);
+        BigDecimal venda = valorVenda(fatura);
+        LocalDate dia = venda != null ? dia(fatura) : null;
+        if (dia != null) {
+            vendasPorDia.somar(dia, centavos(venda), 1);
+        }
+    }
+
+    private void desindexar(long chave) {
+        Map<String, Object> fatura = faturas.remove(chave);
+        if (fatura == null) {
+            return;
+        }
+        porId.remove(id(fatura), chave);
+        Set<Long> doPeriodo = porPeriodo.get(periodo(fatura));
+        if (doPeriodo != null) {
+            doPeriodo.remove(chave);
+            if (doPeriodo.isEmpty()) {
+                porPeriodo.remove(periodo(fatura));
+            }
+        }
+        BigDecimal venda = valorVenda(fatura);
+        LocalDate dia = venda != null ? dia(fatura) : null;
+        if (dia != null) {
+            vendasPorDia.somar(dia, -centavos(venda), -1);
+        }
+    }
+
+    /**
+     * Lê o manifesto, migra as faturas que ainda estejam no banco e remove arquivos que o manifesto não
+     * referencia. Nenhuma partição é lida aqui. Chamado com o lock de escrita
+     */
+    private void abrir() throws IOException {
+        particoes = new TreeMap<>();
+        lidas = new HashSet<>();
+        todasLidas = false;
+        faturas = new TreeMap<>();
+        porId = new HashMap<>();
+        porPeriodo = new HashMap<>();
+        vendasPorDia = new SomasPorDia();
+        proximaChave = 0;
+        DurableFileWriter.limparTemporarios(pasta);
+        File manifesto = StorageCodec.localizar(pasta, MANIFESTO);
+        if (manifesto != null) {
+            lerManifesto(manifesto);
+        }
+        File arquivo = StorageCodec.localizar(diretorio, nomeBase);
+        if (arquivo == null) {
+            logger.warning("Banco de dados não encontrado. Criando novo...");
+            // As chaves que os scripts Python esperam
+            Map<String, Object> banco = new LinkedHashMap<>();
+            banco.put("ordens", new ArrayList<>());
+            banco.put("vendas", new ArrayList<>());
+            gravarBanco(banco);
+        } else {
+            Map<String, Object> banco = StorageCodec.lerArquivo(arquivo, TIPO_ARQUIVO);
+            if (banco.containsKey(FATURAS)) {
+                migrar(banco, manifesto != null);
+            }
+        }
+        removerNaoReferenciados();
+        carregado = true;
+        logger.info("Partições de faturas: " + particoes.size() + " (" + quantidade() + " faturas)");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void lerManifesto(File arquivo) throws IOException {
+        Map<String, Object> manifesto = StorageCodec.lerArquivo(arquivo, TIPO_ARQUIVO);
+        Object proxima = manifesto.get("proximaPosicao");
+        proximaChave = proxima instanceof Number ? ((Number) proxima).longValue() : 0;
+        for (Object item : (List<Object>) manifesto.getOrDefault("particoes", List.of())) {
+            Map<String, Object> particao = (Map<String, Object>) item;
+            Map<String, Object> vendas = (Map<String, Object>) particao.get("vendas");
+            ResumoVendas resumo = new ResumoVendas();
+            resumo.total = new BigDecimal(vendas.get("total").toString());
+            resumo.quantidade = inteiro(vendas.get("quantidade"));
+            Integer ano = inteiro(particao.get("ano"));
+            Integer mes = inteiro(particao.get("mes"));
+            particoes.put(periodo(ano, mes), new Particao(ano, mes, (String) particao.get("arquivo"),
+                ((Number) particao.get("geracao")).longValue(), inteiro(particao.get("quantidade")), resumo));
+        }
+    }
+
+    /**
+     * Faturas gravadas no banco (versões anteriores): vão para as partições e saem do banco, que mantém
+     * as demais chaves. Com manifesto já gravado, a migração foi interrompida depois dele e só falta o banco
+     */
+    @SuppressWarnings("unchecked")
+    private void migrar(Map<String, Object> banco, boolean migradas) throws IOException {
+        Object lista = banco.remove(FATURAS);
+        if (!migradas) {
+            if (lista instanceof List) {
+                for (Object fatura : (List<?>) lista) {
+                    if (fatura instanceof Map) {
+                        indexar(proximaChave++, (Map<String, Object>) fatura);
+                    }
+                }
+            }
+            todasLidas = true;
+            Map<String, TreeMap<Long, Map<String, Object>>> todas = new HashMap<>();
+            for (String periodo : porPeriodo.keySet()) {
+                todas.put(periodo, conteudo(periodo));
+            }
+            particoes = gravar(todas, proximaChave);
+            logger.info("Faturas migradas do banco para partições por mês: " + faturas.size()
+                + " em " + particoes.size() + " partições");
+        }
+        gravarBanco(banco);
+    }
+
+    /**
+     * Grava o banco (sem faturas) para os scripts Python. Chamado com o lock de escrita
+     */
+    private void gravarBanco(Map<String, Object> banco) throws IOException {
+        diretorio.mkdirs();
+        StorageCodec codec = StorageCodec.configurado();
+        File arquivo = codec.arquivo(diretorio, nomeBase);
+        writer.escrever(arquivo.toPath(), out -> codec.escrever(out, banco));
+        StorageCodec.removerFormatosAntigos(diretorio, nomeBase);
+    }
+
+    private void removerNaoReferenciados() {
+        String[] nomes = pasta.list();
+        if (nomes == null) {
+            return;
+        }
+        Set<String> referenciados = new HashSet<>();
+        for (Particao particao : particoes.values()) {
+            referenciados.add(particao.arquivo);
+        }
+        for (String nome : nomes) {
+            if (StorageCodec.porArquivo(nome) != null && !StorageCodec.nomeBase(nome).equals(MANIFESTO)
+                && !referenciados.contains(nome) && !new File(pasta, nome).delete()) {
+                logger.warning("Não foi possível remover a partição substituída: " + nome);
+            }
+        }
+    }
+
+    /**
+     * Lê as partições dos períodos que ainda não estão em memória (null: todas). Chamado com o lock de escrita
+     */
+    @SuppressWarnings("unchecked")
+    private void carregar(Collection<String> periodos) throws IOException {
+        if (!carregado) {
+            abrir();
+        }
+        if (periodos == null) {
+            if (todasLidas) {
+                return;
+            }
+            periodos = new ArrayList<>(particoes.keySet());
+        }
+        for (String periodo : periodos) {
+            if (todasLidas || lidas.contains(periodo)) {
+                continue;
+            }
+            Particao particao = particoes.get(periodo);
+            if (particao != null) {
+                Map<String, Object> conteudo = StorageCodec.lerArquivo(new File(pasta, particao.arquivo), TIPO_ARQUIVO);
+                List<Object> posicoes = (List<Object>) conteudo.get(POSICOES);
+                List<Object> lista = (List<Object>) conteudo.get(FATURAS);
+                for (int i = 0; i < lista.size(); i++) {
+                    indexar(((Number) posicoes.get(i)).longValue(), (Map<String, Object>) lista.get(i));
+                }
+                particoesLidas.incrementAndGet();
+            }
+            lidas.add(periodo);
+        }
+        if (lidas.containsAll(particoes.keySet())) {
+            todasLidas = true;
+        }
+    }
+
+    private boolean lidos(Collection<String> periodos) {
+        return carregado && (todasLidas || (periodos != null && lidas.containsAll(periodos)));
+    }
+
+    /**
+     * Garante em memória as partições dos períodos (null: todas) e retorna com o lock de leitura adquirido
+     */
+    private void lerAtualizado(Collection<String> periodos) throws IOException {
+        lock.readLock().lock();
+        if (lidos(periodos)) {
+            return;
+        }
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            carregar(periodos);
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Faturas em memória de um período, em ordem de inclusão (cópia para montar a próxima geração)
+     */
+    private TreeMap<Long, Map<String, Object>> conteudo(String periodo) {
+        TreeMap<Long, Map<String, Object>> conteudo = new TreeMap<>();
+        Set<Long> chaves = porPeriodo.get(periodo);
+        if (chaves != null) {
+            for (long chave : chaves) {
+                conteudo.put(chave, faturas.get(chave));
+            }
+        }
+        return conteudo;
+    }
+
+    /**
+     * Grava a próxima geração de cada partição alterada (sem faturas, ela sai do manifesto), depois o
+     * manifesto, e só então remove as gerações substituídas. Não altera nada em memória.
+     * Chamado com o lock de escrita
+     * @return partições do manifesto gravado
+     */
+    private Map<String, Particao> gravar(Map<String, TreeMap<Long, Map<String, Object>>> alteradas, long proxima) throws IOException {
+        StorageCodec codec = StorageCodec.configurado();
+        pasta.mkdirs();
+        Map<String, Particao> gravadas = new TreeMap<>(particoes);
+        List<File> substituidos = new ArrayList<>();
+        for (Map.Entry<String, TreeMap<Long, Map<String, Object>>> e : alteradas.entrySet()) {
+            Particao anterior = particoes.get(e.getKey());
+            if (anterior != null) {
+                substituidos.add(new File(pasta, anterior.arquivo));
+            }
+            if (e.getValue().isEmpty()) {
+                gravadas.remove(e.getKey());
+                continue;
+            }
+            Map<String, Object> primeira = e.getValue().firstEntry().getValue();
+            Integer ano = inteiro(primeira.get("ano"));
+            Integer mes = inteiro(primeira.get("mes"));
+            long geracao = anterior != null ? anterior.geracao + 1 : 1;
+            File arquivo = codec.arquivo(pasta, nomeParticao(ano, mes) + "." + geracao);
+            Map<String, Object> conteudo = new LinkedHashMap<>();
+            conteudo.put(POSICOES, new ArrayList<>(e.getValue().keySet()));
+            conteudo.put(FATURAS, new ArrayList<>(e.getValue().values()));
+            writer.escrever(arquivo.toPath(), out -> codec.escrever(out, conteudo));
+            particoesGravadas.incrementAndGet();
+            ResumoVendas vendas = new ResumoVendas();
+            for (Map<String, Object> fatura : e.getValue().values()) {
+                BigDecimal venda = valorVenda(fatura);
+                if (venda != null) {
+                    vendas.total = vendas.total.add(venda);
+                    vendas.quantidade++;
+                }
+            }
+            gravadas.put(e.getKey(), new Particao(ano, mes, arquivo.getName(), geracao, e.getValue().size(), vendas));
+        }
+
+        List<Particao> emOrdem = new ArrayList<>(gravadas.values());
+        emOrdem.sort(Comparator.comparing(particao -> particao.arquivo));
+        List<Map<String, Object>> lista = new ArrayList<>();
+        for (Particao particao : emOrdem) {
+            Map<String, Object> vendas = new LinkedHashMap<>();
+            vendas.put("total", particao.vendas.total.toPlainString());
+            vendas.put("quantidade", particao.vendas.quantidade);
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("ano", particao.ano);
+            item.put("mes", particao.mes);
+            item.put("arquivo", particao.arquivo);
+            item.put("geracao", particao.geracao);
+            item.put("quantidade", particao.quantidade);
+            item.put("vendas", vendas);
+            lista.add(item);
+        }
+        Map<String, Object> manifesto = new LinkedHashMap<>();
+        manifesto.put("proximaPosicao", proxima);
+        manifesto.put("particoes", lista);
+        writer.escrever(codec.arquivo(pasta, MANIFESTO).toPath(), out -> codec.escrever(out, manifesto));
+        StorageCodec.removerFormatosAntigos(pasta, MANIFESTO);
+        for (File substituido : substituidos) {
+            if (!substituido.delete() && substituido.exists()) {
+                logger.warning("Não foi possível remover a partição substituída: " + substituido.getName());
+            }
+        }
+        return gravadas;
+    }
+
+    private int quantidade() {
+        int quantidade = 0;
+        for (Particao particao : particoes.values()) {
+            quantidade += particao.quantidade;
+        }
+        return quantidade;
+    }
+
+    /**
+     * Fatura pelo id, ou null
+     */
+    public Map<String, Object> obter(String id) throws IOException {
+        lerAtualizado(null);
+        try {
+            Long chave = porId.get(id);
+            return chave != null ? faturas.get(chave) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Faturas de um mês, na ordem de inclusão (inclui as sem mes e/ou ano); lê só as partições desses períodos
+     */
+    public List<Map<String, Object>> listar(int ano, int mes) throws IOException {
+        List<String> periodosDoMes = periodosDoMes(ano, mes);
+        lerAtualizado(periodosDoMes);
+        try {
+            List<Long> chaves = new ArrayList<>();
+            int periodos = 0;
+            for (String periodo : periodosDoMes) {
+                Set<Long> doPeriodo = porPeriodo.get(periodo);
+                if (doPeriodo != null) {
+                    chaves.addAll(doPeriodo);
+                    periodos++;
+                }
+            }
+            if (periodos > 1) {
+                Collections.sort(chaves);
+            }
+            List<Map<String, Object>> resultado = new ArrayList<>(chaves.size());
+            for (long chave : chaves) {
+                resultado.add(faturas.get(chave));
+            }
+            return resultado;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Totais das faturas de venda de um mês (mesmos períodos de listar), pelo manifesto, sem ler partições
+     */
+    public ResumoVendas resumoVendas(int ano, int mes) throws IOException {
+        lerAtualizado(List.of());
+        try {
+            ResumoVendas resumo = new ResumoVendas();
+            for (String periodo : periodosDoMes(ano, mes)) {
+                Particao particao = particoes.get(periodo);
+                if (particao != null) {
+                    resumo.somar(particao.vendas);
+                }
+            }
+            return resumo;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Totais das faturas de venda por dia, para intervalos (somente leitura; acompanha as alterações seguintes
+     * até as partições serem relidas). Lê todas as partições na primeira vez
+     */
+    public SomasPorDia vendasPorDia() throws IOException {
+        lerAtualizado(null);
+        try {
+            return vendasPorDia;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Relê o manifesto do disco; as partições voltam a ser lidas sob demanda
+     * @return quantidade de faturas
+     */
+    public int recarregar() throws IOException {
+        lock.writeLock().lock();
+        try {
+            carregado = false;
+            carregar(List.of());
+            return quantidade();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Inclui uma fatura depois das demais; grava só a partição do seu período
+     * @throws IllegalArgumentException se o id já existir
+     */
+    public void incluir(Map<String, Object> fatura) throws IOException {
+        lock.writeLock().lock();
+        try {
+            carregar(null);
+            String id = id(fatura);
+            if (id != null && porId.containsKey(id)) {
+                throw new IllegalArgumentException("Já existe uma fatura com o id " + id);
+            }
+            String periodo = periodo(fatura);
+            TreeMap<Long, Map<String, Object>> doPeriodo = conteudo(periodo);
+            doPeriodo.put(proximaChave, fatura);
+            particoes = gravar(Map.of(periodo, doPeriodo), proximaChave + 1);
+            indexar(proximaChave++, fatura);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Substitui a fatura do id pelo resultado da alteração (que recebe a atual e não deve alterá-la);
+     * a fatura mantém sua posição. Grava a partição do período, ou as duas se o mes/ano mudar
+     * @return fatura gravada, ou null se o id não existir
+     */
+    public Map<String, Object> alterar(String id, UnaryOperator<Map<String, Object>> alteracao) throws IOException {
+        lock.writeLock().lock();
+        try {
+            carregar(null);
+            Long chave = porId.get(id);
+            if (chave == null) {
+                return null;
+            }
+            Map<String, Object> atual = faturas.get(chave);
+            Map<String, Object> nova = alteracao.apply(atual);
+            Map<String, TreeMap<Long, Map<String, Object>>> alteradas = new HashMap<>();
+            TreeMap<Long, Map<String, Object>> doAnterior = conteudo(periodo(atual));
+            doAnterior.remove(chave);
+            alteradas.put(periodo(atual), doAnterior);
+            alteradas.computeIfAbsent(periodo(nova), this::conteudo).put(chave, nova);
+            particoes = gravar(alteradas, proximaChave);
+            desindexar(chave);
+            indexar(chave, nova);
+            return nova;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a fatura do id; grava só a partição do seu período
+     * @return false se o id não existir
+     */
+    public boolean remover(String id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            carregar(null);
+            Long chave = porId.get(id);
+            if (chave == null) {
+                return false;
+            }
+            String periodo = periodo(faturas.get(chave));
+            TreeMap<Long, Map<String, Object>> doPeriodo = conteudo(periodo);
+            doPeriodo.remove(chave);
+            particoes = gravar(Map.of(periodo, doPeriodo), proximaChave);
+            desindexar(chave);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Object> estatisticas() {
+        lock.readLock().lock();
+        try {
+            int periodosComVendas = 0;
+            for (Particao particao : particoes.values()) {
+                if (particao.vendas.quantidade > 0) {
+                    periodosComVendas++;
+                }
+            }
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("faturas", quantidade());
+            stats.put("faturasEmMemoria", faturas.size());
+            stats.put("particoes", particoes.size());
+            stats.put("periodosComVendas", periodosComVendas);
+            stats.put("diasComVendas", vendasPorDia.getDias());
+            stats.put("particoesLidas", particoesLidas.get());
+            stats.put("particoesGravadas", particoesGravadas.get());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package backend.storage;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+
+/**
+ * Repositório em arquivos, no diretório do usuário em user_data/a/b/ (LayoutUsuarios):
+ *  - {userId}.json: manifesto com os campos de topo (_revisao, _removidos, ...), a última sequência do
+ *    journal já incorporada (_journalSeq) e o arquivo atual de cada coleção (_colecoes)
+ *  - {userId}.{colecao}.{geracao}.json: registros de uma coleção
+ *  - {userId}.journal: operações posteriores ao manifesto (UserJournal)
+ * Formato .json, .smile ou .cbor conforme StorageCodec.
+ *
+ * Cada coleção é lida e gravada sozinha. Uma gravação cria a próxima geração das coleções alteradas e troca o
+ * manifesto por último: ele é o ponto de confirmação, então uma queda no meio mantém o estado anterior inteiro
+ * (a geração órfã é sobrescrita na próxima gravação). Coleções vazias não têm arquivo.
+ * Snapshots antigos, com as coleções dentro do próprio arquivo, são convertidos na primeira carga.
+ */
+public class FileUserDataRepository implements UserDataRepository {
+    private static final Logger logger = Logger.getLogger(FileUserDataRepository.class.getName());
+    private static final String CAMPO_SEQ_JOURNAL = "_journalSeq";
+    private static final String CAMPO_COLECOES = "_colecoes";
+    private static final TypeReference<Map<String, Object>> TIPO_DOCUMENTO = new TypeReference<>() {};
+    private static final TypeReference<List<Object>> TIPO_COLECAO = new TypeReference<>() {};
+    private static final int TENTATIVAS_LEITURA = 3;
+
+    private final LayoutUsuarios layout;
+    private final List<String> colecoes;
+    private final DurableFileWriter writer;
+    private final StorageCodec codec;
+    private final UserJournal journal;
+    private final long limiteJournalBytes;
+    // Manifesto gravado de cada usuário (sem os campos), mantido com o lock do usuário
+    private final Map<String, Manifesto> gravados = new ConcurrentHashMap<>();
+
+    private final AtomicLong colecoesLidas = new AtomicLong();
+    private final AtomicLong colecoesGravadas = new AtomicLong();
+    private final AtomicLong manifestosGravados = new AtomicLong();
+
+    /**
+     * Conteúdo de um manifesto: campos de topo, sequência do journal e arquivos das coleções.
+     * Um snapshot antigo (legado) traz as coleções dentro dos campos
+     */
+    private static final class Manifesto {
+        final File arquivo;
+        final Map<String, Object> campos;
+        final long seq;
+        final Map<String, Map<String, Object>> colecoes;
+        final boolean legado;
+
+        Manifesto(File arquivo, Map<String, Object> campos, long seq, Map<String, Map<String, Object>> colecoes, boolean legado) {
+            this.arquivo = arquivo;
+            this.campos = campos;
+            this.seq = seq;
+            this.colecoes = colecoes;
+            this.legado = legado;
+        }
+
+        String arquivo(String colecao) {
+            Map<String, Object> gravada = colecoes.get(colecao);
+            return gravada != null ? (String) gravada.get("arquivo") : null;
+        }
+
+        long geracao(String colecao) {
+            Map<String, Object> gravada = colecoes.get(colecao);
+            return gravada != null ? ((Number) gravada.get("geracao")).longValue() : 0;
+        }
+
+        Manifesto semCampos() {
+            return new Manifesto(arquivo, null, seq, colecoes, legado);
+        }
+    }
+
+    public FileUserDataRepository(File dataDir, List<String> colecoes, DurableFileWriter writer, StorageCodec codec, long limiteJournalBytes) {
+        this.layout = new LayoutUsuarios(dataDir, writer);
+        this.colecoes = List.copyOf(colecoes);
+        this.writer = writer;
+        this.codec = codec;
+        this.limiteJournalBytes = limiteJournalBytes;
+        dataDir.mkdirs();
+        layout.limparTemporarios();
+        try {
+            layout.migrarLayoutPlano();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao migrar user_data para o layout fragmentado", e);
+        }
+        this.journal = new UserJournal(layout, writer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Manifesto lerManifesto(String userId) throws IOException {
+        File file = StorageCodec.localizar(layout.diretorio(userId), userId);
+        if (file == null) {
+            return new Manifesto(null, new LinkedHashMap<>(), 0, Map.of(), false);
+        }
+        Map<String, Object> campos = StorageCodec.lerArquivo(file, TIPO_DOCUMENTO);
+        Object seq = campos.remove(CAMPO_SEQ_JOURNAL);
+        Object gravadas = campos.remove(CAMPO_COLECOES);
+        return new Manifesto(file, campos, seq instanceof Number ? ((Number) seq).longValue() : 0,
+            gravadas instanceof Map ? (Map<String, Map<String, Object>>) gravadas : Map.of(), !(gravadas instanceof Map));
+    }
+
+    private Manifesto gravado(String userId) throws IOException {
+        Manifesto manifesto = gravados.get(userId);
+        if (manifesto == null) {
+            manifesto = lerManifesto(userId);
+            // O legado precisa dos campos: as coleções estão neles
+            gravados.put(userId, manifesto.legado ? manifesto : manifesto.semCampos());
+        }
+        return manifesto;
+    }
+
+    /**
+     * Registros gravados da coleção mais as operações do journal posteriores ao manifesto
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> lerColecao(String userId, Manifesto manifesto, String colecao) throws IOException {
+        List<Object> registros;
+        if (manifesto.legado) {
+            Object lista = manifesto.campos != null ? manifesto.campos.get(colecao) : null;
+            registros = lista instanceof List ? new ArrayList<>((List<Object>) lista) : new ArrayList<>();
+        } else {
+            String arquivo = manifesto.arquivo(colecao);
+            registros = arquivo != null
+                ? StorageCodec.lerArquivo(new File(layout.diretorio(userId), arquivo), TIPO_COLECAO) : new ArrayList<>();
+        }
+        aplicarPendentes(userId, manifesto, colecao, registros);
+        return registros;
+    }
+
+    /**
+     * @return se havia operações pendentes para a coleção
+     */
+    private boolean aplicarPendentes(String userId, Manifesto manifesto, String colecao, List<Object> registros) throws IOException {
+        IndicesUsuario indices = new IndicesUsuario();
+        List<Map<String, Object>> pendentes = journal.lerPendentes(userId, manifesto.seq, colecao);
+        for (Map<String, Object> operacao : pendentes) {
+            UserJournal.aplicarNaColecao(colecao, registros, operacao, indices);
+        }
+        colecoesLidas.incrementAndGet();
+        return !pendentes.isEmpty();
+    }
+
+    /**
+     * Lê o arquivo da coleção token a token, guardando só os campos pedidos (e o id) de cada registro;
+     * o resto é pulado sem montar objetos
+     */
+    private static List<Object> lerCampos(File arquivo, Set<String> campos) throws IOException {
+        // O parser lê o arquivo com os próprios buffers (reaproveitados entre leituras da mesma thread)
+        try (JsonParser parser = StorageCodec.porArquivo(arquivo.getName()).getMapper().getFactory().createParser(arquivo)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Coleção inválida em " + arquivo.getName() + ": lista esperada");
+            }
+            List<Object> registros = new ArrayList<>();
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (token == null) {
+                    throw new IOException("Coleção incompleta em " + arquivo.getName());
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                Map<String, Object> registro = new LinkedHashMap<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String campo = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("id".equals(campo) || campos.contains(campo)) {
+                        registro.put(campo, valor(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                registros.add(registro);
+            }
+            return registros;
+        } catch (JsonProcessingException e) {
+            throw new IOException("Erro ao ler " + arquivo.getName() + ": " + e.getOriginalMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> carregarManifesto(String userId) throws IOException {
+        try {
+            logger.info("Carregando dados do usuário: " + userId);
+            Manifesto manifesto = lerManifesto(userId);
+            List<Map<String, Object>> pendentes = journal.reproduzir(userId, manifesto.seq);
+            Map<String, Object> campos = manifesto.campos;
+            if (manifesto.legado) {
+                converterLegado(userId, manifesto, pendentes);
+            } else {
+                gravados.put(userId, manifesto.semCampos());
+                for (Map<String, Object> operacao : pendentes) {
+                    UserJournal.aplicarNoManifesto(campos, operacao);
+                }
+                if (manifesto.arquivo != null && StorageCodec.porArquivo(manifesto.arquivo.getName()) != codec) {
+                    // Migração transparente do manifesto (já estamos com o lock do usuário);
+                    // as coleções passam para o formato configurado quando forem regravadas
+                    gravar(userId, campos, List.of());
+                    StorageCodec.removerFormatosAntigos(layout.diretorio(userId), userId);
+                }
+            }
+            for (String colecao : colecoes) {
+                campos.remove(colecao);
+            }
+            return campos;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Erro ao carregar dados do usuário: " + userId, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<String, Object> lerManifestoSomenteLeitura(String userId) throws IOException {
+        Map<String, Object> campos = lerManifesto(userId).campos;
+        campos.keySet().removeAll(colecoes);
+        return campos;
+    }
+
+    /**
+     * Snapshot antigo (documento inteiro em um arquivo): grava manifesto e coleções separados
+     */
+    private void converterLegado(String userId, Manifesto manifesto, List<Map<String, Object>> pendentes) throws IOException {
+        Map<String, Object> documento = manifesto.campos;
+        UserJournal.aplicarTodas(documento, pendentes, new IndicesUsuario());
+        Revisoes.avancar(documento, Revisoes.maiorRevisao(documento, colecoes));
+        gravados.put(userId, manifesto);
+        gravar(userId, documento, colecoes);
+        if (StorageCodec.porArquivo(manifesto.arquivo.getName()) != codec) {
+            StorageCodec.removerFormatosAntigos(layout.diretorio(userId), userId);
+        }
+        logger.info("Dados do usuário " + userId + " convertidos para arquivos por coleção");
+    }
+
+    @Override
+    public List<Object> carregarColecao(String userId, String colecao) throws IOException {
+        return lerColecao(userId, gravado(userId), colecao);
+    }
+
+    /**
+     * Sem o lock do usuário, uma gravação pode trocar a geração lida entre o manifesto e o arquivo da coleção:
+     * nesse caso relê o manifesto
+     */
+    @Override
+    public List<Object> lerColecaoSomenteLeitura(String userId, String colecao) throws IOException {
+        for (int tentativa = 1; ; tentativa++) {
+            try {
+                return lerColecao(userId, lerManifesto(userId), colecao);
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                if (tentativa >= TENTATIVAS_LEITURA) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Valor do token atual como na leitura completa (números como Integer/Long/Double); escalares sem
+     * passar pelo ObjectMapper, que criaria um contexto de desserialização a cada campo
+     */
+    private static Object valor(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                return parser.readValueAs(Object.class);
+        }
+    }
+
+    /**
+     * Leitura seletiva (lerCampos) do arquivo da coleção, com as operações do journal aplicadas por cima
+     */
+    @Override
+    public List<Object> lerCamposSomenteLeitura(String userId, String colecao, Set<String> campos) throws IOException {
+        for (int tentativa = 1; ; tentativa++) {
+            try {
+                Manifesto manifesto = lerManifesto(userId);
+                String arquivo = manifesto.arquivo(colecao);
+                if (manifesto.legado) {
+                    return UserDataRepository.super.lerCamposSomenteLeitura(userId, colecao, campos);
+                }
+                List<Object> registros = arquivo != null
+                    ? lerCampos(new File(layout.diretorio(userId), arquivo), campos) : new ArrayList<>();
+                if (aplicarPendentes(userId, manifesto, colecao, registros)) {
+                    // Registros vindos do journal estão completos
+                    registros.replaceAll(r -> r instanceof Map ? UserDataRepository.recortar((Map<?, ?>) r, campos) : r);
+                }
+                return registros;
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                if (tentativa >= TENTATIVAS_LEITURA) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Manifesto e journal: nome, inode, data (ns) e tamanho de cada um. As coleções não entram porque cada
+     * geração nova troca o manifesto, e a gravação do manifesto e do journal sempre troca o arquivo ou o tamanho
+     */
+    @Override
+    public String assinatura(String userId) throws IOException {
+        File diretorio = layout.diretorio(userId);
+        return assinatura(StorageCodec.localizar(diretorio, userId)) + "|"
+            + assinatura(new File(diretorio, userId + UserJournal.EXTENSAO));
+    }
+
+    private static String assinatura(File arquivo) throws IOException {
+        if (arquivo == null) {
+            return "-";
+        }
+        try {
+            BasicFileAttributes atributos = Files.readAttributes(arquivo.toPath(), BasicFileAttributes.class);
+            return arquivo.getName() + ":" + atributos.fileKey() + ":"
+                + atributos.lastModifiedTime().to(TimeUnit.NANOSECONDS) + ":" + atributos.size();
+        } catch (NoSuchFileException e) {
+            return "-";
+        }
+    }
+
+    /**
+     * Grava a próxima geração de cada coleção alterada ou com operações no journal, depois o manifesto,
+     * e só então descarta o journal e as gerações substituídas
+     */
+    @Override
+    public void gravar(String userId, Map<String, Object> documento, Collection<String> alteradas) throws IOException {
+        Manifesto anterior = gravado(userId);
+        Set<String> escrever = new LinkedHashSet<>(anterior.legado ? colecoes : alteradas);
+        escrever.addAll(journal.colecoesPendentes(userId));
+        File diretorio = layout.garantirDiretorio(userId);
+        Map<String, Map<String, Object>> gravadas = new LinkedHashMap<>(anterior.colecoes);
+        List<File> substituidos = new ArrayList<>();
+
+        for (String colecao : escrever) {
+            Object valor = documento.get(colecao);
+            List<?> registros = valor instanceof List ? (List<?>) valor : lerColecao(userId, anterior, colecao);
+            String antigo = anterior.arquivo(colecao);
+            if (antigo != null) {
+                substituidos.add(new File(diretorio, antigo));
+            }
+            if (registros.isEmpty()) {
+                gravadas.remove(colecao);
+                continue;
+            }
+            long geracao = anterior.geracao(colecao) + 1;
+            File arquivo = codec.arquivo(diretorio, userId + "." + colecao + "." + geracao);
+            writer.escrever(arquivo.toPath(), out -> codec.escrever(out, registros));
+            Map<String, Object> gravada = new LinkedHashMap<>();
+            gravada.put("arquivo", arquivo.getName());
+            gravada.put("geracao", geracao);
+            gravada.put("quantidade", registros.size());
+            gravadas.put(colecao, gravada);
+            colecoesGravadas.incrementAndGet();
+        }
+
+        Map<String, Object> manifesto = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : documento.entrySet()) {
+            if (!colecoes.contains(e.getKey()) && !CAMPOS_INTERNOS.contains(e.getKey())) {
+                manifesto.put(e.getKey(), e.getValue());
+            }
+        }
+        long seq = journal.ultimoSeq(userId);
+        manifesto.put(CAMPO_SEQ_JOURNAL, seq);
+        manifesto.put(CAMPO_COLECOES, gravadas);
+        // Arquivo temporário + fsync + rename: uma queda nunca deixa o manifesto pela metade
+        File arquivo = codec.arquivo(diretorio, userId);
+        writer.escrever(arquivo.toPath(), out -> codec.escrever(out, manifesto));
+        manifestosGravados.incrementAndGet();
+        gravados.put(userId, new Manifesto(arquivo, null, seq, gravadas, false));
+        journal.reiniciar(userId);
+        for (File substituido : substituidos) {
+            if (!substituido.delete() && substituido.exists()) {
+                logger.warning("Não foi possível remover a geração substituída: " + substituido.getName());
+            }
+        }
+        logger.info("Dados salvos para usuário: " + userId + " (coleções gravadas: " + escrever + ")");
+    }
+
+    /**
+     * Uma linha por operação no journal, numa única escrita; sugere compactar quando o journal passa do limite
+     */
+    @Override
+    public Anexo anexar(String userId, List<Map<String, Object>> operacoes) throws IOException {
+        UserJournal.Anexo anexo = journal.anexarOperacoes(userId, operacoes);
+        return new Anexo(anexo.getTamanho() > limiteJournalBytes, anexo.getConfirmacao());
+    }
+
+    @Override
+    public Snapshot abrirSnapshot(String userId) throws IOException {
+        Manifesto manifesto = gravado(userId);
+        if (manifesto.arquivo == null || manifesto.legado || journal.existe(userId)) {
+            return null;
+        }
+        // Abertos agora (com o lock do usuário): uma gravação posterior troca os arquivos por rename
+        // e remove gerações antigas, sem afetar a leitura já iniciada
+        File diretorio = layout.diretorio(userId);
+        Map<String, JsonParser> parsers = new LinkedHashMap<>();
+        try {
+            for (String colecao : colecoes) {
+                String arquivo = manifesto.arquivo(colecao);
+                if (arquivo != null) {
+                    parsers.put(colecao, abrir(new File(diretorio, arquivo)));
+                }
+            }
+            return new Snapshot(abrir(manifesto.arquivo), parsers);
+        } catch (IOException e) {
+            for (JsonParser parser : parsers.values()) {
+                parser.close();
+            }
+            throw e;
+        }
+    }
+
+    private static JsonParser abrir(File arquivo) throws IOException {
+        InputStream entrada = new BufferedInputStream(new FileInputStream(arquivo));
+        return StorageCodec.porArquivo(arquivo.getName()).getMapper().getFactory().createParser(entrada);
+    }
+
+    /**
+     * Usuários com manifesto (em qualquer formato) ou journal em disco
+     */
+    @Override
+    public List<String> listarUsuarios() {
+        List<String> userIds = new ArrayList<>();
+        for (List<String> fragmento : listarUsuariosPorFragmento()) {
+            userIds.addAll(fragmento);
+        }
+        return userIds;
+    }
+
+    /**
+     * Um grupo por fragmento de primeiro nível (até 16), listados em paralelo
+     */
+    @Override
+    public List<List<String>> listarUsuariosPorFragmento() {
+        return layout.usuariosPorFragmento();
+    }
+
+    @Override
+    public Map<String, Object> estatisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backend", "arquivo");
+        stats.put("formato", codec.name().toLowerCase());
+        stats.put("layout", "fragmentado");
+        stats.put("colecoesLidas", colecoesLidas.get());
+        stats.put("colecoesGravadas", colecoesGravadas.get());
+        stats.put("manifestosGravados", manifestosGravados.get());
+        stats.put("durabilidade", writer.estatisticas());
+        return stats;
+    }
+}
@@ -0,0 +1,397 @@
+package backend.storage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Repositório em banco H2 embutido (modo arquivo), com um registro por linha:
+ *  - usuario_documento: revisão do documento e demais campos de topo (JSON, sem as coleções)
+ *  - usuario_registro: registros das coleções, na ordem da lista (PK user_id, colecao, ordem; índice por id)
+ *  - usuario_remocao: remoções (_removidos) usadas pela sincronização incremental
+ *
+ * Cada anexar/gravar é uma transação: uma inclusão grava só as linhas novas, sem journal nem compactação,
+ * e gravar só substitui as linhas das coleções alteradas. Cada coleção é lida com uma consulta própria.
+ * A durabilidade do commit segue o H2 (WRITE_DELAY na URL).
+ * Não oferece cópia direta do snapshot: transmissões carregam o documento.
+ */
+public class H2UserDataRepository implements UserDataRepository {
+    private static final Logger logger = Logger.getLogger(H2UserDataRepository.class.getName());
+    private static final ObjectMapper objectMapper = StorageCodec.JSON.getMapper();
+    private static final TypeReference<Map<String, Object>> TIPO_DOCUMENTO = new TypeReference<>() {};
+
+    private static final String[] ESQUEMA = {
+        "CREATE TABLE IF NOT EXISTS usuario_documento ("
+            + "user_id VARCHAR(128) PRIMARY KEY, revisao BIGINT NOT NULL, campos CLOB NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS usuario_registro ("
+            + "user_id VARCHAR(128) NOT NULL, colecao VARCHAR(64) NOT NULL, ordem BIGINT NOT NULL,"
+            + " id VARCHAR, rev BIGINT NOT NULL, dados CLOB NOT NULL, PRIMARY KEY (user_id, colecao, ordem))",
+        "CREATE INDEX IF NOT EXISTS usuario_registro_id ON usuario_registro (user_id, colecao, id)",
+        "CREATE TABLE IF NOT EXISTS usuario_remocao ("
+            + "user_id VARCHAR(128) NOT NULL, colecao VARCHAR(64) NOT NULL, id VARCHAR NOT NULL,"
+            + " rev BIGINT NOT NULL, PRIMARY KEY (user_id, colecao, id))"
+    };
+
+    // Primeiro registro com o id (mesma regra do IndiceIds)
+    private static final String PRIMEIRO_COM_ID =
+        "ordem = (SELECT MIN(ordem) FROM usuario_registro WHERE user_id = ? AND colecao = ? AND id = ?)";
+
+    private final String url;
+    private final List<String> colecoes;
+    private final JdbcConnectionPool pool;
+    private final AtomicLong transacoes = new AtomicLong();
+    private final AtomicLong linhasGravadas = new AtomicLong();
+
+    public H2UserDataRepository(String url, List<String> colecoes) {
+        this.colecoes = List.copyOf(colecoes);
+        // O próprio serviço fecha o banco depois de descarregar o cache (ver fechar)
+        this.url = url.toUpperCase().contains("DB_CLOSE_ON_EXIT") ? url : url + ";DB_CLOSE_ON_EXIT=FALSE";
+        this.pool = JdbcConnectionPool.create(this.url, "sa", "");
+        try (Connection conexao = pool.getConnection(); Statement stmt = conexao.createStatement()) {
+            for (String ddl : ESQUEMA) {
+                stmt.execute(ddl);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Não foi possível abrir o banco H2: " + url, e);
+        }
+        logger.info("Dados de usuário em H2: " + url);
+    }
+
+    @Override
+    public Map<String, Object> carregarManifesto(String userId) throws IOException {
+        try (Connection conexao = pool.getConnection()) {
+            Map<String, Object> documento = new LinkedHashMap<>();
+            long revisao;
+            try (PreparedStatement ps = conexao.prepareStatement("SELECT revisao, campos FROM usuario_documento WHERE user_id = ?")) {
+                ps.setString(1, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return documento;
+                    }
+                    revisao = rs.getLong(1);
+                    documento.putAll(objectMapper.readValue(rs.getString(2), TIPO_DOCUMENTO));
+                }
+            }
+            // Bancos gravados antes da divisão por coleção guardam as coleções vazias nos campos
+            documento.keySet().removeAll(colecoes);
+            Map<String, Object> removidos = new LinkedHashMap<>();
+            try (PreparedStatement ps = conexao.prepareStatement(
+                    "SELECT colecao, id, rev FROM usuario_remocao WHERE user_id = ? ORDER BY colecao, rev")) {
+                ps.setString(1, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> daColecao = (Map<String, Object>) removidos.computeIfAbsent(rs.getString(1), k -> new LinkedHashMap<>());
+                        daColecao.put(rs.getString(2), rs.getLong(3));
+                    }
+                }
+            }
+            if (!removidos.isEmpty()) {
+                documento.put(Revisoes.CAMPO_REMOVIDOS, removidos);
+            }
+            documento.put(Revisoes.CAMPO_DOCUMENTO, revisao);
+            return documento;
+        } catch (SQLException e) {
+            throw new IOException("Erro ao carregar dados do usuário " + userId + " do H2", e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> lerManifestoSomenteLeitura(String userId) throws IOException {
+        return carregarManifesto(userId);
+    }
+
+    @Override
+    public List<Object> carregarColecao(String userId, String colecao) throws IOException {
+        List<Object> registros = new ArrayList<>();
+        try (Connection conexao = pool.getConnection();
+             PreparedStatement ps = conexao.prepareStatement(
+                 "SELECT dados FROM usuario_registro WHERE user_id = ? AND colecao = ? ORDER BY ordem")) {
+            ps.setString(1, userId);
+            ps.setString(2, colecao);
+            ps.setFetchSize(1000);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    registros.add(objectMapper.readValue(rs.getString(1), Object.class));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Erro ao carregar " + colecao + " do usuário " + userId + " do H2", e);
+        }
+        return registros;
+    }
+
+    @Override
+    public List<Object> lerColecaoSomenteLeitura(String userId, String colecao) throws IOException {
+        return carregarColecao(userId, colecao);
+    }
+
+    /**
+     * Substitui numa transação o documento, as remoções e as linhas das coleções alteradas
+     */
+    @Override
+    public void gravar(String userId, Map<String, Object> documento, Collection<String> alteradas) throws IOException {
+        try (Connection conexao = pool.getConnection()) {
+            conexao.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = conexao.prepareStatement("DELETE FROM usuario_remocao WHERE user_id = ?")) {
+                    ps.setString(1, userId);
+                    ps.executeUpdate();
+                }
+                Map<String, Object> campos = new LinkedHashMap<>();
+                for (Map.Entry<String, Object> e : documento.entrySet()) {
+                    if (!colecoes.contains(e.getKey()) && !Revisoes.CAMPO_DOCUMENTO.equals(e.getKey())
+                            && !Revisoes.CAMPO_REMOVIDOS.equals(e.getKey())) {
+                        campos.put(e.getKey(), e.getValue());
+                    }
+                }
+                int linhas = 0;
+                try (PreparedStatement excluir = conexao.prepareStatement("DELETE FROM usuario_registro WHERE user_id = ? AND colecao = ?");
+                     PreparedStatement ps = conexao.prepareStatement(
+                        "INSERT INTO usuario_registro (user_id, colecao, ordem, id, rev, dados) VALUES (?, ?, ?, ?, ?, ?)")) {
+                    for (String colecao : alteradas) {
+                        Object registros = documento.get(colecao);
+                        if (!(registros instanceof List)) {
+                            continue;
+                        }
+                        excluir.setString(1, userId);
+                        excluir.setString(2, colecao);
+                        excluir.executeUpdate();
+                        long ordem = 0;
+                        for (Object registro : (List<?>) registros) {
+                            inserirRegistro(ps, userId, colecao, ordem++, registro);
+                            ps.addBatch();
+                            linhas++;
+                        }
+                    }
+                    ps.executeBatch();
+                }
+                try (PreparedStatement ps = conexao.prepareStatement(
+                        "INSERT INTO usuario_remocao (user_id, colecao, id, rev) VALUES (?, ?, ?, ?)")) {
+                    Object removidos = documento.get(Revisoes.CAMPO_REMOVIDOS);
+                    if (removidos instanceof Map) {
+                        for (Map.Entry<?, ?> colecao : ((Map<?, ?>) removidos).entrySet()) {
+                            if (!(colecao.getValue() instanceof Map)) {
+                                continue;
+                            }
+                            for (Map.Entry<?, ?> remocao : ((Map<?, ?>) colecao.getValue()).entrySet()) {
+                                ps.setString(1, userId);
+                                ps.setString(2, String.valueOf(colecao.getKey()));
+                                ps.setString(3, String.valueOf(remocao.getKey()));
+                                ps.setLong(4, remocao.getValue() instanceof Number ? ((Number) remocao.getValue()).longValue() : 0);
+                                ps.addBatch();
+                                linhas++;
+                            }
+                        }
+                    }
+                    ps.executeBatch();
+                }
+                try (PreparedStatement ps = conexao.prepareStatement(
+                        "MERGE INTO usuario_documento (user_id, revisao, campos) KEY (user_id) VALUES (?, ?, ?)")) {
+                    ps.setString(1, userId);
+                    ps.setLong(2, Revisoes.doDocumento(documento));
+                    ps.setString(3, objectMapper.writeValueAsString(campos));
+                    ps.executeUpdate();
+                }
+                conexao.commit();
+                transacoes.incrementAndGet();
+                linhasGravadas.addAndGet(linhas);
+                logger.info("Dados salvos para usuário: " + userId);
+            } catch (SQLException | IOException | RuntimeException e) {
+                conexao.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Erro ao gravar dados do usuário " + userId + " no H2", e);
+        }
+    }
+
+    /**
+     * Aplica as operações às linhas numa transação (mesma semântica de UserJournal.aplicar).
+     * Inclusões seguidas vão num único batch
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Anexo anexar(String userId, List<Map<String, Object>> operacoes) throws IOException {
+        try (Connection conexao = pool.getConnection()) {
+            conexao.setAutoCommit(false);
+            try (PreparedStatement garantir = conexao.prepareStatement(
+                     "INSERT INTO usuario_documento (user_id, revisao, campos) SELECT ?, 0, '{}' "
+                         + "WHERE NOT EXISTS (SELECT 1 FROM usuario_documento WHERE user_id = ?)");
+                 PreparedStatement maiorOrdem = conexao.prepareStatement(
+                     "SELECT COALESCE(MAX(ordem), -1) FROM usuario_registro WHERE user_id = ? AND colecao = ?");
+                 PreparedStatement inserir = conexao.prepareStatement(
+                     "INSERT INTO usuario_registro (user_id, colecao, ordem, id, rev, dados) VALUES (?, ?, ?, ?, ?, ?)");
+                 PreparedStatement substituir = conexao.prepareStatement(
+                     "UPDATE usuario_registro SET dados = ?, rev = ? WHERE user_id = ? AND colecao = ? AND " + PRIMEIRO_COM_ID);
+                 PreparedStatement remover = conexao.prepareStatement(
+                     "DELETE FROM usuario_registro WHERE user_id = ? AND colecao = ? AND " + PRIMEIRO_COM_ID);
+                 PreparedStatement limparRemocao = conexao.prepareStatement(
+                     "DELETE FROM usuario_remocao WHERE user_id = ? AND colecao = ? AND id = ?");
+                 PreparedStatement registrarRemocao = conexao.prepareStatement(
+                     "MERGE INTO usuario_remocao (user_id, colecao, id, rev) KEY (user_id, colecao, id) VALUES (?, ?, ?, ?)");
+                 PreparedStatement avancar = conexao.prepareStatement(
+                     "UPDATE usuario_documento SET revisao = GREATEST(revisao, ?) WHERE user_id = ?")) {
+                garantir.setString(1, userId);
+                garantir.setString(2, userId);
+                garantir.executeUpdate();
+
+                Map<String, Long> proximaOrdem = new HashMap<>();
+                long revisao = 0;
+                int pendentes = 0;
+                for (Map<String, Object> operacao : operacoes) {
+                    String op = (String) operacao.get("op");
+                    String colecao = (String) operacao.get("colecao");
+                    if (!"add".equals(op) && pendentes > 0) {
+                        // upsert/remove podem se referir a registros incluídos antes no mesmo lote
+                        inserir.executeBatch();
+                        limparRemocao.executeBatch();
+                        pendentes = 0;
+                    }
+                    switch (op) {
+                        case "add":
+                        case "upsert": {
+                            Map<String, Object> registro = (Map<String, Object>) operacao.get("registro");
+                            String id = Revisoes.idTexto(registro.get("id"));
+                            long rev = Revisoes.doRegistro(registro);
+                            revisao = Math.max(revisao, rev);
+                            if ("upsert".equals(op) && id != null) {
+                                substituir.setString(1, objectMapper.writeValueAsString(registro));
+                                substituir.setLong(2, rev);
+                                definirChave(substituir, 3, userId, colecao, id);
+                                if (substituir.executeUpdate() > 0) {
+                                    limpar(limparRemocao, userId, colecao, id);
+                                    limparRemocao.executeBatch();
+                                    break;
+                                }
+                            }
+                            Long ordem = proximaOrdem.get(colecao);
+                            if (ordem == null) {
+                                maiorOrdem.setString(1, userId);
+                                maiorOrdem.setString(2, colecao);
+                                try (ResultSet rs = maiorOrdem.executeQuery()) {
+                                    rs.next();
+                                    ordem = rs.getLong(1) + 1;
+                                }
+                            }
+                            proximaOrdem.put(colecao, ordem + 1);
+                            inserirRegistro(inserir, userId, colecao, ordem, registro);
+                            inserir.addBatch();
+                            if (id != null) {
+                                limpar(limparRemocao, userId, colecao, id);
+                            }
+                            pendentes++;
+                            break;
+                        }
+                        case "remove": {
+                            String id = Revisoes.idTexto(operacao.get("id"));
+                            long rev = ((Number) operacao.get("rev")).longValue();
+                            revisao = Math.max(revisao, rev);
+                            definirChave(remover, 1, userId, colecao, id);
+                            remover.executeUpdate();
+                            registrarRemocao.setString(1, userId);
+                            registrarRemocao.setString(2, colecao);
+                            registrarRemocao.setString(3, id);
+                            registrarRemocao.setLong(4, rev);
+                            registrarRemocao.executeUpdate();
+                            break;
+                        }
+                        default:
+                            logger.warning("Operação desconhecida: " + op);
+                    }
+                }
+                inserir.executeBatch();
+                limparRemocao.executeBatch();
+                avancar.setLong(1, revisao);
+                avancar.setString(2, userId);
+                avancar.executeUpdate();
+                conexao.commit();
+                transacoes.incrementAndGet();
+                linhasGravadas.addAndGet(operacoes.size());
+            } catch (SQLException | IOException | RuntimeException e) {
+                conexao.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Erro ao gravar operações do usuário " + userId + " no H2", e);
+        }
+        // Commit síncrono: nada a aguardar e nada a compactar
+        return new Anexo(false, CompletableFuture.completedFuture(null));
+    }
+
+    private static void inserirRegistro(PreparedStatement ps, String userId, String colecao, long ordem, Object registro)
+            throws SQLException, IOException {
+        ps.setString(1, userId);
+        ps.setString(2, colecao);
+        ps.setLong(3, ordem);
+        Map<?, ?> mapa = registro instanceof Map ? (Map<?, ?>) registro : null;
+        ps.setString(4, mapa != null ? Revisoes.idTexto(mapa.get("id")) : null);
+        ps.setLong(5, mapa != null ? Revisoes.doRegistro(mapa) : 0);
+        ps.setString(6, objectMapper.writeValueAsString(registro));
+    }
+
+    // user_id, colecao seguidos da subconsulta PRIMEIRO_COM_ID (user_id, colecao, id)
+    private static void definirChave(PreparedStatement ps, int inicio, String userId, String colecao, String id) throws SQLException {
+        ps.setString(inicio, userId);
+        ps.setString(inicio + 1, colecao);
+        ps.setString(inicio + 2, userId);
+        ps.setString(inicio + 3, colecao);
+        ps.setString(inicio + 4, id);
+    }
+
+    private static void limpar(PreparedStatement limparRemocao, String userId, String colecao, String id) throws SQLException {
+        limparRemocao.setString(1, userId);
+        limparRemocao.setString(2, colecao);
+        limparRemocao.setString(3, id);
+        limparRemocao.addBatch();
+    }
+
+    @Override
+    public Snapshot abrirSnapshot(String userId) {
+        return null;
+    }
+
+    @Override
+    public List<String> listarUsuarios() throws IOException {
+        List<String> userIds = new ArrayList<>();
+        try (Connection conexao = pool.getConnection();
+             Statement stmt = conexao.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT user_id FROM usuario_documento ORDER BY user_id")) {
+            while (rs.next()) {
+                userIds.add(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Erro ao listar usuários do H2", e);
+        }
+        return userIds;
+    }
+
+    @Override
+    public Map<String, Object> estatisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backend", "h2");
+        stats.put("url", url);
+        stats.put("transacoes", transacoes.get());
+        stats.put("linhasGravadas", linhasGravadas.get());
+        stats.put("conexoesAtivas", pool.getActiveConnections());
+        return stats;
+    }
+
+    @Override
+    public void fechar() {
+        pool.dispose();
+        try (Connection conexao = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conexao.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        } catch (SQLException e) {
+            logger.warning("Erro ao fechar o banco H2: " + e.getMessage());
+        }
+    }
+}
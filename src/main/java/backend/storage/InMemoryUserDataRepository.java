@@ -0,0 +1,168 @@
+package backend.storage;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Repositório em memória, para testes e benchmarks (nada sobrevive ao processo).
+ * Guarda o manifesto e cada coleção serializados em JSON, como os demais backends: quem chama nunca
+ * compartilha objetos com o que está "gravado". Operações anexadas ficam pendentes até o próximo gravar.
+ */
+public class InMemoryUserDataRepository implements UserDataRepository {
+    private static final ObjectMapper objectMapper = StorageCodec.JSON.getMapper();
+    private static final TypeReference<Map<String, Object>> TIPO_DOCUMENTO = new TypeReference<>() {};
+    private static final TypeReference<List<Object>> TIPO_COLECAO = new TypeReference<>() {};
+    private static final int LIMITE_OPERACOES = 1000;
+
+    // Imutável: substituído a cada alteração, então leituras sem lock (varreduras) veem um estado consistente
+    private static final class Estado {
+        final byte[] manifesto;
+        final Map<String, byte[]> colecoes;
+        final List<byte[]> operacoes;
+
+        Estado(byte[] manifesto, Map<String, byte[]> colecoes, List<byte[]> operacoes) {
+            this.manifesto = manifesto;
+            this.colecoes = colecoes;
+            this.operacoes = operacoes;
+        }
+    }
+
+    private final List<String> colecoes;
+    private final Map<String, Estado> estados = new ConcurrentHashMap<>();
+
+    public InMemoryUserDataRepository(List<String> colecoes) {
+        this.colecoes = List.copyOf(colecoes);
+    }
+
+    private static List<Map<String, Object>> operacoes(Estado estado) throws IOException {
+        List<Map<String, Object>> operacoes = new ArrayList<>(estado.operacoes.size());
+        for (byte[] operacao : estado.operacoes) {
+            operacoes.add(objectMapper.readValue(operacao, TIPO_DOCUMENTO));
+        }
+        return operacoes;
+    }
+
+    @Override
+    public Map<String, Object> carregarManifesto(String userId) throws IOException {
+        Estado estado = estados.get(userId);
+        if (estado == null) {
+            return new LinkedHashMap<>();
+        }
+        Map<String, Object> manifesto = estado.manifesto != null
+            ? objectMapper.readValue(estado.manifesto, TIPO_DOCUMENTO) : new LinkedHashMap<>();
+        for (Map<String, Object> operacao : operacoes(estado)) {
+            UserJournal.aplicarNoManifesto(manifesto, operacao);
+        }
+        return manifesto;
+    }
+
+    @Override
+    public Map<String, Object> lerManifestoSomenteLeitura(String userId) throws IOException {
+        return carregarManifesto(userId);
+    }
+
+    @Override
+    public List<Object> carregarColecao(String userId, String colecao) throws IOException {
+        return lerColecao(estados.get(userId), colecao);
+    }
+
+    private static List<Object> lerColecao(Estado estado, String colecao) throws IOException {
+        if (estado == null) {
+            return new ArrayList<>();
+        }
+        byte[] gravada = estado.colecoes.get(colecao);
+        List<Object> registros = gravada != null ? objectMapper.readValue(gravada, TIPO_COLECAO) : new ArrayList<>();
+        IndicesUsuario indices = new IndicesUsuario();
+        for (Map<String, Object> operacao : operacoes(estado)) {
+            if (colecao.equals(operacao.get("colecao"))) {
+                UserJournal.aplicarNaColecao(colecao, registros, operacao, indices);
+            }
+        }
+        return registros;
+    }
+
+    @Override
+    public List<Object> lerColecaoSomenteLeitura(String userId, String colecao) throws IOException {
+        return carregarColecao(userId, colecao);
+    }
+
+    /**
+     * Substitui o manifesto e as coleções alteradas; as coleções com operações pendentes são incorporadas
+     */
+    @Override
+    public void gravar(String userId, Map<String, Object> documento, Collection<String> alteradas) throws IOException {
+        Estado atual = estados.getOrDefault(userId, new Estado(null, Map.of(), List.of()));
+        Set<String> escrever = new LinkedHashSet<>(alteradas);
+        for (Map<String, Object> operacao : operacoes(atual)) {
+            escrever.add((String) operacao.get("colecao"));
+        }
+        Map<String, byte[]> gravadas = new HashMap<>(atual.colecoes);
+        for (String colecao : escrever) {
+            Object valor = documento.get(colecao);
+            gravadas.put(colecao, objectMapper.writeValueAsBytes(valor instanceof List ? valor : lerColecao(atual, colecao)));
+        }
+        Map<String, Object> manifesto = new LinkedHashMap<>(documento);
+        manifesto.keySet().removeAll(colecoes);
+        estados.put(userId, new Estado(objectMapper.writeValueAsBytes(manifesto), Collections.unmodifiableMap(gravadas), List.of()));
+    }
+
+    @Override
+    public Anexo anexar(String userId, List<Map<String, Object>> operacoes) throws IOException {
+        Estado atual = estados.getOrDefault(userId, new Estado(null, Map.of(), List.of()));
+        List<byte[]> todas = new ArrayList<>(atual.operacoes.size() + operacoes.size());
+        todas.addAll(atual.operacoes);
+        for (Map<String, Object> operacao : operacoes) {
+            todas.add(objectMapper.writeValueAsBytes(operacao));
+        }
+        estados.put(userId, new Estado(atual.manifesto, atual.colecoes, Collections.unmodifiableList(todas)));
+        return new Anexo(todas.size() > LIMITE_OPERACOES, CompletableFuture.completedFuture(null));
+    }
+
+    @Override
+    public Snapshot abrirSnapshot(String userId) throws IOException {
+        Estado estado = estados.get(userId);
+        if (estado == null || estado.manifesto == null || !estado.operacoes.isEmpty()) {
+            return null;
+        }
+        Map<String, JsonParser> parsers = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> e : estado.colecoes.entrySet()) {
+            parsers.put(e.getKey(), objectMapper.getFactory().createParser(e.getValue()));
+        }
+        return new Snapshot(objectMapper.getFactory().createParser(estado.manifesto), parsers);
+    }
+
+    @Override
+    public List<String> listarUsuarios() {
+        return new ArrayList<>(estados.keySet());
+    }
+
+    @Override
+    public boolean isPersistente() {
+        return false;
+    }
+
+    @Override
+    public Map<String, Object> estatisticas() {
+        long bytes = 0;
+        long pendentes = 0;
+        for (Estado estado : estados.values()) {
+            bytes += estado.manifesto != null ? estado.manifesto.length : 0;
+            for (byte[] colecao : estado.colecoes.values()) {
+                bytes += colecao.length;
+            }
+            pendentes += estado.operacoes.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backend", "memoria");
+        stats.put("usuarios", estados.size());
+        stats.put("bytes", bytes);
+        stats.put("operacoesPendentes", pendentes);
+        return stats;
+    }
+}
@@ -0,0 +1,118 @@
+package backend.storage;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Índice id -> posição das coleções de um usuário, mantido junto com o documento em cache.
+ * Cada coleção é indexada sob demanda e reconstruída quando a lista é substituída
+ * (POST da coleção inteira, sync completo) ou se uma posição não confere mais.
+ * Com ids repetidos, a posição é a do primeiro registro com o id (como no UserJournal); quando ele é
+ * removido, o próximo com o mesmo id passa a ser o indexado.
+ *
+ * Não é thread-safe: usado apenas com o lock do usuário.
+ */
+public class IndiceIds {
+
+    private static final class PorColecao {
+        List<?> registros;
+        final Map<String, Integer> posicoes = new HashMap<>();
+        // ids com mais de um registro: só esses são procurados de novo numa remoção
+        final Set<String> repetidos = new HashSet<>();
+
+        void incluir(String id, int posicao) {
+            if (posicoes.putIfAbsent(id, posicao) != null) {
+                repetidos.add(id);
+            }
+        }
+    }
+
+    private final Map<String, PorColecao> colecoes = new HashMap<>();
+
+    private PorColecao indexar(String colecao, List<?> registros) {
+        PorColecao indice = colecoes.get(colecao);
+        if (indice != null && indice.registros == registros) {
+            return indice;
+        }
+        indice = new PorColecao();
+        indice.registros = registros;
+        for (int i = 0; i < registros.size(); i++) {
+            String id = idDe(registros.get(i));
+            if (id != null) {
+                indice.incluir(id, i);
+            }
+        }
+        colecoes.put(colecao, indice);
+        return indice;
+    }
+
+    /**
+     * Posição do registro com o id na coleção, ou -1
+     */
+    public int posicao(String colecao, List<?> registros, String id) {
+        if (id == null) {
+            return -1;
+        }
+        PorColecao indice = indexar(colecao, registros);
+        Integer posicao = indice.posicoes.get(id);
+        if (posicao == null) {
+            return -1;
+        }
+        if (posicao < registros.size() && id.equals(idDe(registros.get(posicao)))) {
+            return posicao;
+        }
+        // Lista alterada por fora do índice: reconstrói
+        colecoes.remove(colecao);
+        posicao = indexar(colecao, registros).posicoes.get(id);
+        return posicao != null ? posicao : -1;
+    }
+
+    /**
+     * Registra um registro incluído no final da lista, na posição informada
+     */
+    public void incluido(String colecao, List<?> registros, String id, int posicao) {
+        PorColecao indice = indexar(colecao, registros);
+        if (id != null) {
+            indice.incluir(id, posicao);
+        }
+    }
+
+    /**
+     * Registra a remoção da posição informada (já tirada da lista); as posições seguintes andam uma casa.
+     * Se o id se repete, o próximo registro com ele (depois da posição removida) passa a ser o indexado
+     */
+    public void removido(String colecao, List<?> registros, String id, int posicao) {
+        PorColecao indice = colecoes.get(colecao);
+        if (indice == null || indice.registros != registros) {
+            return;
+        }
+        indice.posicoes.remove(id);
+        indice.posicoes.replaceAll((chave, atual) -> atual > posicao ? atual - 1 : atual);
+        if (id != null && indice.repetidos.contains(id)) {
+            int proxima = -1;
+            int outras = 0;
+            for (int i = posicao; i < registros.size(); i++) {
+                if (id.equals(idDe(registros.get(i)))) {
+                    if (proxima < 0) {
+                        proxima = i;
+                    } else {
+                        outras++;
+                    }
+                }
+            }
+            if (proxima >= 0) {
+                indice.posicoes.put(id, proxima);
+            }
+            if (outras == 0) {
+                indice.repetidos.remove(id);
+            }
+        }
+    }
+
+    private static String idDe(Object registro) {
+        return registro instanceof Map ? Revisoes.idTexto(((Map<?, ?>) registro).get("id")) : null;
+    }
+}
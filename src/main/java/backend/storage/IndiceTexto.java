@@ -0,0 +1,265 @@
+package backend.storage;
+
+import backend.util.RegistroUtil;
+
+import java.util.*;
+
+/**
+ * Índice invertido para busca textual: ordens (modeloAparelho, defeitoApresentado) e produtos (nome).
+ * Termos em minúsculas e sem acentos, sem stopwords do português; cada termo da busca casa por prefixo
+ * ("tela queb" encontra "Tela quebrada"). Todos os termos precisam casar, e o resultado é ordenado por
+ * peso do campo x raridade do termo (idf).
+ *
+ * Construído sob demanda por coleção e mantido a cada inclusão, alteração e remoção (UserJournal.aplicar).
+ * Não é thread-safe: usado apenas com o lock do usuário.
+ */
+public class IndiceTexto {
+
+    // Coleção -> campo -> peso
+    public static final Map<String, Map<String, Integer>> CAMPOS = Map.of(
+        "ordens", Map.of("modeloAparelho", 2, "defeitoApresentado", 1),
+        "produtos", Map.of("nome", 2)
+    );
+    private static final int TAMANHO_MINIMO = 2;
+    private static final Set<String> STOPWORDS = Set.of(
+        "de", "da", "do", "das", "dos", "e", "em", "na", "no", "nas", "nos", "um", "uma", "com", "para",
+        "por", "pra", "que", "se", "ao", "aos", "as", "os", "ou", "sem", "mais", "muito", "nao"
+    );
+
+    public static final class Resultado {
+        private final String colecao;
+        private final String id;
+        private final double pontuacao;
+
+        Resultado(String colecao, String id, double pontuacao) {
+            this.colecao = colecao;
+            this.id = id;
+            this.pontuacao = pontuacao;
+        }
+
+        public String getColecao() { return colecao; }
+
+        public String getId() { return id; }
+
+        public double getPontuacao() { return pontuacao; }
+    }
+
+    /**
+     * Ordem dos resultados: maior pontuação primeiro; empates por coleção e id (resultado estável)
+     */
+    public static final Comparator<Resultado> ORDEM = Comparator.comparingDouble(Resultado::getPontuacao).reversed()
+        .thenComparing(Resultado::getColecao)
+        .thenComparing(Resultado::getId);
+
+    public static final class Busca {
+        private final List<Resultado> resultados;
+        private final int total;
+
+        Busca(List<Resultado> resultados, int total) {
+            this.resultados = resultados;
+            this.total = total;
+        }
+
+        /** Melhores resultados, já ordenados */
+        public List<Resultado> getResultados() { return resultados; }
+
+        /** Quantidade de registros que casaram com a busca */
+        public int getTotal() { return total; }
+    }
+
+    private static final class PorColecao {
+        List<?> registros;
+        // Termo -> (id -> peso no registro)
+        final TreeMap<String, Map<String, Integer>> termos = new TreeMap<>();
+        final Set<String> documentos = new HashSet<>();
+    }
+
+    private static final Busca NENHUM = new Busca(List.of(), 0);
+
+    private final Map<String, PorColecao> colecoes = new HashMap<>();
+
+    private PorColecao garantir(String colecao, List<?> registros) {
+        PorColecao indice = colecoes.get(colecao);
+        if (indice != null && indice.registros == registros) {
+            return indice;
+        }
+        indice = new PorColecao();
+        indice.registros = registros;
+        for (Object registro : registros) {
+            if (registro instanceof Map) {
+                indexar(indice, colecao, (Map<?, ?>) registro, true);
+            }
+        }
+        colecoes.put(colecao, indice);
+        return indice;
+    }
+
+    /**
+     * Atualiza o índice depois de uma inclusão (antigo null), alteração ou remoção (novo null)
+     */
+    void alterado(String colecao, List<?> registros, Map<?, ?> antigo, Map<?, ?> novo) {
+        PorColecao indice = colecoes.get(colecao);
+        if (indice == null || indice.registros != registros) {
+            return;
+        }
+        if (antigo != null) {
+            indexar(indice, colecao, antigo, false);
+        }
+        if (novo != null) {
+            indexar(indice, colecao, novo, true);
+        }
+    }
+
+    private static void indexar(PorColecao indice, String colecao, Map<?, ?> registro, boolean incluir) {
+        String id = RegistroUtil.id(registro);
+        if (id == null) {
+            return;
+        }
+        Map<String, Integer> pesos = new HashMap<>();
+        for (Map.Entry<String, Integer> campo : CAMPOS.get(colecao).entrySet()) {
+            for (String termo : tokenizar(RegistroUtil.texto(registro, campo.getKey()))) {
+                pesos.merge(termo, campo.getValue(), Integer::sum);
+            }
+        }
+        for (Map.Entry<String, Integer> e : pesos.entrySet()) {
+            if (incluir) {
+                indice.termos.computeIfAbsent(e.getKey(), k -> new HashMap<>()).put(id, e.getValue());
+            } else {
+                Map<String, Integer> postagens = indice.termos.get(e.getKey());
+                if (postagens != null && postagens.remove(id) != null && postagens.isEmpty()) {
+                    indice.termos.remove(e.getKey());
+                }
+            }
+        }
+        if (incluir) {
+            indice.documentos.add(id);
+        } else {
+            indice.documentos.remove(id);
+        }
+    }
+
+    // Latin-1 sem acento e em minúsculas ('Ç' -> 'c'); 0 = separador
+    private static final char[] LATIN1 = new char[256];
+
+    static {
+        for (char c = 0; c < LATIN1.length; c++) {
+            String base = RegistroUtil.normalizar(String.valueOf(c));
+            char b = base.length() == 1 ? base.charAt(0) : 0;
+            LATIN1[c] = (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') ? b : 0;
+        }
+    }
+
+    /**
+     * Termos normalizados do texto (sem acentos, minúsculas, sem stopwords)
+     */
+    public static List<String> tokenizar(String texto) {
+        List<String> termos = new ArrayList<>();
+        if (texto == null) {
+            return termos;
+        }
+        // Percorre os caracteres uma vez; só textos fora do Latin-1 passam pelo Normalizer
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) >= LATIN1.length) {
+                texto = RegistroUtil.normalizar(texto);
+                break;
+            }
+        }
+        StringBuilder termo = new StringBuilder();
+        for (int i = 0; i <= texto.length(); i++) {
+            char c = i < texto.length() && texto.charAt(i) < LATIN1.length ? LATIN1[texto.charAt(i)] : 0;
+            if (c != 0) {
+                termo.append(c);
+            } else if (termo.length() > 0) {
+                String t = termo.toString();
+                if (t.length() >= TAMANHO_MINIMO && !STOPWORDS.contains(t)) {
+                    termos.add(t);
+                }
+                termo.setLength(0);
+            }
+        }
+        return termos;
+    }
+
+    /**
+     * Busca os termos (por prefixo) em uma coleção
+     * @return os "limite" melhores resultados da coleção, ordenados, e o total encontrado
+     */
+    public Busca buscar(String colecao, List<?> registros, List<String> termosBusca, int limite) {
+        PorColecao indice = garantir(colecao, registros);
+        if (termosBusca.isEmpty() || indice.documentos.isEmpty()) {
+            return NENHUM;
+        }
+        int total = indice.documentos.size();
+        // Termos do índice que casam com cada prefixo, começando pelo prefixo com menos ocorrências:
+        // a interseção diminui cedo e os prefixos seguintes só verificam os candidatos restantes
+        Map<String, SortedMap<String, Map<String, Integer>>> expansoes = new HashMap<>();
+        Map<String, Integer> ocorrencias = new HashMap<>();
+        for (String prefixo : termosBusca) {
+            SortedMap<String, Map<String, Integer>> termos = indice.termos.subMap(prefixo, true, prefixo + Character.MAX_VALUE, false);
+            int soma = 0;
+            for (Map<String, Integer> postagens : termos.values()) {
+                soma += postagens.size();
+            }
+            if (soma == 0) {
+                return NENHUM;
+            }
+            expansoes.put(prefixo, termos);
+            ocorrencias.put(prefixo, soma);
+        }
+        List<String> prefixos = new ArrayList<>(expansoes.keySet());
+        prefixos.sort(Comparator.comparingInt(ocorrencias::get));
+
+        Map<String, Double> pontuacoes = null;
+        for (String prefixo : prefixos) {
+            SortedMap<String, Map<String, Integer>> termos = expansoes.get(prefixo);
+            // Melhor pontuação de cada registro entre os termos que começam com o prefixo
+            Map<String, Double> doTermo = new HashMap<>();
+            boolean porCandidato = pontuacoes != null && (long) pontuacoes.size() * termos.size() < ocorrencias.get(prefixo);
+            for (Map.Entry<String, Map<String, Integer>> termo : termos.entrySet()) {
+                double peso = Math.log(1 + (double) total / termo.getValue().size()) * (termo.getKey().equals(prefixo) ? 1.0 : 0.8);
+                if (porCandidato) {
+                    for (String id : pontuacoes.keySet()) {
+                        Integer valor = termo.getValue().get(id);
+                        if (valor != null) {
+                            doTermo.merge(id, valor * peso, Math::max);
+                        }
+                    }
+                } else {
+                    for (Map.Entry<String, Integer> postagem : termo.getValue().entrySet()) {
+                        if (pontuacoes == null || pontuacoes.containsKey(postagem.getKey())) {
+                            doTermo.merge(postagem.getKey(), postagem.getValue() * peso, Math::max);
+                        }
+                    }
+                }
+            }
+            if (pontuacoes != null) {
+                // Todos os termos precisam casar: mantém só quem já casou antes
+                Map<String, Double> anteriores = pontuacoes;
+                doTermo.replaceAll((id, valor) -> valor + anteriores.get(id));
+            }
+            pontuacoes = doTermo;
+            if (pontuacoes.isEmpty()) {
+                return NENHUM;
+            }
+        }
+        // Só os melhores são ordenados: heap com o pior no topo, limitado a "limite" resultados
+        PriorityQueue<Resultado> melhores = new PriorityQueue<>(limite + 1, ORDEM.reversed());
+        for (Map.Entry<String, Double> e : pontuacoes.entrySet()) {
+            if (melhores.size() == limite) {
+                // Descarta sem criar objeto quem não supera o pior (mesma coleção: empate decidido pelo id)
+                Resultado pior = melhores.peek();
+                int cmp = Double.compare(e.getValue(), pior.pontuacao);
+                if (cmp < 0 || (cmp == 0 && e.getKey().compareTo(pior.id) >= 0)) {
+                    continue;
+                }
+            }
+            melhores.add(new Resultado(colecao, e.getKey(), e.getValue()));
+            if (melhores.size() > limite) {
+                melhores.poll();
+            }
+        }
+        List<Resultado> resultados = new ArrayList<>(melhores);
+        resultados.sort(ORDEM);
+        return new Busca(resultados, pontuacoes.size());
+    }
+}
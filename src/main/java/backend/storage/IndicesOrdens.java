@@ -0,0 +1,146 @@
+package backend.storage;
+
+import backend.util.RegistroUtil;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Índices secundários das ordens de um usuário: status, cliente (documentoCliente/telefoneCliente)
+ * e data de criação. Guardam ids; os registros são obtidos pelo IndiceIds.
+ *
+ * Construídos na primeira consulta e mantidos a cada inclusão, alteração e remoção (UserJournal.aplicar).
+ * Se a lista de ordens for substituída inteira, são reconstruídos na consulta seguinte.
+ * Não é thread-safe: usado apenas com o lock do usuário.
+ */
+public class IndicesOrdens {
+    public static final String COLECAO = "ordens";
+
+    private List<?> registros;
+    private final Map<String, Set<String>> porStatus = new HashMap<>();
+    private final Map<String, Set<String>> porCliente = new HashMap<>();
+    private final TreeMap<LocalDate, Set<String>> porData = new TreeMap<>();
+
+    private void garantir(List<?> registros) {
+        if (this.registros == registros) {
+            return;
+        }
+        porStatus.clear();
+        porCliente.clear();
+        porData.clear();
+        this.registros = registros;
+        for (Object registro : registros) {
+            if (registro instanceof Map) {
+                indexar((Map<?, ?>) registro, true);
+            }
+        }
+    }
+
+    /**
+     * Atualiza os índices depois de uma inclusão (antigo null), alteração ou remoção (novo null)
+     */
+    void alterado(List<?> registros, Map<?, ?> antigo, Map<?, ?> novo) {
+        if (this.registros != registros) {
+            // Ainda não construído, ou construído para outra lista: a próxima consulta reconstrói
+            return;
+        }
+        if (antigo != null) {
+            indexar(antigo, false);
+        }
+        if (novo != null) {
+            indexar(novo, true);
+        }
+    }
+
+    private void indexar(Map<?, ?> registro, boolean incluir) {
+        String id = RegistroUtil.id(registro);
+        if (id == null) {
+            return;
+        }
+        String status = chaveStatus(RegistroUtil.texto(registro, "status"));
+        if (status != null) {
+            atualizar(porStatus, status, id, incluir);
+        }
+        for (String campo : List.of("documentoCliente", "telefoneCliente")) {
+            String cliente = chaveCliente(RegistroUtil.texto(registro, campo));
+            if (cliente != null) {
+                atualizar(porCliente, cliente, id, incluir);
+            }
+        }
+        LocalDate data = RegistroUtil.data(registro);
+        if (data != null) {
+            atualizar(porData, data, id, incluir);
+        }
+    }
+
+    private static <K> void atualizar(Map<K, Set<String>> indice, K chave, String id, boolean incluir) {
+        if (incluir) {
+            indice.computeIfAbsent(chave, k -> new HashSet<>()).add(id);
+            return;
+        }
+        Set<String> ids = indice.get(chave);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                indice.remove(chave);
+            }
+        }
+    }
+
+    public static String chaveStatus(String status) {
+        if (status == null || status.trim().isEmpty()) {
+            return null;
+        }
+        return RegistroUtil.normalizar(status.trim());
+    }
+
+    /**
+     * Documento ou telefone só com dígitos (ignora pontuação); texto normalizado se não houver dígitos
+     */
+    public static String chaveCliente(String valor) {
+        if (valor == null || valor.trim().isEmpty()) {
+            return null;
+        }
+        String digitos = valor.replaceAll("\\D", "");
+        return !digitos.isEmpty() ? digitos : RegistroUtil.normalizar(valor.trim());
+    }
+
+    /**
+     * Ids das ordens que atendem a todos os filtros informados (null = sem filtro)
+     */
+    public Set<String> consultar(List<?> registros, String status, String cliente, LocalDate de, LocalDate ate) {
+        garantir(registros);
+        List<Set<String>> conjuntos = new ArrayList<>();
+        if (status != null) {
+            conjuntos.add(porStatus.getOrDefault(chaveStatus(status), Set.of()));
+        }
+        if (cliente != null) {
+            conjuntos.add(porCliente.getOrDefault(chaveCliente(cliente), Set.of()));
+        }
+        if (de != null || ate != null) {
+            NavigableMap<LocalDate, Set<String>> intervalo = porData;
+            if (de != null && ate != null) {
+                intervalo = porData.subMap(de, true, ate, true);
+            } else if (de != null) {
+                intervalo = porData.tailMap(de, true);
+            } else {
+                intervalo = porData.headMap(ate, true);
+            }
+            Set<String> ids = new HashSet<>();
+            for (Set<String> doDia : intervalo.values()) {
+                ids.addAll(doDia);
+            }
+            conjuntos.add(ids);
+        }
+        if (conjuntos.isEmpty()) {
+            return Set.of();
+        }
+        // Interseção partindo do menor conjunto
+        conjuntos.sort(Comparator.comparingInt(Set::size));
+        Set<String> resultado = new HashSet<>(conjuntos.get(0));
+        for (int i = 1; i < conjuntos.size() && !resultado.isEmpty(); i++) {
+            resultado.retainAll(conjuntos.get(i));
+        }
+        return resultado;
+    }
+}
@@ -0,0 +1,60 @@
+package backend.storage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índices em memória do documento de um usuário, mantidos junto com a entrada do cache.
+ * UserJournal.aplicar informa cada registro incluído, substituído ou removido.
+ *
+ * Um observador opcional recebe as mesmas alterações (totais derivados, como os do faturamento).
+ *
+ * Não é thread-safe: usado apenas com o lock do usuário.
+ */
+public class IndicesUsuario {
+    private final IndiceIds ids = new IndiceIds();
+    private final IndicesOrdens ordens = new IndicesOrdens();
+    private final IndiceTexto texto = new IndiceTexto();
+    private Observador observador;
+
+    /**
+     * Recebe cada registro incluído (antigo null), substituído ou removido (novo null)
+     */
+    public interface Observador {
+        void alterado(String colecao, Map<?, ?> antigo, Map<?, ?> novo);
+    }
+
+    public IndiceIds getIds() {
+        return ids;
+    }
+
+    public IndicesOrdens getOrdens() {
+        return ordens;
+    }
+
+    public IndiceTexto getTexto() {
+        return texto;
+    }
+
+    /**
+     * Define o observador das próximas alterações (null remove)
+     */
+    public void setObservador(Observador observador) {
+        this.observador = observador;
+    }
+
+    /**
+     * Registro incluído (antigo null), substituído ou removido (novo null) da coleção
+     */
+    void alterado(String colecao, List<?> registros, Map<?, ?> antigo, Map<?, ?> novo) {
+        if (IndicesOrdens.COLECAO.equals(colecao)) {
+            ordens.alterado(registros, antigo, novo);
+        }
+        if (IndiceTexto.CAMPOS.containsKey(colecao)) {
+            texto.alterado(colecao, registros, antigo, novo);
+        }
+        if (observador != null) {
+            observador.alterado(colecao, antigo, novo);
+        }
+    }
+}
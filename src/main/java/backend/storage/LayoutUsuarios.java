@@ -0,0 +1,185 @@
+package backend.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Distribuição dos arquivos de usuário em dois níveis de subdiretórios pelo hash do userId:
+ * user_data/a/b/{userId}.json (e .journal), 16 x 16 = 256 diretórios. A raiz deixa de crescer com o
+ * número de usuários e a enumeração pode ser feita em paralelo por fragmento (cada "a").
+ * Um dígito hexadecimal por nível mantém poucos diretórios a abrir na enumeração; dois por nível
+ * (65536 diretórios) deixavam a listagem de 20 mil usuários 4x mais lenta.
+ *
+ * O layout plano antigo (user_data/{userId}.*) é migrado por rename na abertura.
+ */
+public class LayoutUsuarios {
+    private static final Logger logger = Logger.getLogger(LayoutUsuarios.class.getName());
+
+    private static final int DIGITOS_POR_NIVEL = 1;
+
+    private final File raiz;
+    private final DurableFileWriter writer;
+    // Diretórios já criados: evita um stat a cada escrita
+    private final Set<String> existentes = ConcurrentHashMap.newKeySet();
+
+    public LayoutUsuarios(File raiz, DurableFileWriter writer) {
+        this.raiz = raiz;
+        this.writer = writer;
+    }
+
+    public File getRaiz() {
+        return raiz;
+    }
+
+    /**
+     * Prefixo do fragmento: os primeiros dígitos hexadecimais do CRC32 do userId, um por nível
+     */
+    static String prefixo(String userId) {
+        CRC32 crc = new CRC32();
+        crc.update(userId.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue()).substring(0, 2 * DIGITOS_POR_NIVEL);
+    }
+
+    /**
+     * Diretório dos arquivos do usuário (pode ainda não existir)
+     */
+    public File diretorio(String userId) {
+        String prefixo = prefixo(userId);
+        return new File(new File(raiz, prefixo.substring(0, DIGITOS_POR_NIVEL)), prefixo.substring(DIGITOS_POR_NIVEL));
+    }
+
+    /**
+     * Diretório do usuário, criado se preciso (com fsync dos diretórios pais, para a criação sobreviver a uma queda)
+     */
+    public File garantirDiretorio(String userId) throws IOException {
+        File diretorio = diretorio(userId);
+        if (!existentes.contains(diretorio.getPath())) {
+            writer.criarDiretorios(diretorio.toPath());
+            existentes.add(diretorio.getPath());
+        }
+        return diretorio;
+    }
+
+    /**
+     * Fragmentos de primeiro nível (user_data/a), em ordem
+     */
+    public List<File> fragmentos() {
+        File[] nivel1 = raiz.listFiles(f -> f.isDirectory() && f.getName().length() == DIGITOS_POR_NIVEL);
+        if (nivel1 == null) {
+            return List.of();
+        }
+        Arrays.sort(nivel1);
+        return Arrays.asList(nivel1);
+    }
+
+    /**
+     * Diretórios de usuários de um fragmento (user_data/a/b)
+     */
+    public static List<File> diretoriosDoFragmento(File fragmento) {
+        File[] nivel2 = fragmento.listFiles(File::isDirectory);
+        if (nivel2 == null) {
+            return List.of();
+        }
+        Arrays.sort(nivel2);
+        return Arrays.asList(nivel2);
+    }
+
+    /**
+     * Move os arquivos do layout plano para os fragmentos. Cada arquivo vai por rename atômico, então uma
+     * queda no meio deixa cada arquivo inteiro em um dos dois lugares; a próxima abertura continua a migração.
+     * Se o destino já existir, o arquivo plano é mantido e um aviso é registrado
+     * @return quantidade de arquivos movidos
+     */
+    public int migrarLayoutPlano() throws IOException {
+        File[] planos = raiz.listFiles(f -> f.isFile() && usuarioDoArquivo(f.getName()) != null);
+        if (planos == null || planos.length == 0) {
+            return 0;
+        }
+        int movidos = 0;
+        Set<Path> destinos = new LinkedHashSet<>();
+        for (File plano : planos) {
+            File diretorio = garantirDiretorio(usuarioDoArquivo(plano.getName()));
+            Path destino = new File(diretorio, plano.getName()).toPath();
+            if (Files.exists(destino)) {
+                logger.warning("Arquivo já existe no layout fragmentado, mantendo o antigo: " + plano.getName());
+                continue;
+            }
+            try {
+                Files.move(plano.toPath(), destino, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(plano.toPath(), destino);
+            }
+            destinos.add(diretorio.toPath());
+            movidos++;
+        }
+        for (Path destino : destinos) {
+            writer.forcarDiretorio(destino);
+        }
+        writer.forcarDiretorio(raiz.toPath());
+        logger.info("Layout de user_data migrado: " + movidos + " arquivos movidos para fragmentos");
+        return movidos;
+    }
+
+    /**
+     * Usuários com arquivos em um fragmento (snapshot em qualquer formato ou journal)
+     */
+    public static List<String> usuariosDoFragmento(File fragmento) {
+        Set<String> userIds = new TreeSet<>();
+        for (File diretorio : diretoriosDoFragmento(fragmento)) {
+            String[] nomes = diretorio.list();
+            if (nomes == null) {
+                continue;
+            }
+            for (String nome : nomes) {
+                String userId = usuarioDoArquivo(nome);
+                if (userId != null) {
+                    userIds.add(userId);
+                }
+            }
+        }
+        return new ArrayList<>(userIds);
+    }
+
+    /**
+     * Usuários agrupados por fragmento, listados em paralelo
+     */
+    public List<List<String>> usuariosPorFragmento() {
+        return fragmentos().parallelStream()
+            .map(LayoutUsuarios::usuariosDoFragmento)
+            .filter(usuarios -> !usuarios.isEmpty())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Remove temporários deixados por uma queda, em todos os diretórios de usuários
+     */
+    public void limparTemporarios() {
+        DurableFileWriter.limparTemporarios(raiz);
+        fragmentos().parallelStream()
+            .flatMap(fragmento -> diretoriosDoFragmento(fragmento).stream())
+            .forEach(DurableFileWriter::limparTemporarios);
+    }
+
+    /**
+     * userId de um arquivo de dados (manifesto {userId}.json, coleção {userId}.{colecao}.{geracao}.json
+     * ou journal), ou null
+     */
+    private static String usuarioDoArquivo(String nome) {
+        if (nome.endsWith(UserJournal.EXTENSAO)) {
+            return nome.substring(0, nome.length() - UserJournal.EXTENSAO.length());
+        }
+        if (nome.endsWith(".tmp") || StorageCodec.porArquivo(nome) == null) {
+            return null;
+        }
+        String base = StorageCodec.nomeBase(nome);
+        int ponto = base.indexOf('.');
+        return ponto < 0 ? base : base.substring(0, ponto);
+    }
+}
@@ -0,0 +1,112 @@
+package backend.storage;
+
+import java.util.*;
+
+/**
+ * Revisões usadas na sincronização incremental.
+ * Cada registro alterado recebe _rev, o documento guarda a maior revisão em _revisao,
+ * e remoções ficam em _removidos ({colecao: {id: rev}}) para serem repassadas aos outros dispositivos.
+ */
+public final class Revisoes {
+    public static final String CAMPO_REGISTRO = "_rev";
+    public static final String CAMPO_DOCUMENTO = "_revisao";
+    public static final String CAMPO_REMOVIDOS = "_removidos";
+
+    private Revisoes() {
+    }
+
+    public static long doRegistro(Map<?, ?> registro) {
+        Object rev = registro.get(CAMPO_REGISTRO);
+        return rev instanceof Number ? ((Number) rev).longValue() : 0;
+    }
+
+    public static long doDocumento(Map<String, Object> documento) {
+        Object rev = documento.get(CAMPO_DOCUMENTO);
+        return rev instanceof Number ? ((Number) rev).longValue() : 0;
+    }
+
+    /**
+     * Atualiza _revisao se a revisão aplicada for maior
+     */
+    public static void avancar(Map<String, Object> documento, long rev) {
+        if (rev > doDocumento(documento)) {
+            documento.put(CAMPO_DOCUMENTO, rev);
+        }
+    }
+
+    public static String idTexto(Object id) {
+        return id != null ? id.toString() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void registrarRemocao(Map<String, Object> documento, String colecao, String id, long rev) {
+        Map<String, Object> removidos = (Map<String, Object>) documento.computeIfAbsent(CAMPO_REMOVIDOS, k -> new LinkedHashMap<>());
+        ((Map<String, Object>) removidos.computeIfAbsent(colecao, k -> new LinkedHashMap<>())).put(id, rev);
+    }
+
+    /**
+     * Esquece a remoção de um id que voltou a existir (o registro novo já carrega a revisão mais recente)
+     */
+    public static void limparRemocao(Map<String, Object> documento, String colecao, String id) {
+        Map<String, Object> removidos = removidos(documento, colecao);
+        if (id != null && removidos.containsKey(id)) {
+            removidos.remove(id);
+        }
+    }
+
+    /**
+     * Remoções de uma coleção ({id: rev}), vazio se não houver
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> removidos(Map<String, Object> documento, String colecao) {
+        Object removidos = documento.get(CAMPO_REMOVIDOS);
+        if (removidos instanceof Map) {
+            Object daColecao = ((Map<String, Object>) removidos).get(colecao);
+            if (daColecao instanceof Map) {
+                return (Map<String, Object>) daColecao;
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Cópia do mapa de topo (e de _removidos) para alterar sem afetar leitores do documento atual.
+     * As coleções continuam compartilhadas: são CopyOnWriteArrayList
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> copiarParaAlteracao(Map<String, Object> documento) {
+        Map<String, Object> copia = new LinkedHashMap<>(documento);
+        Object removidos = documento.get(CAMPO_REMOVIDOS);
+        if (removidos instanceof Map) {
+            Map<String, Object> copiaRemovidos = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> e : ((Map<String, Object>) removidos).entrySet()) {
+                copiaRemovidos.put(e.getKey(), e.getValue() instanceof Map ? new LinkedHashMap<>((Map<String, Object>) e.getValue()) : e.getValue());
+            }
+            copia.put(CAMPO_REMOVIDOS, copiaRemovidos);
+        }
+        return copia;
+    }
+
+    /**
+     * Maior revisão presente nos registros e remoções (recupera _revisao de snapshots antigos ou inconsistentes)
+     */
+    public static long maiorRevisao(Map<String, Object> documento, Collection<String> colecoes) {
+        long maior = doDocumento(documento);
+        for (String colecao : colecoes) {
+            Object registros = documento.get(colecao);
+            if (registros instanceof List) {
+                for (Object registro : (List<?>) registros) {
+                    if (registro instanceof Map) {
+                        maior = Math.max(maior, doRegistro((Map<?, ?>) registro));
+                    }
+                }
+            }
+            for (Object rev : removidos(documento, colecao).values()) {
+                if (rev instanceof Number) {
+                    maior = Math.max(maior, ((Number) rev).longValue());
+                }
+            }
+        }
+        return maior;
+    }
+}
@@ -0,0 +1,116 @@
+package backend.storage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Centavos e quantidade por dia, para totais de intervalos quaisquer (resumo por período do faturamento).
+ * Cada alteração soma no seu dia; a primeira consulta depois de uma alteração refaz as somas acumuladas
+ * (um passo por dia com movimento) e cada intervalo sai de duas buscas binárias, sem percorrer os dias.
+ * Pode ser alterado e consultado por várias threads
+ */
+public class SomasPorDia {
+
+    /**
+     * Somas acumuladas de um estado: acumulado[i] soma os dias anteriores a dias[i]
+     */
+    private static final class Acumulado {
+        final long versao;
+        final long[] dias;
+        final long[] centavos;
+        final long[] quantidades;
+
+        Acumulado(long versao, int tamanho) {
+            this.versao = versao;
+            this.dias = new long[tamanho];
+            this.centavos = new long[tamanho + 1];
+            this.quantidades = new long[tamanho + 1];
+        }
+    }
+
+    // Dia (epochDay) -> {centavos, quantidade}
+    private final ConcurrentSkipListMap<Long, long[]> dias = new ConcurrentSkipListMap<>();
+    private final AtomicLong versao = new AtomicLong();
+    private volatile Acumulado acumulado;
+
+    public void somar(LocalDate dia, long centavos, long quantidade) {
+        if (centavos == 0 && quantidade == 0) {
+            return;
+        }
+        long[] total = dias.computeIfAbsent(dia.toEpochDay(), k -> new long[2]);
+        synchronized (total) {
+            total[0] += centavos;
+            total[1] += quantidade;
+        }
+        versao.incrementAndGet();
+    }
+
+    /**
+     * Centavos e quantidade de de até ate (inclusive)
+     */
+    public long[] intervalo(LocalDate de, LocalDate ate) {
+        Acumulado somas = acumulado();
+        int inicio = posicao(somas.dias, de.toEpochDay());
+        int fim = posicao(somas.dias, ate.toEpochDay() + 1);
+        if (fim <= inicio) {
+            return new long[2];
+        }
+        return new long[]{somas.centavos[fim] - somas.centavos[inicio], somas.quantidades[fim] - somas.quantidades[inicio]};
+    }
+
+    public int getDias() {
+        return dias.size();
+    }
+
+    /**
+     * Cópia dos totais de cada dia, em ordem
+     */
+    public Map<LocalDate, long[]> copia() {
+        Map<LocalDate, long[]> copia = new TreeMap<>();
+        for (Map.Entry<Long, long[]> e : dias.entrySet()) {
+            synchronized (e.getValue()) {
+                copia.put(LocalDate.ofEpochDay(e.getKey()), e.getValue().clone());
+            }
+        }
+        return copia;
+    }
+
+    private Acumulado acumulado() {
+        long atual = versao.get();
+        Acumulado somas = acumulado;
+        if (somas != null && somas.versao == atual) {
+            return somas;
+        }
+        // Alterações durante a cópia mudam a versão, e a próxima consulta refaz de novo
+        List<Map.Entry<Long, long[]>> entradas = new ArrayList<>(dias.entrySet());
+        somas = new Acumulado(atual, entradas.size());
+        for (int i = 0; i < entradas.size(); i++) {
+            long[] total = entradas.get(i).getValue();
+            long centavos;
+            long quantidade;
+            synchronized (total) {
+                centavos = total[0];
+                quantidade = total[1];
+            }
+            somas.dias[i] = entradas.get(i).getKey();
+            somas.centavos[i + 1] = somas.centavos[i] + centavos;
+            somas.quantidades[i + 1] = somas.quantidades[i] + quantidade;
+        }
+        acumulado = somas;
+        return somas;
+    }
+
+    /**
+     * Primeira posição com dia >= epochDay
+     */
+    private static int posicao(long[] dias, long epochDay) {
+        int posicao = Arrays.binarySearch(dias, epochDay);
+        return posicao >= 0 ? posicao : -posicao - 1;
+    }
+}
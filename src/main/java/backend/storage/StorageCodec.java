@@ -0,0 +1,131 @@
+package backend.storage;
+
+import backend.util.ConfigUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Formato de armazenamento em disco (scartech.storage.formato = json | smile | cbor).
+ * JSON continua o padrão; Smile e CBOR são as codificações binárias do Jackson, menores e mais rápidas.
+ * Arquivos em outro formato são lidos normalmente e migrados na primeira gravação.
+ */
+public enum StorageCodec {
+    JSON(".json", new ObjectMapper(), true),
+    SMILE(".smile", new ObjectMapper(new SmileFactory()), false),
+    CBOR(".cbor", new ObjectMapper(new CBORFactory()), false);
+
+    private static final Logger logger = Logger.getLogger(StorageCodec.class.getName());
+    private static final StorageCodec CONFIGURADO = of(ConfigUtil.getString("scartech.storage.formato", "json"));
+
+    private final String extensao;
+    private final ObjectMapper mapper;
+    private final ObjectWriter writer;
+
+    StorageCodec(String extensao, ObjectMapper mapper, boolean legivel) {
+        this.extensao = extensao;
+        this.mapper = mapper;
+        this.writer = legivel ? mapper.writerWithDefaultPrettyPrinter() : mapper.writer();
+    }
+
+    public static StorageCodec of(String valor) {
+        for (StorageCodec codec : values()) {
+            if (codec.name().equalsIgnoreCase(valor)) {
+                return codec;
+            }
+        }
+        logger.warning("Formato de armazenamento desconhecido: " + valor + " (usando json)");
+        return JSON;
+    }
+
+    /**
+     * Formato usado nas gravações
+     */
+    public static StorageCodec configurado() {
+        return CONFIGURADO;
+    }
+
+    public String getExtensao() {
+        return extensao;
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    public File arquivo(File diretorio, String nomeBase) {
+        return new File(diretorio, nomeBase + extensao);
+    }
+
+    /**
+     * Localiza o arquivo existente de um nome base: primeiro no formato configurado, depois nos demais
+     * @return arquivo encontrado, ou null
+     */
+    public static File localizar(File diretorio, String nomeBase) {
+        File preferido = CONFIGURADO.arquivo(diretorio, nomeBase);
+        if (preferido.exists()) {
+            return preferido;
+        }
+        for (StorageCodec codec : values()) {
+            File candidato = codec.arquivo(diretorio, nomeBase);
+            if (codec != CONFIGURADO && candidato.exists()) {
+                return candidato;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Codec correspondente à extensão do arquivo, ou null se não for um arquivo de dados
+     */
+    public static StorageCodec porArquivo(String nome) {
+        String minusculo = nome.toLowerCase(Locale.ROOT);
+        for (StorageCodec codec : values()) {
+            if (minusculo.endsWith(codec.extensao)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    public static String nomeBase(String nome) {
+        StorageCodec codec = porArquivo(nome);
+        return codec != null ? nome.substring(0, nome.length() - codec.extensao.length()) : nome;
+    }
+
+    public <T> T ler(File arquivo, TypeReference<T> tipo) throws IOException {
+        return mapper.readValue(arquivo, tipo);
+    }
+
+    public void escrever(OutputStream out, Object valor) throws IOException {
+        writer.writeValue(out, valor);
+    }
+
+    /**
+     * Lê um arquivo em qualquer formato conhecido, conforme a extensão
+     */
+    public static <T> T lerArquivo(File arquivo, TypeReference<T> tipo) throws IOException {
+        StorageCodec codec = porArquivo(arquivo.getName());
+        return (codec != null ? codec : JSON).ler(arquivo, tipo);
+    }
+
+    /**
+     * Remove as versões do arquivo em outros formatos depois que a gravação no formato configurado terminou
+     */
+    public static void removerFormatosAntigos(File diretorio, String nomeBase) {
+        for (StorageCodec codec : values()) {
+            File antigo = codec.arquivo(diretorio, nomeBase);
+            if (codec != CONFIGURADO && antigo.exists() && antigo.delete()) {
+                logger.info("Arquivo migrado para " + CONFIGURADO.name().toLowerCase(Locale.ROOT) + ": " + antigo.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package backend.storage;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks por usuário distribuídos em faixas (stripes).
+ * Escritas de um mesmo userId ficam ordenadas; usuários em faixas diferentes seguem em paralelo.
+ */
+public class StripedLocks {
+    private final ReentrantLock[] locks;
+
+    public StripedLocks(int faixas) {
+        int tamanho = Integer.highestOneBit(Math.max(1, faixas - 1)) << 1;
+        this.locks = new ReentrantLock[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public ReentrantLock get(String chave) {
+        int h = chave.hashCode();
+        h ^= (h >>> 16);
+        return locks[h & (locks.length - 1)];
+    }
+
+    public int getFaixas() {
+        return locks.length;
+    }
+}
@@ -0,0 +1,378 @@
+package backend.storage;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+
+/**
+ * Cache write-behind dos documentos de usuário (persistidos por um UserDataRepository).
+ * Limitado por quantidade de entradas (LRU) e por tempo de ociosidade.
+ * Cada entrada começa só com o manifesto (campos de topo); as coleções são carregadas quando pedidas.
+ * Entradas sujas são gravadas em segundo plano a cada intervalo e no desligamento, só com as coleções alteradas.
+ */
+public class UserDataCache {
+    private static final Logger logger = Logger.getLogger(UserDataCache.class.getName());
+
+    public interface Carregador {
+        Map<String, Object> carregar(String userId) throws IOException;
+    }
+
+    public interface CarregadorColecao {
+        List<Object> carregar(String userId, String colecao) throws IOException;
+    }
+
+    public interface Gravador {
+        void gravar(String userId, Map<String, Object> documento, Collection<String> colecoes) throws IOException;
+    }
+
+    /**
+     * Documento em cache. Mutações e gravações são feitas com o lock do usuário (StripedLocks)
+     */
+    public static final class Entrada {
+        private final String userId;
+        private volatile Map<String, Object> documento;
+        private volatile boolean sujo;
+        // Coleções substituídas desde a última gravação (com o lock do usuário)
+        private final Set<String> colecoesSujas = new LinkedHashSet<>();
+        private volatile long ultimoAcesso;
+        private final IndicesUsuario indices = new IndicesUsuario();
+
+        Entrada(String userId, Map<String, Object> documento) {
+            this.userId = userId;
+            this.documento = documento;
+            this.ultimoAcesso = System.currentTimeMillis();
+        }
+
+        public String getUserId() { return userId; }
+
+        public Map<String, Object> getDocumento() { return documento; }
+
+        public void setDocumento(Map<String, Object> documento) { this.documento = documento; }
+
+        /**
+         * Manifesto alterado (ou compactação do journal); as coleções alteradas por operações anexadas
+         * são gravadas pelo repositório
+         */
+        public void marcarSujo() { this.sujo = true; }
+
+        /**
+         * Coleção substituída por inteiro: precisa ser gravada. Usar apenas com o lock do usuário
+         */
+        public void marcarSujo(String colecao) {
+            colecoesSujas.add(colecao);
+            this.sujo = true;
+        }
+
+        private boolean contem(Collection<String> colecoes) {
+            Map<String, Object> atual = documento;
+            for (String colecao : colecoes) {
+                if (!atual.containsKey(colecao)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Índices em memória do documento; usar apenas com o lock do usuário
+         */
+        public IndicesUsuario getIndices() { return indices; }
+    }
+
+    private final Carregador carregador;
+    private final CarregadorColecao carregadorColecao;
+    private final Gravador gravador;
+    private final StripedLocks locks;
+    private final int maxEntradas;
+    private final long ociosidadeMillis;
+
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    // Entradas removidas do cache, aguardando gravação (se sujas) antes de serem descartadas
+    private final Map<String, Entrada> pendentes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong colecoesCarregadas = new AtomicLong();
+    private final AtomicLong gravacoes = new AtomicLong();
+    private final AtomicLong falhasGravacao = new AtomicLong();
+
+    public UserDataCache(Carregador carregador, CarregadorColecao carregadorColecao, Gravador gravador, StripedLocks locks,
+                         int maxEntradas, long ociosidadeMillis, long intervaloFlushMillis) {
+        this.carregador = carregador;
+        this.carregadorColecao = carregadorColecao;
+        this.gravador = gravador;
+        this.locks = locks;
+        this.maxEntradas = Math.max(1, maxEntradas);
+        this.ociosidadeMillis = ociosidadeMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-data-cache-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalo = Math.max(100, intervaloFlushMillis);
+        executor.scheduleWithFixedDelay(this::manutencao, intervalo, intervalo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Obtém a entrada do usuário, carregando do disco em caso de miss.
+     * O carregamento acontece com o lock do usuário, então cada usuário é lido uma única vez
+     */
+    public Entrada obter(String userId) throws IOException {
+        Entrada entrada = buscar(userId);
+        if (entrada != null) {
+            return entrada;
+        }
+
+        ReentrantLock lock = locks.get(userId);
+        lock.lock();
+        List<Entrada> removidas;
+        Entrada carregada;
+        try {
+            entrada = buscar(userId);
+            if (entrada != null) {
+                // Outra thread carregou o mesmo usuário enquanto esperávamos o lock
+                return entrada;
+            }
+            misses.incrementAndGet();
+            carregada = new Entrada(userId, carregador.carregar(userId));
+            synchronized (entradas) {
+                entradas.put(userId, carregada);
+                removidas = removerExcedentes();
+            }
+        } finally {
+            lock.unlock();
+        }
+        agendarGravacao(removidas);
+        return carregada;
+    }
+
+    /**
+     * Obtém a entrada do usuário com as coleções informadas carregadas.
+     * As que faltam são lidas com o lock do usuário e entram num novo mapa de topo (leitores do anterior não veem mudança)
+     */
+    public Entrada obter(String userId, Collection<String> colecoes) throws IOException {
+        Entrada entrada = obter(userId);
+        if (entrada.contem(colecoes)) {
+            return entrada;
+        }
+        ReentrantLock lock = locks.get(userId);
+        lock.lock();
+        try {
+            // De novo com o lock: a entrada pode ter saído do cache enquanto esperávamos
+            entrada = obter(userId);
+            Map<String, Object> novo = null;
+            for (String colecao : colecoes) {
+                if (!entrada.documento.containsKey(colecao)) {
+                    if (novo == null) {
+                        novo = new LinkedHashMap<>(entrada.documento);
+                    }
+                    novo.put(colecao, carregadorColecao.carregar(userId, colecao));
+                    colecoesCarregadas.incrementAndGet();
+                }
+            }
+            if (novo != null) {
+                entrada.documento = novo;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return entrada;
+    }
+
+    private Entrada buscar(String userId) {
+        List<Entrada> removidas = List.of();
+        Entrada entrada;
+        synchronized (entradas) {
+            entrada = entradas.get(userId);
+            if (entrada == null) {
+                // Volta ao cache uma entrada removida que ainda não foi descartada
+                entrada = pendentes.remove(userId);
+                if (entrada != null) {
+                    entradas.put(userId, entrada);
+                    removidas = removerExcedentes();
+                }
+            }
+            if (entrada != null) {
+                hits.incrementAndGet();
+                entrada.ultimoAcesso = System.currentTimeMillis();
+            }
+        }
+        agendarGravacao(removidas);
+        return entrada;
+    }
+
+    /**
+     * Retorna a entrada se estiver em memória, sem carregar nem contar como acesso
+     */
+    public Entrada consultar(String userId) {
+        synchronized (entradas) {
+            Entrada entrada = entradas.get(userId);
+            return entrada != null ? entrada : pendentes.get(userId);
+        }
+    }
+
+    private List<Entrada> removerExcedentes() {
+        List<Entrada> removidas = new ArrayList<>();
+        Iterator<Entrada> it = entradas.values().iterator();
+        while (entradas.size() > maxEntradas && it.hasNext()) {
+            Entrada entrada = it.next();
+            it.remove();
+            remover(entrada);
+            removidas.add(entrada);
+        }
+        return removidas;
+    }
+
+    private void remover(Entrada entrada) {
+        // Sem o lock do usuário: uma gravação em andamento não pode bloquear o mapa do cache.
+        // Quem já estava alterando a entrada termina antes de gravarPendente obter o lock.
+        pendentes.put(entrada.userId, entrada);
+        evictions.incrementAndGet();
+    }
+
+    private void agendarGravacao(List<Entrada> removidas) {
+        for (Entrada entrada : removidas) {
+            executor.execute(() -> gravarPendente(entrada));
+        }
+    }
+
+    /**
+     * Agenda a gravação imediata de uma entrada (ex.: compactação do journal)
+     */
+    public void gravarEmSegundoPlano(Entrada entrada) {
+        executor.execute(() -> gravar(entrada));
+    }
+
+    /**
+     * Grava a entrada na thread atual (pode ser chamado com o lock do usuário)
+     * @return true se a entrada ficou gravada, false se a gravação falhou
+     */
+    public boolean gravarAgora(Entrada entrada) {
+        gravar(entrada);
+        return !entrada.sujo;
+    }
+
+    private void gravarPendente(Entrada entrada) {
+        ReentrantLock lock = locks.get(entrada.userId);
+        lock.lock();
+        try {
+            if (pendentes.get(entrada.userId) != entrada) {
+                return;
+            }
+            gravar(entrada);
+            if (!entrada.sujo) {
+                pendentes.remove(entrada.userId, entrada);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void gravar(Entrada entrada) {
+        ReentrantLock lock = locks.get(entrada.userId);
+        lock.lock();
+        try {
+            if (!entrada.sujo) {
+                return;
+            }
+            entrada.sujo = false;
+            List<String> colecoes = new ArrayList<>(entrada.colecoesSujas);
+            entrada.colecoesSujas.clear();
+            try {
+                gravador.gravar(entrada.userId, entrada.documento, colecoes);
+                gravacoes.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                entrada.sujo = true;
+                entrada.colecoesSujas.addAll(colecoes);
+                falhasGravacao.incrementAndGet();
+                logger.log(Level.SEVERE, "Erro ao gravar dados em cache do usuário: " + entrada.userId, e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tarefa periódica: grava entradas sujas e remove as ociosas
+     */
+    private void manutencao() {
+        try {
+            long limite = System.currentTimeMillis() - ociosidadeMillis;
+            List<Entrada> ativas;
+            List<Entrada> ociosas = new ArrayList<>();
+            synchronized (entradas) {
+                ativas = new ArrayList<>(entradas.values());
+                Iterator<Entrada> it = entradas.values().iterator();
+                while (it.hasNext()) {
+                    Entrada entrada = it.next();
+                    if (entrada.ultimoAcesso < limite) {
+                        it.remove();
+                        remover(entrada);
+                        ociosas.add(entrada);
+                    }
+                }
+            }
+            for (Entrada entrada : ativas) {
+                gravar(entrada);
+            }
+            // Também recupera pendentes cuja gravação falhou anteriormente
+            for (Entrada entrada : new ArrayList<>(pendentes.values())) {
+                gravarPendente(entrada);
+            }
+            if (!ociosas.isEmpty()) {
+                logger.fine("Entradas ociosas removidas do cache: " + ociosas.size());
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Erro na manutenção do cache de dados", e);
+        }
+    }
+
+    /**
+     * Grava imediatamente todas as entradas sujas (usado no desligamento)
+     */
+    public void descarregar() {
+        List<Entrada> todas;
+        synchronized (entradas) {
+            todas = new ArrayList<>(entradas.values());
+        }
+        todas.addAll(pendentes.values());
+        for (Entrada entrada : todas) {
+            gravar(entrada);
+        }
+        pendentes.values().removeIf(entrada -> !entrada.sujo);
+        logger.info("Cache de dados descarregado (" + todas.size() + " entradas)");
+    }
+
+    public void encerrar() {
+        executor.shutdown();
+        descarregar();
+    }
+
+    public Map<String, Object> estatisticas() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long h = hits.get();
+        long m = misses.get();
+        synchronized (entradas) {
+            stats.put("entradas", entradas.size());
+        }
+        stats.put("maxEntradas", maxEntradas);
+        stats.put("pendentes", pendentes.size());
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("evictions", evictions.get());
+        stats.put("colecoesCarregadas", colecoesCarregadas.get());
+        stats.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("gravacoes", gravacoes.get());
+        stats.put("falhasGravacao", falhasGravacao.get());
+        return stats;
+    }
+}
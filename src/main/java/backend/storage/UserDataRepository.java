@@ -0,0 +1,226 @@
+package backend.storage;
+
+import backend.util.ConfigUtil;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Logger;
+
+/**
+ * Armazenamento dos documentos de usuário ({ordens, vendas, produtos, _revisao, _removidos, ...}).
+ * O documento é dividido em manifesto (campos de topo, revisão e remoções) e coleções, lidas e gravadas
+ * separadamente: uma requisição só lê e grava a coleção envolvida.
+ * O UserDataService mantém o cache e os locks; o repositório só persiste:
+ *  - gravar: manifesto e as coleções alteradas, incorporando as operações pendentes
+ *  - anexar: operações incrementais no formato de UserJournal.aplicar (add, upsert, remove)
+ *  - carregarManifesto / carregarColecao: último estado gravado com as operações posteriores já aplicadas
+ *
+ * Todas as chamadas de um mesmo userId acontecem com o lock do usuário; usuários diferentes em paralelo.
+ * Implementações: arquivo (padrão), memoria e h2, escolhidas por scartech.storage.backend.
+ */
+public interface UserDataRepository {
+
+    /**
+     * Campos que o armazenamento pode acrescentar ao documento gravado e que não são expostos
+     */
+    Set<String> CAMPOS_INTERNOS = Set.of("_journalSeq", "_colecoes");
+
+    /**
+     * Resultado de anexar: confirmação de durabilidade e se vale compactar (gravar o estado completo)
+     */
+    final class Anexo {
+        private final boolean compactar;
+        private final CompletableFuture<Void> confirmacao;
+
+        public Anexo(boolean compactar, CompletableFuture<Void> confirmacao) {
+            this.compactar = compactar;
+            this.confirmacao = confirmacao;
+        }
+
+        public boolean isCompactar() { return compactar; }
+
+        public CompletableFuture<Void> getConfirmacao() { return confirmacao; }
+
+        /**
+         * Aguarda a confirmação, repassando a falha de gravação como IOException
+         */
+        public static void aguardar(CompletableFuture<Void> confirmacao) throws IOException {
+            try {
+                confirmacao.join();
+            } catch (CompletionException e) {
+                Throwable causa = e.getCause();
+                throw causa instanceof IOException ? (IOException) causa : new IOException("Falha na confirmação da gravação", causa);
+            }
+        }
+    }
+
+    /**
+     * Estado gravado aberto para cópia direta: o manifesto (objeto sem as coleções) e um parser por coleção
+     * (lista de registros). Coleções sem parser estão vazias
+     */
+    final class Snapshot implements Closeable {
+        private final JsonParser manifesto;
+        private final Map<String, JsonParser> colecoes;
+
+        public Snapshot(JsonParser manifesto, Map<String, JsonParser> colecoes) {
+            this.manifesto = manifesto;
+            this.colecoes = colecoes;
+        }
+
+        public JsonParser getManifesto() { return manifesto; }
+
+        public JsonParser getColecao(String colecao) { return colecoes.get(colecao); }
+
+        @Override
+        public void close() throws IOException {
+            manifesto.close();
+            for (JsonParser parser : colecoes.values()) {
+                parser.close();
+            }
+        }
+    }
+
+    /**
+     * Documento do usuário sem as coleções: campos de topo, _revisao e _removidos, com as operações
+     * anexadas já consideradas; vazio se não existir.
+     * Pode ajustar o armazenamento (migração de formato, descarte de operação truncada)
+     */
+    Map<String, Object> carregarManifesto(String userId) throws IOException;
+
+    /**
+     * Manifesto gravado, para varreduras sem o lock do usuário: não altera nada no armazenamento e pode não
+     * refletir as operações ainda pendentes (só _revisao e _removidos mudam por operação)
+     */
+    Map<String, Object> lerManifestoSomenteLeitura(String userId) throws IOException;
+
+    /**
+     * Registros de uma coleção com as operações anexadas já aplicadas; lista vazia se não existir.
+     * Chamado com o lock do usuário, depois de carregarManifesto
+     */
+    List<Object> carregarColecao(String userId, String colecao) throws IOException;
+
+    /**
+     * Como carregarColecao, para varreduras sem o lock do usuário: não altera nada no armazenamento
+     */
+    List<Object> lerColecaoSomenteLeitura(String userId, String colecao) throws IOException;
+
+    /**
+     * Como lerColecaoSomenteLeitura, mas cada registro (mapa) só com os campos informados e o id:
+     * para varreduras que agregam poucos campos. O padrão lê a coleção inteira e recorta
+     */
+    default List<Object> lerCamposSomenteLeitura(String userId, String colecao, Set<String> campos) throws IOException {
+        List<Object> registros = lerColecaoSomenteLeitura(userId, colecao);
+        List<Object> recortados = new ArrayList<>(registros.size());
+        for (Object registro : registros) {
+            if (registro instanceof Map) {
+                recortados.add(recortar((Map<?, ?>) registro, campos));
+            }
+        }
+        return recortados;
+    }
+
+    /**
+     * Cópia do registro só com os campos informados e o id
+     */
+    static Map<String, Object> recortar(Map<?, ?> registro, Set<String> campos) {
+        Map<String, Object> recortado = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> e : registro.entrySet()) {
+            if ("id".equals(e.getKey()) || campos.contains(e.getKey())) {
+                recortado.put((String) e.getKey(), e.getValue());
+            }
+        }
+        return recortado;
+    }
+
+    /**
+     * Identifica o estado gravado dos dados do usuário (arquivos, datas e tamanhos): igual entre duas
+     * chamadas só se nada foi gravado no meio. Usado para memorizar resultados de varreduras
+     * @return null se o backend não oferece (os dados são sempre relidos)
+     */
+    default String assinatura(String userId) throws IOException {
+        return null;
+    }
+
+    /**
+     * Grava o manifesto do documento e as coleções informadas (que devem estar no documento);
+     * as demais coleções continuam como estão. Operações pendentes são incorporadas e descartadas
+     */
+    void gravar(String userId, Map<String, Object> documento, Collection<String> colecoes) throws IOException;
+
+    /**
+     * Persiste operações incrementais em uma única escrita/transação.
+     * A confirmação deve ser aguardada pelo chamador depois de liberar o lock do usuário
+     */
+    Anexo anexar(String userId, List<Map<String, Object>> operacoes) throws IOException;
+
+    /**
+     * Abre o estado gravado para cópia direta token a token, sem materializar o documento.
+     * Pode conter CAMPOS_INTERNOS e não ter as coleções padrão
+     * @return null se não houver estado gravado, se houver operações pendentes ou se o backend não suportar
+     */
+    Snapshot abrirSnapshot(String userId) throws IOException;
+
+    /**
+     * Usuários com dados gravados
+     */
+    List<String> listarUsuarios() throws IOException;
+
+    /**
+     * Usuários agrupados por fragmento do armazenamento: grupos diferentes podem ser processados em paralelo
+     */
+    default List<List<String>> listarUsuariosPorFragmento() throws IOException {
+        return List.of(listarUsuarios());
+    }
+
+    /**
+     * Estatísticas do backend (para /cache/stats)
+     */
+    Map<String, Object> estatisticas();
+
+    /**
+     * Libera recursos no encerramento, depois da última gravação do cache
+     */
+    default void fechar() {
+    }
+
+    /**
+     * Se os dados sobrevivem a um reinício (dados derivados gravados à parte só valem nesse caso)
+     */
+    default boolean isPersistente() {
+        return true;
+    }
+
+    /**
+     * Repositório escolhido por scartech.storage.backend (arquivo, memoria ou h2)
+     * @param colecoes nomes das coleções do documento (as demais listas ficam no manifesto)
+     */
+    static UserDataRepository configurado(File diretorio, List<String> colecoes) {
+        String backend = ConfigUtil.getString("scartech.storage.backend", "arquivo").trim().toLowerCase();
+        switch (backend) {
+            case "memoria":
+            case "memory":
+                return new InMemoryUserDataRepository(colecoes);
+            case "h2":
+                return new H2UserDataRepository(ConfigUtil.getString("scartech.storage.h2.url",
+                    "jdbc:h2:file:" + new File(diretorio, "user_data").getAbsolutePath()), colecoes);
+            case "arquivo":
+            case "file":
+                break;
+            default:
+                Logger.getLogger(UserDataRepository.class.getName())
+                    .warning("Backend de armazenamento desconhecido: " + backend + " (usando arquivo)");
+        }
+        return new FileUserDataRepository(diretorio, colecoes, DurableFileWriter.getInstance(), StorageCodec.configurado(),
+            ConfigUtil.getLong("scartech.journal.limite-bytes", 256 * 1024L));
+    }
+}
@@ -0,0 +1,371 @@
+package backend.storage;
+
+import backend.dto.Registro;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+
+/**
+ * Journal append-only por usuário (user_data/a/b/{userId}.journal, ver LayoutUsuarios).
+ * Cada alteração vira uma linha JSON compacta com número de sequência; a leitura reaplica
+ * sobre o último snapshot as linhas com sequência maior que a gravada no snapshot.
+ * Cada operação afeta uma coleção (aplicarNaColecao) e o manifesto (aplicarNoManifesto, revisão e remoções),
+ * então o manifesto e cada coleção podem ser reconstruídos separadamente.
+ *
+ * Não é thread-safe por usuário: o chamador deve serializar as operações de um mesmo userId.
+ */
+public class UserJournal {
+    private static final Logger logger = Logger.getLogger(UserJournal.class.getName());
+    public static final String EXTENSAO = ".journal";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LayoutUsuarios layout;
+    private final DurableFileWriter writer;
+    private final Map<String, Estado> estados = new ConcurrentHashMap<>();
+
+    private static final class Estado {
+        long ultimoSeq;
+        long tamanho;
+        // Coleções com operações no journal (precisam ser gravadas para descartá-lo)
+        final Set<String> colecoes = ConcurrentHashMap.newKeySet();
+    }
+
+    public UserJournal(LayoutUsuarios layout, DurableFileWriter writer) {
+        this.layout = layout;
+        this.writer = writer;
+    }
+
+    private File getJournalFile(String userId) {
+        return new File(layout.diretorio(userId), userId + EXTENSAO);
+    }
+
+    /**
+     * Lê os registros do journal posteriores ao snapshot, para serem reaplicados, e retoma a numeração.
+     * Um registro final truncado (queda durante a escrita) é descartado e o arquivo é cortado.
+     * @return operações pendentes, em ordem
+     */
+    public List<Map<String, Object>> reproduzir(String userId, long seqSnapshot) throws IOException {
+        File file = getJournalFile(userId);
+        Estado estado = new Estado();
+        estado.ultimoSeq = seqSnapshot;
+        if (!file.exists()) {
+            estados.put(userId, estado);
+            return List.of();
+        }
+
+        byte[] conteudo = Files.readAllBytes(file.toPath());
+        int inicio = 0;
+        int validos = 0;
+        List<Map<String, Object>> pendentes = new ArrayList<>();
+        while (inicio < conteudo.length) {
+            int fim = indexOf(conteudo, (byte) '\n', inicio);
+            if (fim < 0) {
+                logger.warning("Registro final incompleto descartado no journal de " + userId);
+                break;
+            }
+            Map<String, Object> registro;
+            try {
+                registro = objectMapper.readValue(conteudo, inicio, fim - inicio, new TypeReference<Map<String, Object>>() {});
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Registro corrompido no journal de " + userId + " (offset " + inicio + "), ignorando o restante", e);
+                break;
+            }
+            long seq = ((Number) registro.get("seq")).longValue();
+            if (seq > estado.ultimoSeq) {
+                pendentes.add(registro);
+                estado.colecoes.add((String) registro.get("colecao"));
+                estado.ultimoSeq = seq;
+            }
+            inicio = fim + 1;
+            validos = inicio;
+        }
+
+        if (validos < conteudo.length) {
+            try (FileChannel canal = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                canal.truncate(validos);
+            }
+        }
+        estado.tamanho = validos;
+        estados.put(userId, estado);
+        if (!pendentes.isEmpty()) {
+            logger.info("Journal de " + userId + ": " + pendentes.size() + " registros a reaplicar");
+        }
+        return pendentes;
+    }
+
+    /**
+     * Coleção do documento para alterar; ausente ou inválida (snapshot antigo ou corrompido) vira lista vazia
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Object> colecao(Map<String, Object> documento, String colecao) {
+        Object registros = documento.get(colecao);
+        if (!(registros instanceof List)) {
+            registros = new ArrayList<>();
+            documento.put(colecao, registros);
+        }
+        return (List<Object>) registros;
+    }
+
+    /**
+     * Aplica as operações em ordem, como aplicar. Inclusões seguidas na mesma coleção entram com um único
+     * addAll: as coleções são CopyOnWriteArrayList e cada add copiaria a lista inteira
+     */
+    @SuppressWarnings("unchecked")
+    public static void aplicarTodas(Map<String, Object> documento, List<Map<String, Object>> operacoes, IndicesUsuario indices) {
+        int inicio = 0;
+        while (inicio < operacoes.size()) {
+            Map<String, Object> operacao = operacoes.get(inicio);
+            Object colecao = operacao.get("colecao");
+            int fim = inicio + 1;
+            if ("add".equals(operacao.get("op"))) {
+                while (fim < operacoes.size() && "add".equals(operacoes.get(fim).get("op"))
+                        && Objects.equals(colecao, operacoes.get(fim).get("colecao"))) {
+                    fim++;
+                }
+            }
+            if (fim - inicio == 1) {
+                aplicar(documento, operacao, indices);
+                inicio = fim;
+                continue;
+            }
+            List<Object> registros = colecao(documento, (String) colecao);
+            List<Map<String, Object>> novos = new ArrayList<>(fim - inicio);
+            for (Map<String, Object> add : operacoes.subList(inicio, fim)) {
+                novos.add(Registro.tipar((String) colecao, (Map<?, ?>) add.get("registro")));
+            }
+            int posicao = registros.size();
+            registros.addAll(novos);
+            for (Map<String, Object> registro : novos) {
+                String id = Revisoes.idTexto(registro.get("id"));
+                indices.getIds().incluido((String) colecao, registros, id, posicao++);
+                indices.alterado((String) colecao, registros, null, registro);
+            }
+            for (Map<String, Object> add : operacoes.subList(inicio, fim)) {
+                aplicarNoManifesto(documento, add);
+            }
+            inicio = fim;
+        }
+    }
+
+    /**
+     * Aplica uma operação (no formato das linhas do journal) ao documento:
+     *  - add: {"colecao", "registro"} inclui no final
+     *  - upsert: {"colecao", "registro"} substitui o registro de mesmo id, ou inclui no final
+     *  - remove: {"colecao", "id", "rev"} remove pelo id e guarda a remoção em _removidos
+     * A revisão do documento (_revisao) acompanha a maior revisão aplicada e os índices são atualizados.
+     * Os registros incluídos entram tipados (Registro.tipar).
+     * O serviço usa este mesmo método nas alterações em memória, então a reprodução é idêntica
+     */
+    public static void aplicar(Map<String, Object> documento, Map<String, Object> operacao, IndicesUsuario indices) {
+        String colecao = (String) operacao.get("colecao");
+        aplicarNaColecao(colecao, colecao(documento, colecao), operacao, indices);
+        aplicarNoManifesto(documento, operacao);
+    }
+
+    /**
+     * Parte de aplicar que altera a lista de registros da coleção (e os índices)
+     */
+    @SuppressWarnings("unchecked")
+    public static void aplicarNaColecao(String colecao, List<Object> registros, Map<String, Object> operacao, IndicesUsuario indices) {
+        String op = (String) operacao.get("op");
+        IndiceIds ids = indices.getIds();
+        switch (op) {
+            case "add": {
+                Map<String, Object> registro = Registro.tipar(colecao, (Map<?, ?>) operacao.get("registro"));
+                registros.add(registro);
+                ids.incluido(colecao, registros, Revisoes.idTexto(registro.get("id")), registros.size() - 1);
+                indices.alterado(colecao, registros, null, registro);
+                break;
+            }
+            case "upsert": {
+                Map<String, Object> registro = Registro.tipar(colecao, (Map<?, ?>) operacao.get("registro"));
+                String id = Revisoes.idTexto(registro.get("id"));
+                int posicao = ids.posicao(colecao, registros, id);
+                Map<?, ?> antigo = null;
+                if (posicao >= 0) {
+                    antigo = (Map<?, ?>) registros.set(posicao, registro);
+                } else {
+                    registros.add(registro);
+                    ids.incluido(colecao, registros, id, registros.size() - 1);
+                }
+                indices.alterado(colecao, registros, antigo, registro);
+                break;
+            }
+            case "remove": {
+                String id = Revisoes.idTexto(operacao.get("id"));
+                int posicao = ids.posicao(colecao, registros, id);
+                if (posicao >= 0) {
+                    Map<?, ?> antigo = (Map<?, ?>) registros.remove(posicao);
+                    ids.removido(colecao, registros, id, posicao);
+                    indices.alterado(colecao, registros, antigo, null);
+                }
+                break;
+            }
+            default:
+                logger.warning("Operação desconhecida no journal: " + op);
+        }
+    }
+
+    /**
+     * Parte de aplicar que altera o manifesto: _revisao e _removidos. Não depende dos registros da coleção
+     */
+    public static void aplicarNoManifesto(Map<String, Object> documento, Map<String, Object> operacao) {
+        String colecao = (String) operacao.get("colecao");
+        switch (String.valueOf(operacao.get("op"))) {
+            case "add":
+            case "upsert": {
+                Map<?, ?> registro = (Map<?, ?>) operacao.get("registro");
+                Revisoes.limparRemocao(documento, colecao, Revisoes.idTexto(registro.get("id")));
+                Revisoes.avancar(documento, Revisoes.doRegistro(registro));
+                break;
+            }
+            case "remove": {
+                long rev = ((Number) operacao.get("rev")).longValue();
+                Revisoes.registrarRemocao(documento, colecao, Revisoes.idTexto(operacao.get("id")), rev);
+                Revisoes.avancar(documento, rev);
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Resultado de um anexo: tamanho do journal e confirmação de durabilidade (ver DurableFileWriter)
+     */
+    public static final class Anexo {
+        private final long tamanho;
+        private final CompletableFuture<Void> confirmacao;
+
+        Anexo(long tamanho, CompletableFuture<Void> confirmacao) {
+            this.tamanho = tamanho;
+            this.confirmacao = confirmacao;
+        }
+
+        public long getTamanho() { return tamanho; }
+
+        public CompletableFuture<Void> getConfirmacao() { return confirmacao; }
+    }
+
+    /**
+     * Anexa registros de inclusão ao journal do usuário.
+     * A confirmação deve ser aguardada pelo chamador depois de liberar o lock do usuário
+     */
+    public Anexo anexar(String userId, String colecao, List<Map<String, Object>> registros) throws IOException {
+        List<Map<String, Object>> operacoes = new ArrayList<>();
+        for (Map<String, Object> registro : registros) {
+            Map<String, Object> operacao = new LinkedHashMap<>();
+            operacao.put("op", "add");
+            operacao.put("colecao", colecao);
+            operacao.put("registro", registro);
+            operacoes.add(operacao);
+        }
+        return anexarOperacoes(userId, operacoes);
+    }
+
+    /**
+     * Anexa operações (ver aplicar) ao journal do usuário, numeradas em sequência, em uma única escrita
+     */
+    public Anexo anexarOperacoes(String userId, List<Map<String, Object>> operacoes) throws IOException {
+        Estado estado = estados.computeIfAbsent(userId, k -> new Estado());
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long seq = estado.ultimoSeq;
+        for (Map<String, Object> operacao : operacoes) {
+            Map<String, Object> linha = new LinkedHashMap<>();
+            linha.put("seq", ++seq);
+            linha.putAll(operacao);
+            buffer.write(objectMapper.writeValueAsBytes(linha));
+            buffer.write('\n');
+        }
+        layout.garantirDiretorio(userId);
+        CompletableFuture<Void> confirmacao = writer.anexarSemEsperar(getJournalFile(userId).toPath(), buffer.toByteArray());
+        for (Map<String, Object> operacao : operacoes) {
+            estado.colecoes.add((String) operacao.get("colecao"));
+        }
+        estado.ultimoSeq = seq;
+        estado.tamanho += buffer.size();
+        return new Anexo(estado.tamanho, confirmacao);
+    }
+
+    /**
+     * Indica se há registros no journal ainda não incorporados ao snapshot
+     */
+    public boolean existe(String userId) {
+        return getJournalFile(userId).exists();
+    }
+
+    public long ultimoSeq(String userId) {
+        Estado estado = estados.get(userId);
+        return estado != null ? estado.ultimoSeq : 0;
+    }
+
+    /**
+     * Coleções com operações no journal desde o último snapshot
+     */
+    public Set<String> colecoesPendentes(String userId) {
+        Estado estado = estados.get(userId);
+        return estado != null ? Set.copyOf(estado.colecoes) : Set.of();
+    }
+
+    /**
+     * Descarta o journal depois que um snapshot com ultimoSeq foi gravado
+     */
+    public void reiniciar(String userId) throws IOException {
+        Files.deleteIfExists(getJournalFile(userId).toPath());
+        Estado estado = estados.get(userId);
+        if (estado != null) {
+            estado.tamanho = 0;
+            estado.colecoes.clear();
+        }
+    }
+
+    /**
+     * Operações posteriores ao snapshot sem alterar o journal nem o estado mantido (leitura de uma coleção,
+     * varreduras). Para no primeiro registro incompleto
+     * @param colecao apenas as operações desta coleção, ou null para todas
+     */
+    public List<Map<String, Object>> lerPendentes(String userId, long seqSnapshot, String colecao) throws IOException {
+        File file = getJournalFile(userId);
+        if (!file.exists()) {
+            return List.of();
+        }
+        List<Map<String, Object>> pendentes = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String linha;
+            while ((linha = reader.readLine()) != null) {
+                Map<String, Object> registro;
+                try {
+                    registro = objectMapper.readValue(linha, new TypeReference<Map<String, Object>>() {});
+                } catch (IOException e) {
+                    break;
+                }
+                if (((Number) registro.get("seq")).longValue() > seqSnapshot
+                        && (colecao == null || colecao.equals(registro.get("colecao")))) {
+                    pendentes.add(registro);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Journal descartado por uma compactação concorrente: nada pendente
+            return List.of();
+        }
+        return pendentes;
+    }
+
+    private static int indexOf(byte[] dados, byte valor, int inicio) {
+        for (int i = inicio; i < dados.length; i++) {
+            if (dados[i] == valor) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,56 @@
+package backend.storage;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versões em memória do documento e de cada coleção dos usuários, usadas como ETag.
+ * Não dependem do cache nem do disco: uma requisição condicional é respondida sem carregar nada.
+ *
+ * Os contadores recomeçam a cada inicialização; a época aleatória na ETag garante que uma ETag
+ * de uma execução anterior nunca coincida com a atual.
+ */
+public class Versoes {
+    private final String epoca = Long.toHexString(ThreadLocalRandom.current().nextLong() & 0xffffffffL);
+    private final Map<String, Versao> porUsuario = new ConcurrentHashMap<>();
+
+    private static final class Versao {
+        final AtomicLong documento = new AtomicLong();
+        final Map<String, AtomicLong> colecoes = new ConcurrentHashMap<>();
+    }
+
+    private Versao de(String userId) {
+        return porUsuario.computeIfAbsent(userId, k -> new Versao());
+    }
+
+    /**
+     * Registra uma alteração do documento e das coleções afetadas.
+     * Deve ser chamado depois que a alteração ficou visível, para a ETag nunca ficar à frente do conteúdo
+     */
+    public void incrementar(String userId, Collection<String> colecoes) {
+        Versao versao = de(userId);
+        for (String colecao : colecoes) {
+            versao.colecoes.computeIfAbsent(colecao, k -> new AtomicLong()).incrementAndGet();
+        }
+        versao.documento.incrementAndGet();
+    }
+
+    /**
+     * ETag do documento (colecao null) ou de uma coleção, com aspas
+     */
+    public String etag(String userId, String colecao) {
+        Versao versao = de(userId);
+        long numero;
+        if (colecao == null) {
+            numero = versao.documento.get();
+        } else {
+            AtomicLong daColecao = versao.colecoes.get(colecao);
+            numero = daColecao != null ? daColecao.get() : 0;
+        }
+        return "\"" + epoca + "-" + Integer.toHexString(userId.hashCode()) + "-"
+            + (colecao != null ? colecao + "-" : "") + numero + "\"";
+    }
+}
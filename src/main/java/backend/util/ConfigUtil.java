@@ -0,0 +1,36 @@
+package backend.util;
+
+import java.util.Locale;
+import java.util.logging.Logger;
+
+public class ConfigUtil {
+    private static final Logger logger = Logger.getLogger(ConfigUtil.class.getName());
+
+    /**
+     * Lê uma configuração de System property (-Dscartech.x.y) ou variável de ambiente (SCARTECH_X_Y)
+     */
+    public static String getString(String chave, String padrao) {
+        String valor = System.getProperty(chave);
+        if (valor == null) {
+            valor = System.getenv(chave.toUpperCase(Locale.ROOT).replace('.', '_'));
+        }
+        return valor != null && !valor.trim().isEmpty() ? valor.trim() : padrao;
+    }
+
+    public static int getInt(String chave, int padrao) {
+        return (int) getLong(chave, padrao);
+    }
+
+    public static long getLong(String chave, long padrao) {
+        String valor = getString(chave, null);
+        if (valor == null) {
+            return padrao;
+        }
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            logger.warning("Configuração inválida para " + chave + ": " + valor + " (usando " + padrao + ")");
+            return padrao;
+        }
+    }
+}
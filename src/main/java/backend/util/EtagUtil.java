@@ -0,0 +1,40 @@
+package backend.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * GETs condicionais (ETag / If-None-Match)
+ */
+public class EtagUtil {
+
+    /**
+     * Indica se o If-None-Match enviado pelo cliente contém a ETag atual (aceita lista, "*" e ETags fracas W/)
+     */
+    public static boolean corresponde(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidata : ifNoneMatch.split(",")) {
+            String valor = candidata.trim();
+            if (valor.startsWith("W/")) {
+                valor = valor.substring(2);
+            }
+            if (valor.equals("*") || valor.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * ETag de uma representação filtrada/paginada: mesma versão, mas distinta para cada conjunto de parâmetros
+     */
+    public static String comParametros(String etag, Map<String, String> params) {
+        if (params == null || params.isEmpty()) {
+            return etag;
+        }
+        String hash = Integer.toHexString(new TreeMap<>(params).toString().hashCode());
+        return etag.substring(0, etag.length() - 1) + "-q" + hash + "\"";
+    }
+}
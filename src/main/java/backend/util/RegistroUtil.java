@@ -0,0 +1,59 @@
+package backend.util;
+
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Leitura tolerante de campos dos registros livres (ordens, vendas, produtos) enviados pelo frontend
+ */
+public class RegistroUtil {
+
+    // Campos de data aceitos, em ordem de preferência
+    public static final List<String> CAMPOS_DATA = List.of("data", "dataEntrada", "createdAt", "criadoEm", "dataEmissao");
+    public static final List<String> CAMPOS_CLIENTE = List.of("nomeCliente", "cliente", "documentoCliente", "telefoneCliente");
+    private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+
+    public static String texto(Map<?, ?> registro, String campo) {
+        Object valor = registro.get(campo);
+        return valor != null ? valor.toString() : null;
+    }
+
+    /**
+     * Id do registro como texto (o frontend usa tanto números quanto strings)
+     */
+    public static String id(Map<?, ?> registro) {
+        return texto(registro, "id");
+    }
+
+    /**
+     * Data do registro (yyyy-MM-dd no início do texto), ou null se não houver data reconhecível
+     */
+    public static LocalDate data(Map<?, ?> registro) {
+        for (String campo : CAMPOS_DATA) {
+            String valor = texto(registro, campo);
+            if (valor != null && valor.length() >= 10) {
+                try {
+                    return LocalDate.parse(valor.substring(0, 10));
+                } catch (RuntimeException e) {
+                    // tenta o próximo campo
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Texto em minúsculas e sem acentos, para comparações
+     */
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String semAcento = ACENTOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return semAcento.toLowerCase(Locale.ROOT);
+    }
+}
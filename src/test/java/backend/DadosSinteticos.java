@@ -0,0 +1,95 @@
+package backend;
+
+import backend.storage.Revisoes;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registros com a forma dos dados reais de um tenant (ordens, vendas, produtos), determinísticos pela posição.
+ * Usados nos testes e benchmarks
+ */
+public final class DadosSinteticos {
+    private static final String[] MODELOS = {"Galaxy A54", "iPhone 13", "Moto G84", "Redmi Note 12", "iPhone 11", "Galaxy S23"};
+    private static final String[] DEFEITOS = {"Tela quebrada", "Não carrega", "Bateria viciada", "Sem áudio", "Câmera embaçada"};
+    private static final String[] STATUS_ORDEM = {"Aberta", "Em andamento", "Aguardando peça", "Concluída", "Entregue"};
+    private static final String[] STATUS_VENDA = {"Pago", "Pendente", "Cancelado"};
+    private static final String[] PAGAMENTOS = {"Pix", "Dinheiro", "Cartão de crédito", "Cartão de débito"};
+    private static final String[] CATEGORIAS = {"Películas", "Capas", "Carregadores", "Fones", "Peças"};
+
+    private DadosSinteticos() {
+    }
+
+    public static Map<String, Object> ordem(int i) {
+        Map<String, Object> ordem = new LinkedHashMap<>();
+        ordem.put("id", 1_700_000_000_000L + i);
+        ordem.put("nomeCliente", "Cliente " + (i % 800));
+        ordem.put("documentoCliente", String.format("%011d", 12_345_678_900L + i % 800));
+        ordem.put("telefoneCliente", String.format("(11) 9%04d-%04d", i % 10_000, (i * 7) % 10_000));
+        ordem.put("modeloAparelho", MODELOS[i % MODELOS.length]);
+        ordem.put("defeitoApresentado", DEFEITOS[i % DEFEITOS.length]);
+        ordem.put("status", STATUS_ORDEM[i % STATUS_ORDEM.length]);
+        ordem.put("dataEntrada", data(i));
+        ordem.put("observacao", i % 3 == 0 ? "Cliente pediu orçamento antes do conserto" : "");
+        ordem.put("valorConserto", 80 + (i % 40) * 12.5);
+        ordem.put(Revisoes.CAMPO_REGISTRO, (long) i + 1);
+        return ordem;
+    }
+
+    public static Map<String, Object> venda(int i) {
+        Map<String, Object> venda = new LinkedHashMap<>();
+        venda.put("id", 1_710_000_000_000L + i);
+        venda.put("produto", CATEGORIAS[i % CATEGORIAS.length] + " modelo " + (i % 60));
+        venda.put("cliente", "Cliente " + (i % 800));
+        venda.put("status", STATUS_VENDA[i % STATUS_VENDA.length]);
+        venda.put("formaPagamento", PAGAMENTOS[i % PAGAMENTOS.length]);
+        venda.put("data", data(i));
+        venda.put("quantidade", 1 + i % 3);
+        venda.put("valor", 19.9 + (i % 25) * 5);
+        venda.put(Revisoes.CAMPO_REGISTRO, (long) i + 1);
+        return venda;
+    }
+
+    public static Map<String, Object> produto(int i) {
+        Map<String, Object> produto = new LinkedHashMap<>();
+        produto.put("id", 1_720_000_000_000L + i);
+        produto.put("nome", CATEGORIAS[i % CATEGORIAS.length] + " modelo " + i);
+        produto.put("descricao", "Compatível com " + MODELOS[i % MODELOS.length]);
+        produto.put("categoria", CATEGORIAS[i % CATEGORIAS.length]);
+        produto.put("quantidade", i % 50);
+        produto.put("preco", 9.9 + (i % 30) * 3);
+        produto.put(Revisoes.CAMPO_REGISTRO, (long) i + 1);
+        return produto;
+    }
+
+    /**
+     * Documento de um tenant com as quantidades informadas de cada coleção
+     */
+    public static Map<String, Object> documento(int ordens, int vendas, int produtos) {
+        Map<String, Object> documento = new LinkedHashMap<>();
+        documento.put("nomeLoja", "Assistência Sintética");
+        documento.put(Revisoes.CAMPO_DOCUMENTO, (long) Math.max(ordens, Math.max(vendas, produtos)));
+        List<Object> lista = new ArrayList<>(ordens);
+        for (int i = 0; i < ordens; i++) {
+            lista.add(ordem(i));
+        }
+        documento.put("ordens", lista);
+        lista = new ArrayList<>(vendas);
+        for (int i = 0; i < vendas; i++) {
+            lista.add(venda(i));
+        }
+        documento.put("vendas", lista);
+        lista = new ArrayList<>(produtos);
+        for (int i = 0; i < produtos; i++) {
+            lista.add(produto(i));
+        }
+        documento.put("produtos", lista);
+        return documento;
+    }
+
+    private static String data(int i) {
+        return String.format("2024-%02d-%02d", 1 + i % 12, 1 + i % 28);
+    }
+}
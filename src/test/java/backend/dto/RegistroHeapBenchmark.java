@@ -0,0 +1,133 @@
+package backend.dto;
+
+import backend.DadosSinteticos;
+import backend.storage.StorageCodec;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Heap retido por 100k registros lidos do disco, como LinkedHashMap (antes) e tipados (Ordem, Venda, Produto),
+ * e o tempo de serializar e de somar os valores das ordens nas duas formas
+ *
+ * mvn -Pbenchmark test -Dtest=RegistroHeapBenchmark [-Dbenchmark.registros=100000]
+ */
+class RegistroHeapBenchmark {
+    private static final int REGISTROS = Integer.getInteger("benchmark.registros", 100_000);
+    private static final int REPETICOES = 20;
+    private static final ObjectMapper mapper = StorageCodec.JSON.getMapper();
+    private static final TypeReference<List<Map<String, Object>>> TIPO = new TypeReference<>() {};
+
+    @Test
+    void compararHeapPorColecao() throws IOException {
+        System.out.printf("%-9s %16s %16s %8s%n", "colecao", "mapas (bytes)", "tipados (bytes)", "tipados");
+        medirHeap(Ordem.COLECAO, DadosSinteticos::ordem);
+        medirHeap(Venda.COLECAO, DadosSinteticos::venda);
+        medirHeap(Produto.COLECAO, DadosSinteticos::produto);
+    }
+
+    @Test
+    void compararSerializacaoESomaDasOrdens() throws IOException {
+        List<Map<String, Object>> mapas = mapper.readValue(gerar(DadosSinteticos::ordem), TIPO);
+        List<Object> tipados = Registro.tiparTodos(Ordem.COLECAO, mapas);
+
+        long somaMapas = 0;
+        long somaTipados = 0;
+        for (int i = 0; i < REPETICOES; i++) {
+            somaMapas = somarMapas(mapas);
+            somaTipados = somarTipados(tipados);
+            mapper.writeValueAsBytes(mapas);
+            mapper.writeValueAsBytes(tipados);
+        }
+        assertEquals(somaMapas, somaTipados);
+
+        long inicio = System.nanoTime();
+        for (int i = 0; i < REPETICOES; i++) {
+            somarMapas(mapas);
+        }
+        double somaMapasMs = ms(inicio);
+        inicio = System.nanoTime();
+        for (int i = 0; i < REPETICOES; i++) {
+            somarTipados(tipados);
+        }
+        double somaTipadosMs = ms(inicio);
+        inicio = System.nanoTime();
+        for (int i = 0; i < REPETICOES; i++) {
+            mapper.writeValueAsBytes(mapas);
+        }
+        double serializarMapasMs = ms(inicio);
+        inicio = System.nanoTime();
+        for (int i = 0; i < REPETICOES; i++) {
+            mapper.writeValueAsBytes(tipados);
+        }
+        double serializarTipadosMs = ms(inicio);
+
+        System.out.printf("%-22s %10s %10s%n", REGISTROS + " ordens", "mapas", "tipados");
+        System.out.printf("%-22s %8.2f ms %7.2f ms%n", "somar valorConserto", somaMapasMs, somaTipadosMs);
+        System.out.printf("%-22s %8.2f ms %7.2f ms%n", "serializar", serializarMapasMs, serializarTipadosMs);
+    }
+
+    /**
+     * Heap retido pela lista lida do JSON e depois só pela mesma lista tipada (mapas já descartados)
+     */
+    private static void medirHeap(String colecao, IntFunction<Map<String, Object>> gerador) throws IOException {
+        byte[] json = gerar(gerador);
+
+        long antes = heapUsado();
+        List<Map<String, Object>> mapas = mapper.readValue(json, TIPO);
+        long heapMapas = heapUsado() - antes;
+
+        List<Object> tipados = Registro.tiparTodos(colecao, mapas);
+        mapas = null;
+        long heapTipados = heapUsado() - antes;
+
+        assertEquals(REGISTROS, tipados.size());
+        System.out.printf("%-9s %16d %16d %7.0f%%%n", colecao, heapMapas, heapTipados, 100.0 * heapTipados / heapMapas);
+    }
+
+    private static byte[] gerar(IntFunction<Map<String, Object>> gerador) throws IOException {
+        List<Map<String, Object>> registros = new ArrayList<>(REGISTROS);
+        for (int i = 0; i < REGISTROS; i++) {
+            registros.add(gerador.apply(i));
+        }
+        return mapper.writeValueAsBytes(registros);
+    }
+
+    private static long somarMapas(List<Map<String, Object>> ordens) {
+        long soma = 0;
+        for (Map<String, Object> ordem : ordens) {
+            long centavos = Registro.centavos(ordem.get("valorConserto"));
+            soma += centavos != Registro.AUSENTE ? centavos : 0;
+        }
+        return soma;
+    }
+
+    private static long somarTipados(List<Object> ordens) {
+        long soma = 0;
+        for (Object ordem : ordens) {
+            long centavos = ((Ordem) ordem).getValorConsertoCentavos();
+            soma += centavos != Registro.AUSENTE ? centavos : 0;
+        }
+        return soma;
+    }
+
+    private static long heapUsado() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double ms(long inicio) {
+        return (System.nanoTime() - inicio) / 1e6 / REPETICOES;
+    }
+}
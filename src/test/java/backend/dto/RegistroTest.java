@@ -0,0 +1,63 @@
+package backend.dto;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Registros tipados devolvem cada valor monetário como chegou: texto continua texto, 150.0 continua decimal
+ */
+class RegistroTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> TIPO = new TypeReference<>() {};
+
+    @Test
+    void jsonVoltaComoChegou() throws IOException {
+        idaEVolta(Ordem.COLECAO, "{\"id\":1,\"nomeCliente\":\"Ana\",\"valorConserto\":\"150.50\",\"valor\":150.0,\"_rev\":3}");
+        idaEVolta(Ordem.COLECAO, "{\"id\":2,\"valorConserto\":150,\"valor\":150.5}");
+        idaEVolta(Ordem.COLECAO, "{\"id\":3,\"valorConserto\":\"R$ 10,00\",\"valor\":0.1}");
+        idaEVolta(Ordem.COLECAO, "{\"id\":4,\"valorConserto\":150.555}");
+        idaEVolta(Venda.COLECAO, "{\"id\":5,\"valor\":\"99.90\",\"quantidade\":2}");
+        idaEVolta(Venda.COLECAO, "{\"id\":6,\"valor\":100.0,\"quantidade\":1}");
+        idaEVolta(Produto.COLECAO, "{\"id\":7,\"preco\":\"12\"}");
+        idaEVolta(Produto.COLECAO, "{\"id\":8,\"preco\":12.0}");
+    }
+
+    @Test
+    void tipoAcompanhaAUltimaGravacao() {
+        Map<String, Object> ordem = Registro.tipar(Ordem.COLECAO, Map.of("id", 1, "valorConserto", "150.50"));
+        assertEquals("150.50", ordem.get("valorConserto"));
+        assertEquals(Registro.AUSENTE, ((Ordem) ordem).getValorConsertoCentavos());
+
+        ordem.put("valorConserto", 150.0);
+        assertEquals(150.0, ordem.get("valorConserto"));
+        assertEquals(15000, ((Ordem) ordem).getValorConsertoCentavos());
+
+        ordem.put("valorConserto", 150);
+        assertEquals(150L, ordem.get("valorConserto"));
+
+        ordem.put("valorConserto", "150");
+        assertEquals("150", ordem.get("valorConserto"));
+        assertEquals(Registro.AUSENTE, ((Ordem) ordem).getValorConsertoCentavos());
+        assertEquals(2, ordem.size());
+    }
+
+    @Test
+    void somasContamValoresEmTexto() {
+        assertEquals(15050, Ordem.centavosConserto(Registro.tipar(Ordem.COLECAO, Map.of("id", 1, "valorConserto", "150.50"))));
+        assertEquals(15050, Ordem.centavosConserto(Registro.tipar(Ordem.COLECAO, Map.of("id", 1, "valorConserto", 150.5))));
+        assertEquals(9990, Venda.centavosValor(Registro.tipar(Venda.COLECAO, Map.of("id", 1, "valor", "99.90"))));
+        assertEquals(9990, Venda.centavosValor(Registro.tipar(Venda.COLECAO, Map.of("id", 1, "valor", 99.9))));
+    }
+
+    private static void idaEVolta(String colecao, String json) throws IOException {
+        Map<String, Object> tipado = Registro.tipar(colecao, mapper.readValue(json, TIPO));
+        assertTrue(tipado instanceof Registro);
+        assertEquals(mapper.readTree(json), mapper.readTree(mapper.writeValueAsString(tipado)), json);
+    }
+}
@@ -0,0 +1,83 @@
+package backend.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Resumo por período da loja: só as vendas e ordens do próprio usuário, cada uma no período da sua data
+ */
+class ResumoPeriodoUsuarioTest {
+    private final UserDataService service = UserDataService.getInstance();
+    private final FaturamentoService faturamento = FaturamentoService.getInstance();
+
+    @BeforeAll
+    static void diretorioPython() {
+        // FaturamentoService exige o diretório dos scripts no diretório de trabalho (target/test-run)
+        new File("python").mkdirs();
+    }
+
+    @Test
+    void totaisVemSoDosDadosDoUsuario() throws Exception {
+        String userId = UUID.randomUUID().toString();
+        String outro = UUID.randomUUID().toString();
+        service.adicionar(userId, "vendas", venda(1, "2026-01-10", "100.00"));
+        service.adicionar(userId, "vendas", venda(2, "2026-02-20", "50.25"));
+        service.adicionar(userId, "ordens", ordem(1, "2026-01-31", "300.00"));
+        service.adicionar(userId, "ordens", ordem(2, "2026-03-01", "80.00"));
+        service.adicionar(userId, "ordens", ordem(3, null, "999.00"));
+        service.adicionar(outro, "vendas", venda(1, "2026-01-10", "7000.00"));
+        service.adicionar(outro, "ordens", ordem(1, "2026-01-15", "7000.00"));
+
+        Map<String, Object> resumo = faturamento.obterResumoPeriodo(userId,
+            LocalDate.parse("2026-01-01"), LocalDate.parse("2026-02-28"), "month");
+
+        assertEquals("usuario", resumo.get("escopo"));
+        assertEquals(150.25, resumo.get("totalVendas"));
+        assertEquals(2L, resumo.get("quantidadeVendas"));
+        assertEquals(300.0, resumo.get("totalConsertos"));
+        assertEquals(1L, resumo.get("quantidadeConsertos"));
+        assertEquals(450.25, resumo.get("totalGeral"));
+
+        List<?> periodos = (List<?>) resumo.get("periodos");
+        assertEquals(2, periodos.size());
+        Map<?, ?> janeiro = (Map<?, ?>) periodos.get(0);
+        assertEquals("2026-01-01", janeiro.get("inicio"));
+        assertEquals("2026-01-31", janeiro.get("fim"));
+        assertEquals(100.0, janeiro.get("totalVendas"));
+        assertEquals(300.0, janeiro.get("totalConsertos"));
+        Map<?, ?> fevereiro = (Map<?, ?>) periodos.get(1);
+        assertEquals(50.25, fevereiro.get("totalVendas"));
+        assertEquals(0.0, fevereiro.get("totalConsertos"));
+    }
+
+    @Test
+    void intervaloInvertidoEhRejeitado() {
+        assertThrows(IllegalArgumentException.class, () -> faturamento.obterResumoPeriodo(UUID.randomUUID().toString(),
+            LocalDate.parse("2026-02-01"), LocalDate.parse("2026-01-01"), "day"));
+    }
+
+    private static Map<String, Object> venda(long id, String data, String valor) {
+        Map<String, Object> venda = new LinkedHashMap<>();
+        venda.put("id", id);
+        venda.put("data", data);
+        venda.put("valor", valor);
+        return venda;
+    }
+
+    private static Map<String, Object> ordem(long id, String dataEntrada, String valorConserto) {
+        Map<String, Object> ordem = new LinkedHashMap<>();
+        ordem.put("id", id);
+        ordem.put("nomeCliente", "Cliente " + id);
+        if (dataEntrada != null) {
+            ordem.put("dataEntrada", dataEntrada);
+        }
+        ordem.put("valorConserto", valorConserto);
+        return ordem;
+    }
+}
@@ -0,0 +1,119 @@
+package backend.service;
+
+import backend.DadosSinteticos;
+import backend.storage.DurableFileWriter;
+import backend.storage.FileUserDataRepository;
+import backend.storage.StorageCodec;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Transmissão do documento de um usuário fora do cache: o snapshot é copiado token a token, então a memória
+ * retida durante a cópia não cresce com o tamanho do documento
+ */
+class TransmissaoDocumentoTest {
+    private static final long MB = 1024 * 1024;
+    // Folga para buffers do parser/gerador e ruído da medição; montar o documento de 16 MB em memória já retém mais
+    private static final long LIMITE_RETIDO = 8 * MB;
+
+    private final UserDataService service = UserDataService.getInstance();
+
+    @Test
+    void memoriaRetidaNaoCresceComODocumento() throws IOException {
+        FileUserDataRepository repositorio = new FileUserDataRepository(new File(UserDataService.DATA_DIR), UserDataService.COLECOES,
+            DurableFileWriter.getInstance(), StorageCodec.configurado(), Long.MAX_VALUE);
+        long bytesPorOrdem = StorageCodec.configurado().getMapper().writerWithDefaultPrettyPrinter()
+            .writeValueAsBytes(DadosSinteticos.ordem(1)).length;
+
+        Map<Long, Long> retidoPorTamanho = new LinkedHashMap<>();
+        for (long tamanho : new long[]{4 * MB, 16 * MB, 64 * MB}) {
+            String userId = UUID.randomUUID().toString();
+            int quantidade = (int) (tamanho / bytesPorOrdem);
+            repositorio.gravar(userId, documento(ordensSobDemanda(quantidade)), UserDataService.COLECOES);
+            try {
+                MedidorSaida saida = new MedidorSaida(tamanho / 2);
+                long antes = heapUsado();
+                service.abrirTransmissao(userId).transmitir(saida);
+
+                assertTrue(saida.bytes >= tamanho / 2, "transmitidos " + saida.bytes + " bytes");
+                assertTrue(saida.amostra > 0, "amostra não coletada");
+                retidoPorTamanho.put(tamanho / MB, Math.max(0, saida.amostra - antes));
+            } finally {
+                repositorio.gravar(userId, documento(List.of()), UserDataService.COLECOES);
+            }
+        }
+
+        for (Map.Entry<Long, Long> e : retidoPorTamanho.entrySet()) {
+            assertTrue(e.getValue() < LIMITE_RETIDO,
+                "documento de " + e.getKey() + " MB reteve " + e.getValue() / MB + " MB durante a transmissão: " + retidoPorTamanho);
+        }
+    }
+
+    private static Map<String, Object> documento(List<Object> ordens) {
+        Map<String, Object> documento = new LinkedHashMap<>();
+        documento.put("nomeLoja", "Assistência Sintética");
+        documento.put("ordens", ordens);
+        documento.put("vendas", List.of());
+        documento.put("produtos", List.of());
+        return documento;
+    }
+
+    /**
+     * Registros gerados na leitura: gravar o snapshot não exige o documento inteiro em memória no teste
+     */
+    private static List<Object> ordensSobDemanda(int quantidade) {
+        return new AbstractList<>() {
+            @Override
+            public Object get(int i) {
+                return DadosSinteticos.ordem(i);
+            }
+
+            @Override
+            public int size() {
+                return quantidade;
+            }
+        };
+    }
+
+    private static long heapUsado() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Descarta a saída, contando os bytes, e mede o heap usado quando a transmissão passa do ponto informado
+     */
+    private static final class MedidorSaida extends OutputStream {
+        private final long pontoAmostra;
+        private long bytes;
+        private long amostra;
+
+        MedidorSaida(long pontoAmostra) {
+            this.pontoAmostra = pontoAmostra;
+        }
+
+        @Override
+        public void write(int b) {
+            contar(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            contar(len);
+        }
+
+        private void contar(int len) {
+            bytes += len;
+            if (amostra == 0 && bytes >= pontoAmostra) {
+                amostra = heapUsado();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package backend.service;
+
+import backend.storage.DurableFileWriter;
+import backend.storage.FileUserDataRepository;
+import backend.storage.Revisoes;
+import backend.storage.StorageCodec;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Inclusões concorrentes: nenhuma se perde nem aparece duas vezes, para um usuário e para vários intercalados,
+ * e cada usuário recebe revisões únicas e sem buracos (1..N), no cache e no que foi gravado
+ */
+class UserDataServiceConcorrenciaTest {
+    private static final int THREADS = 16;
+
+    private final UserDataService service = UserDataService.getInstance();
+
+    @Test
+    void muitasInclusoesDoMesmoUsuario() throws Exception {
+        String userId = UUID.randomUUID().toString();
+        incluirEmParalelo(List.of(userId), 2_000);
+        verificar(userId, 2_000);
+    }
+
+    @Test
+    void inclusoesIntercaladasDeVariosUsuarios() throws Exception {
+        List<String> usuarios = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            usuarios.add(UUID.randomUUID().toString());
+        }
+        incluirEmParalelo(usuarios, 400);
+        for (String userId : usuarios) {
+            verificar(userId, 400);
+        }
+    }
+
+    /**
+     * Dispara porUsuario inclusões em cada usuário, alternando os usuários entre as tarefas.
+     * O id do registro é a posição da inclusão no usuário (0..porUsuario-1)
+     */
+    private void incluirEmParalelo(List<String> usuarios, int porUsuario) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> tarefas = new ArrayList<>();
+        try {
+            for (int i = 0; i < porUsuario * usuarios.size(); i++) {
+                String userId = usuarios.get(i % usuarios.size());
+                long id = i / usuarios.size();
+                tarefas.add(executor.submit(() -> {
+                    largada.await();
+                    Map<String, Object> ordem = new LinkedHashMap<>();
+                    ordem.put("id", id);
+                    ordem.put("cliente", "Cliente " + id);
+                    service.adicionar(userId, "ordens", ordem);
+                    return null;
+                }));
+            }
+            largada.countDown();
+            for (Future<?> tarefa : tarefas) {
+                tarefa.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void verificar(String userId, int esperado) throws Exception {
+        List<?> ordens = service.listar(userId, "ordens");
+        assertEquals(esperado, ordens.size());
+        TreeSet<Long> ids = new TreeSet<>();
+        for (Object ordem : ordens) {
+            assertTrue(ids.add(((Number) ((Map<?, ?>) ordem).get("id")).longValue()), "registro repetido");
+        }
+        assertEquals(esperado - 1, ids.last());
+        assertEquals(revisoesEsperadas(esperado), revisoes(ordens), "revisões de " + userId);
+        assertEquals(esperado, Revisoes.doDocumento(service.carregar(userId)));
+
+        // O que foi gravado (snapshot + journal) tem as mesmas revisões
+        FileUserDataRepository gravado = new FileUserDataRepository(new File(UserDataService.DATA_DIR), UserDataService.COLECOES,
+            DurableFileWriter.getInstance(), StorageCodec.configurado(), Long.MAX_VALUE);
+        assertEquals(revisoesEsperadas(esperado), revisoes(gravado.lerColecaoSomenteLeitura(userId, "ordens")),
+            "revisões gravadas de " + userId);
+    }
+
+    private static SortedSet<Long> revisoes(List<?> registros) {
+        SortedSet<Long> revisoes = new TreeSet<>();
+        for (Object registro : registros) {
+            assertTrue(revisoes.add(Revisoes.doRegistro((Map<?, ?>) registro)), "revisão repetida");
+        }
+        return revisoes;
+    }
+
+    private static SortedSet<Long> revisoesEsperadas(int quantidade) {
+        SortedSet<Long> esperadas = new TreeSet<>();
+        for (long rev = 1; rev <= quantidade; rev++) {
+            esperadas.add(rev);
+        }
+        return esperadas;
+    }
+}
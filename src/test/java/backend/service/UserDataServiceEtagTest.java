@@ -0,0 +1,57 @@
+package backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A ETag do documento e da coleção só avança quando algo foi gravado: PATCH/DELETE de id inexistente,
+ * lote sem itens válidos e sync sem alterações não a mudam
+ */
+class UserDataServiceEtagTest {
+    private final UserDataService service = UserDataService.getInstance();
+
+    @Test
+    void alteracoesSemEfeitoMantemAEtag() throws Exception {
+        String userId = UUID.randomUUID().toString();
+        service.adicionar(userId, "ordens", ordem(1));
+        String documento = service.etag(userId, null);
+        String ordens = service.etag(userId, "ordens");
+
+        assertNull(service.atualizarRegistro(userId, "ordens", "99", new LinkedHashMap<>(Map.of("status", "pronto"))));
+        assertFalse(service.removerRegistro(userId, "ordens", "99"));
+        Map<String, Object> lote = service.adicionarLote(userId, "ordens",
+            new ByteArrayInputStream("[{\"id\":1},{\"id\":1}]".getBytes(StandardCharsets.UTF_8)), "application/json");
+        assertEquals(0L, lote.get("criados"));
+        service.sincronizarDelta(userId, new LinkedHashMap<>(Map.of("revisao", 1)));
+
+        assertEquals(documento, service.etag(userId, null));
+        assertEquals(ordens, service.etag(userId, "ordens"));
+    }
+
+    @Test
+    void alteracaoAplicadaAvancaAEtag() throws Exception {
+        String userId = UUID.randomUUID().toString();
+        service.adicionar(userId, "ordens", ordem(1));
+        String documento = service.etag(userId, null);
+        String ordens = service.etag(userId, "ordens");
+        String vendas = service.etag(userId, "vendas");
+
+        assertNotNull(service.atualizarRegistro(userId, "ordens", "1", new LinkedHashMap<>(Map.of("status", "pronto"))));
+
+        assertNotEquals(documento, service.etag(userId, null));
+        assertNotEquals(ordens, service.etag(userId, "ordens"));
+        assertEquals(vendas, service.etag(userId, "vendas"));
+    }
+
+    private static Map<String, Object> ordem(long id) {
+        Map<String, Object> ordem = new LinkedHashMap<>();
+        ordem.put("id", id);
+        ordem.put("nomeCliente", "Cliente " + id);
+        return ordem;
+    }
+}
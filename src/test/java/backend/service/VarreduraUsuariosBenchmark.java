@@ -0,0 +1,122 @@
+package backend.service;
+
+import backend.DadosSinteticos;
+import backend.storage.DurableFileWriter;
+import backend.storage.FileUserDataRepository;
+import backend.storage.IndicesOrdens;
+import backend.storage.StorageCodec;
+import backend.storage.UserDataRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Varredura dos totais de consertos em todos os tenants: VarreduraUsuarios com leitura seletiva
+ * (lerCamposSomenteLeitura) contra o laço anterior (parallelStream por fragmento, coleção inteira
+ * desserializada com lerColecaoSomenteLeitura). Os totais precisam ser idênticos.
+ *
+ * mvn -Pbenchmark test -Dtest=VarreduraUsuariosBenchmark [-Dbenchmark.usuarios=10000 -Dbenchmark.ordens=30]
+ */
+class VarreduraUsuariosBenchmark {
+    private static final int USUARIOS = Integer.getInteger("benchmark.usuarios", 10_000);
+    private static final int ORDENS = Integer.getInteger("benchmark.ordens", 30);
+    private static final int REPETICOES = 5;
+
+    @TempDir
+    File diretorio;
+
+    @Test
+    void compararComOLacoAnterior() throws IOException {
+        UserDataRepository repositorio = new FileUserDataRepository(diretorio, UserDataService.COLECOES,
+            new DurableFileWriter(DurableFileWriter.Durabilidade.SO, 1), StorageCodec.configurado(), Long.MAX_VALUE);
+        for (int u = 0; u < USUARIOS; u++) {
+            Map<String, Object> documento = DadosSinteticos.documento(0, 0, 0);
+            List<Object> ordens = new ArrayList<>(ORDENS);
+            for (int i = 0; i < ORDENS; i++) {
+                ordens.add(DadosSinteticos.ordem(u * ORDENS + i));
+            }
+            documento.put("ordens", ordens);
+            repositorio.gravar(String.format("tenant-%05d", u), documento, UserDataService.COLECOES);
+        }
+        VarreduraUsuarios varredura = new VarreduraUsuarios(2 * Runtime.getRuntime().availableProcessors());
+
+        Map<String, long[]> anterior = null;
+        Map<String, long[]> atual = null;
+        long melhorAnterior = Long.MAX_VALUE;
+        long melhorAtual = Long.MAX_VALUE;
+        long alocadoAnterior = 0;
+        long alocadoAtual = 0;
+        for (int r = 0; r < REPETICOES; r++) {
+            long alocado = alocadoTotal();
+            long inicio = System.nanoTime();
+            anterior = lacoAnterior(repositorio);
+            melhorAnterior = Math.min(melhorAnterior, System.nanoTime() - inicio);
+            alocadoAnterior = alocadoTotal() - alocado;
+
+            alocado = alocadoTotal();
+            inicio = System.nanoTime();
+            atual = varreduraSeletiva(repositorio, varredura);
+            melhorAtual = Math.min(melhorAtual, System.nanoTime() - inicio);
+            alocadoAtual = alocadoTotal() - alocado;
+        }
+        assertEquals(comparavel(anterior), comparavel(atual));
+
+        System.out.printf("%d tenants x %d ordens, melhor de %d%n", USUARIOS, ORDENS, REPETICOES);
+        System.out.printf("%-26s %8d ms %8d MB alocados%n", "laço anterior", melhorAnterior / 1_000_000, alocadoAnterior >> 20);
+        System.out.printf("%-26s %8d ms %8d MB alocados%n", "VarreduraUsuarios", melhorAtual / 1_000_000, alocadoAtual >> 20);
+    }
+
+    private static Map<String, long[]> lacoAnterior(UserDataRepository repositorio) throws IOException {
+        Map<String, long[]> totais = new HashMap<>();
+        repositorio.listarUsuariosPorFragmento().parallelStream().forEach(fragmento -> {
+            for (String userId : fragmento) {
+                try {
+                    somar(totais, AgregadoConsertos.porDia(repositorio.lerColecaoSomenteLeitura(userId, IndicesOrdens.COLECAO)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        return totais;
+    }
+
+    private static Map<String, long[]> varreduraSeletiva(UserDataRepository repositorio, VarreduraUsuarios varredura) throws IOException {
+        Map<String, long[]> totais = new HashMap<>();
+        VarreduraUsuarios.Resultado resultado = varredura.executar(repositorio.listarUsuarios(), userId ->
+            somar(totais, AgregadoConsertos.porDia(
+                repositorio.lerCamposSomenteLeitura(userId, IndicesOrdens.COLECAO, AgregadoConsertos.CAMPOS))));
+        assertEquals(0, resultado.getQuantidadeFalhas());
+        return totais;
+    }
+
+    private static void somar(Map<String, long[]> totais, Map<String, long[]> doUsuario) {
+        synchronized (totais) {
+            AgregadoConsertos.somar(totais, doUsuario, 1);
+        }
+    }
+
+    private static Map<String, List<Long>> comparavel(Map<String, long[]> totais) {
+        Map<String, List<Long>> ordenado = new TreeMap<>();
+        totais.forEach((dia, total) -> ordenado.put(dia, List.of(total[0], total[1])));
+        return ordenado;
+    }
+
+    /**
+     * Bytes alocados até agora por todas as threads vivas (as da varredura e as do pool comum)
+     */
+    private static long alocadoTotal() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long alocado : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, alocado);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,11 @@
+package backend.storage;
+
+import java.io.File;
+
+class FileUserDataRepositoryTest extends UserDataRepositoryConformanceTest {
+
+    @Override
+    protected UserDataRepository criar(File diretorio) {
+        return new FileUserDataRepository(diretorio, COLECOES, DurableFileWriter.getInstance(), StorageCodec.configurado(), 256 * 1024L);
+    }
+}
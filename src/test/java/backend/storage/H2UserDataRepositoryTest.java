@@ -0,0 +1,11 @@
+package backend.storage;
+
+import java.io.File;
+
+class H2UserDataRepositoryTest extends UserDataRepositoryConformanceTest {
+
+    @Override
+    protected UserDataRepository criar(File diretorio) {
+        return new H2UserDataRepository("jdbc:h2:file:" + new File(diretorio, "user_data").getAbsolutePath(), COLECOES);
+    }
+}
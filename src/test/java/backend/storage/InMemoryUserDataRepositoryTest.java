@@ -0,0 +1,11 @@
+package backend.storage;
+
+import java.io.File;
+
+class InMemoryUserDataRepositoryTest extends UserDataRepositoryConformanceTest {
+
+    @Override
+    protected UserDataRepository criar(File diretorio) {
+        return new InMemoryUserDataRepository(COLECOES);
+    }
+}
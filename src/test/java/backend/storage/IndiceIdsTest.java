@@ -0,0 +1,71 @@
+package backend.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Índice de ids com registros repetidos: sempre aponta o primeiro com o id, também depois de remoções
+ */
+class IndiceIdsTest {
+
+    @Test
+    void remocaoDoPrimeiroRepetidoIndexaOProximo() {
+        List<Object> registros = new ArrayList<>(List.of(registro(1, "a"), registro(7, "b"), registro(2, "c"), registro(7, "d"),
+            registro(7, "e")));
+        IndiceIds ids = new IndiceIds();
+        assertEquals(1, ids.posicao("ordens", registros, "7"));
+
+        remover(ids, registros, "7");
+        assertEquals(2, ids.posicao("ordens", registros, "7"));
+        assertEquals("d", ((Map<?, ?>) registros.get(2)).get("cliente"));
+        assertEquals(1, ids.posicao("ordens", registros, "2"));
+
+        remover(ids, registros, "7");
+        assertEquals(2, ids.posicao("ordens", registros, "7"));
+        assertEquals("e", ((Map<?, ?>) registros.get(2)).get("cliente"));
+
+        remover(ids, registros, "7");
+        assertEquals(-1, ids.posicao("ordens", registros, "7"));
+        assertEquals(List.of("a", "c"), clientes(registros));
+    }
+
+    @Test
+    void repetidoIncluidoDepoisTambemEhEncontrado() {
+        List<Object> registros = new ArrayList<>(List.of(registro(7, "a")));
+        IndiceIds ids = new IndiceIds();
+        assertEquals(0, ids.posicao("ordens", registros, "7"));
+        registros.add(registro(7, "b"));
+        ids.incluido("ordens", registros, "7", 1);
+
+        remover(ids, registros, "7");
+        assertEquals(0, ids.posicao("ordens", registros, "7"));
+        assertEquals(List.of("b"), clientes(registros));
+    }
+
+    /**
+     * Remove o registro indexado com o id, como o UserJournal
+     */
+    private static void remover(IndiceIds ids, List<Object> registros, String id) {
+        int posicao = ids.posicao("ordens", registros, id);
+        assertTrue(posicao >= 0, "id " + id + " não encontrado");
+        registros.remove(posicao);
+        ids.removido("ordens", registros, id, posicao);
+    }
+
+    private static Map<String, Object> registro(long id, String cliente) {
+        return Map.of("id", id, "cliente", cliente);
+    }
+
+    private static List<Object> clientes(List<Object> registros) {
+        List<Object> clientes = new ArrayList<>();
+        for (Object registro : registros) {
+            clientes.add(((Map<?, ?>) registro).get("cliente"));
+        }
+        return clientes;
+    }
+}
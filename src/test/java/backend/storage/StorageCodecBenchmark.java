@@ -0,0 +1,68 @@
+package backend.storage;
+
+import backend.DadosSinteticos;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tamanho e tempo de escrita/leitura de cada formato de armazenamento (scartech.storage.formato)
+ * num tenant sintético: 5k ordens, 3k vendas e 500 produtos
+ *
+ * mvn -Pbenchmark test -Dtest=StorageCodecBenchmark [-Dbenchmark.ordens=5000 -Dbenchmark.vendas=3000]
+ */
+class StorageCodecBenchmark {
+    private static final int ORDENS = Integer.getInteger("benchmark.ordens", 5_000);
+    private static final int VENDAS = Integer.getInteger("benchmark.vendas", 3_000);
+    private static final int PRODUTOS = Integer.getInteger("benchmark.produtos", 500);
+    private static final int AQUECIMENTO = 20;
+    private static final int REPETICOES = 50;
+    private static final TypeReference<Map<String, Object>> TIPO = new TypeReference<>() {};
+
+    @Test
+    void compararFormatos() throws IOException {
+        Map<String, Object> documento = DadosSinteticos.documento(ORDENS, VENDAS, PRODUTOS);
+
+        System.out.printf("%-6s %12s %8s %14s %14s%n", "codec", "bytes", "% json", "escrever (ms)", "ler (ms)");
+        long bytesJson = 0;
+        for (StorageCodec codec : StorageCodec.values()) {
+            byte[] bytes = escrever(codec, documento);
+            if (codec == StorageCodec.JSON) {
+                bytesJson = bytes.length;
+            }
+            Map<String, Object> lido = codec.getMapper().readValue(bytes, TIPO);
+            assertEquals(ORDENS, ((List<?>) lido.get("ordens")).size());
+            assertEquals(VENDAS, ((List<?>) lido.get("vendas")).size());
+
+            for (int i = 0; i < AQUECIMENTO; i++) {
+                escrever(codec, documento);
+                codec.getMapper().readValue(bytes, TIPO);
+            }
+            long inicio = System.nanoTime();
+            for (int i = 0; i < REPETICOES; i++) {
+                escrever(codec, documento);
+            }
+            double escrita = (System.nanoTime() - inicio) / 1e6 / REPETICOES;
+            inicio = System.nanoTime();
+            for (int i = 0; i < REPETICOES; i++) {
+                codec.getMapper().readValue(bytes, TIPO);
+            }
+            double leitura = (System.nanoTime() - inicio) / 1e6 / REPETICOES;
+
+            System.out.printf("%-6s %12d %7.0f%% %14.2f %14.2f%n", codec.name().toLowerCase(), bytes.length,
+                bytesJson > 0 ? 100.0 * bytes.length / bytesJson : 100.0, escrita, leitura);
+        }
+    }
+
+    private static byte[] escrever(StorageCodec codec, Map<String, Object> documento) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+        codec.escrever(out, documento);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,105 @@
+package backend.storage;
+
+import backend.DadosSinteticos;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Vazão dos backends de UserDataRepository (arquivo, memoria, h2):
+ *  - anexar com uma operação por chamada (uma requisição de criação)
+ *  - anexar um lote de 10k operações numa chamada (importação)
+ *  - gravar e carregar um documento com 100k ordens
+ *
+ * mvn -Pbenchmark test -Dtest=UserDataRepositoryBenchmark [-Dbenchmark.operacoes=2000 -Dbenchmark.registros=100000]
+ */
+class UserDataRepositoryBenchmark {
+    private static final List<String> COLECOES = List.of("ordens", "vendas", "produtos");
+    private static final int OPERACOES = Integer.getInteger("benchmark.operacoes", 2_000);
+    private static final int LOTE = 10_000;
+    private static final int REGISTROS = Integer.getInteger("benchmark.registros", 100_000);
+
+    @TempDir
+    File diretorio;
+
+    @Test
+    void compararBackends() throws IOException {
+        Map<String, Function<File, UserDataRepository>> backends = new LinkedHashMap<>();
+        backends.put("arquivo", dir -> new FileUserDataRepository(dir, COLECOES, DurableFileWriter.getInstance(),
+            StorageCodec.configurado(), 256 * 1024L));
+        backends.put("memoria", dir -> new InMemoryUserDataRepository(COLECOES));
+        backends.put("h2", dir -> new H2UserDataRepository("jdbc:h2:file:" + new File(dir, "user_data").getAbsolutePath(), COLECOES));
+
+        System.out.printf("%-8s %16s %16s %14s %14s%n", "backend", "1 op/chamada", "lote 10k", "gravar " + REGISTROS, "carregar");
+        for (Map.Entry<String, Function<File, UserDataRepository>> backend : backends.entrySet()) {
+            File dir = new File(diretorio, backend.getKey());
+            UserDataRepository repositorio = backend.getValue().apply(dir);
+            try {
+                System.out.printf("%-8s %12.0f op/s %12.0f op/s %11d ms %11d ms%n", backend.getKey(),
+                    umaPorChamada(repositorio), lote(repositorio), gravar(repositorio), carregar(repositorio));
+            } finally {
+                repositorio.fechar();
+            }
+        }
+    }
+
+    private static double umaPorChamada(UserDataRepository repositorio) throws IOException {
+        repositorio.carregarManifesto("unitario");
+        long inicio = System.nanoTime();
+        for (int i = 0; i < OPERACOES; i++) {
+            UserDataRepository.Anexo anexo = repositorio.anexar("unitario", List.of(add(i)));
+            UserDataRepository.Anexo.aguardar(anexo.getConfirmacao());
+        }
+        double porSegundo = OPERACOES / segundos(inicio);
+        assertEquals(OPERACOES, repositorio.carregarColecao("unitario", "ordens").size());
+        return porSegundo;
+    }
+
+    private static double lote(UserDataRepository repositorio) throws IOException {
+        List<Map<String, Object>> operacoes = new ArrayList<>(LOTE);
+        for (int i = 0; i < LOTE; i++) {
+            operacoes.add(add(i));
+        }
+        repositorio.carregarManifesto("lote");
+        long inicio = System.nanoTime();
+        UserDataRepository.Anexo anexo = repositorio.anexar("lote", operacoes);
+        UserDataRepository.Anexo.aguardar(anexo.getConfirmacao());
+        double porSegundo = LOTE / segundos(inicio);
+        assertEquals(LOTE, repositorio.carregarColecao("lote", "ordens").size());
+        return porSegundo;
+    }
+
+    private static long gravar(UserDataRepository repositorio) throws IOException {
+        Map<String, Object> documento = DadosSinteticos.documento(REGISTROS, 0, 0);
+        repositorio.carregarManifesto("grande");
+        long inicio = System.nanoTime();
+        repositorio.gravar("grande", documento, COLECOES);
+        return (System.nanoTime() - inicio) / 1_000_000;
+    }
+
+    private static long carregar(UserDataRepository repositorio) throws IOException {
+        long inicio = System.nanoTime();
+        repositorio.carregarManifesto("grande");
+        List<Object> ordens = repositorio.carregarColecao("grande", "ordens");
+        long ms = (System.nanoTime() - inicio) / 1_000_000;
+        assertEquals(REGISTROS, ordens.size());
+        return ms;
+    }
+
+    private static Map<String, Object> add(int i) {
+        return Map.of("op", "add", "colecao", "ordens", "registro", DadosSinteticos.ordem(i));
+    }
+
+    private static double segundos(long inicio) {
+        return (System.nanoTime() - inicio) / 1e9;
+    }
+}
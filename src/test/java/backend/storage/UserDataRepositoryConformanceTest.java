@@ -0,0 +1,264 @@
+package backend.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Contrato de UserDataRepository: os backends (arquivo, memoria, h2) precisam se comportar igual para o
+ * UserDataService. Cada backend estende esta classe e só informa como abrir o repositório
+ */
+public abstract class UserDataRepositoryConformanceTest {
+    protected static final List<String> COLECOES = List.of("ordens", "vendas", "produtos");
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    protected File diretorio;
+
+    protected UserDataRepository repositorio;
+
+    /**
+     * Abre o repositório sobre o diretório temporário do teste (chamado de novo para simular um reinício)
+     */
+    protected abstract UserDataRepository criar(File diretorio);
+
+    @BeforeEach
+    void abrir() {
+        repositorio = criar(diretorio);
+    }
+
+    @AfterEach
+    void fechar() {
+        repositorio.fechar();
+    }
+
+    @Test
+    void usuarioSemDadosTemManifestoEColecoesVazios() throws IOException {
+        assertTrue(repositorio.carregarManifesto("ninguem").isEmpty());
+        assertTrue(repositorio.carregarColecao("ninguem", "ordens").isEmpty());
+        assertTrue(repositorio.lerColecaoSomenteLeitura("ninguem", "ordens").isEmpty());
+        assertNull(repositorio.abrirSnapshot("ninguem"));
+        assertFalse(repositorio.listarUsuarios().contains("ninguem"));
+    }
+
+    @Test
+    void gravarECarregarPreservaManifestoEColecoes() throws IOException {
+        repositorio.gravar("u1", documento("Loja 1", 3, List.of(registro(1, "Ana", 1), registro(2, "Bia", 3)),
+            List.of(registro(10, "Caio", 2))), COLECOES);
+
+        Map<String, Object> manifesto = repositorio.carregarManifesto("u1");
+        assertEquals("Loja 1", manifesto.get("nome"));
+        assertEquals(3, Revisoes.doDocumento(manifesto));
+        for (String colecao : COLECOES) {
+            assertFalse(manifesto.containsKey(colecao), "manifesto não deve trazer " + colecao);
+        }
+        assertEquals(List.of("1:Ana:1", "2:Bia:3"), resumo(repositorio.carregarColecao("u1", "ordens")));
+        assertEquals(List.of("10:Caio:2"), resumo(repositorio.carregarColecao("u1", "vendas")));
+        assertTrue(repositorio.carregarColecao("u1", "produtos").isEmpty());
+    }
+
+    @Test
+    void gravarSoSubstituiAsColecoesInformadas() throws IOException {
+        repositorio.gravar("u1", documento("Loja", 2, List.of(registro(1, "Ana", 1)), List.of(registro(10, "Caio", 2))), COLECOES);
+        repositorio.carregarManifesto("u1");
+
+        Map<String, Object> alterado = new LinkedHashMap<>();
+        alterado.put("nome", "Loja");
+        alterado.put(Revisoes.CAMPO_DOCUMENTO, 4);
+        alterado.put("ordens", new ArrayList<>(List.of(registro(1, "Ana", 1), registro(2, "Bia", 4))));
+        repositorio.gravar("u1", alterado, List.of("ordens"));
+
+        assertEquals(4, Revisoes.doDocumento(repositorio.carregarManifesto("u1")));
+        assertEquals(List.of("1:Ana:1", "2:Bia:4"), resumo(repositorio.carregarColecao("u1", "ordens")));
+        assertEquals(List.of("10:Caio:2"), resumo(repositorio.carregarColecao("u1", "vendas")));
+    }
+
+    @Test
+    void anexarAplicaAddUpsertERemove() throws IOException {
+        repositorio.gravar("u1", documento("Loja", 1, List.of(registro(1, "Ana", 1)), List.of()), COLECOES);
+        repositorio.carregarManifesto("u1");
+
+        anexar("u1", add("ordens", registro(2, "Bia", 2)), add("ordens", registro(3, "Caio", 3)));
+        anexar("u1", upsert("ordens", registro(1, "Ana Maria", 4)), remove("ordens", 3, 5), upsert("vendas", registro(10, "Davi", 6)));
+
+        Map<String, Object> manifesto = repositorio.carregarManifesto("u1");
+        assertEquals(6, Revisoes.doDocumento(manifesto));
+        assertEquals(List.of("1:Ana Maria:4", "2:Bia:2"), resumo(repositorio.carregarColecao("u1", "ordens")));
+        assertEquals(List.of("10:Davi:6"), resumo(repositorio.carregarColecao("u1", "vendas")));
+    }
+
+    @Test
+    void idRepetidoAfetaSempreOPrimeiroRegistro() throws IOException {
+        repositorio.carregarManifesto("u1");
+        anexar("u1", add("ordens", registro(7, "a", 1)), add("ordens", registro(7, "b", 2)));
+        anexar("u1", upsert("ordens", registro(7, "c", 3)));
+        assertEquals(List.of("7:c:3", "7:b:2"), resumo(repositorio.carregarColecao("u1", "ordens")));
+
+        anexar("u1", remove("ordens", 7, 4));
+        repositorio.carregarManifesto("u1");
+        assertEquals(List.of("7:b:2"), resumo(repositorio.carregarColecao("u1", "ordens")));
+    }
+
+    @Test
+    void remocaoRegistraTombstoneQueSomeQuandoOIdVolta() throws IOException {
+        repositorio.gravar("u1", documento("Loja", 1, List.of(registro(1, "Ana", 1)), List.of()), COLECOES);
+        repositorio.carregarManifesto("u1");
+
+        anexar("u1", remove("ordens", 1, 2));
+        Map<String, Object> manifesto = repositorio.carregarManifesto("u1");
+        assertEquals(2L, ((Number) Revisoes.removidos(manifesto, "ordens").get("1")).longValue());
+        assertTrue(repositorio.carregarColecao("u1", "ordens").isEmpty());
+
+        anexar("u1", add("ordens", registro(1, "Ana", 3)));
+        manifesto = repositorio.carregarManifesto("u1");
+        assertFalse(Revisoes.removidos(manifesto, "ordens").containsKey("1"));
+        assertEquals(3, Revisoes.doDocumento(manifesto));
+        assertEquals(List.of("1:Ana:3"), resumo(repositorio.carregarColecao("u1", "ordens")));
+    }
+
+    @Test
+    void gravarIncorporaAsOperacoesPendentes() throws IOException {
+        repositorio.carregarManifesto("u1");
+        anexar("u1", add("ordens", registro(1, "Ana", 1)), add("ordens", registro(2, "Bia", 2)));
+
+        Map<String, Object> documento = new LinkedHashMap<>(repositorio.carregarManifesto("u1"));
+        documento.put("ordens", repositorio.carregarColecao("u1", "ordens"));
+        repositorio.gravar("u1", documento, List.of("ordens"));
+
+        // As operações não podem ser reaplicadas sobre o estado que já as contém
+        assertEquals(2, Revisoes.doDocumento(repositorio.carregarManifesto("u1")));
+        assertEquals(List.of("1:Ana:1", "2:Bia:2"), resumo(repositorio.carregarColecao("u1", "ordens")));
+    }
+
+    @Test
+    void leiturasSomenteLeituraVeemOEstadoCarregado() throws IOException {
+        repositorio.gravar("u1", documento("Loja", 2, List.of(registro(1, "Ana", 1), registro(2, "Bia", 2)), List.of()), COLECOES);
+        repositorio.carregarManifesto("u1");
+        anexar("u1", add("ordens", registro(3, "Caio", 3)));
+
+        List<Object> carregada = repositorio.carregarColecao("u1", "ordens");
+        assertEquals(resumo(carregada), resumo(repositorio.lerColecaoSomenteLeitura("u1", "ordens")));
+        assertEquals("Loja", repositorio.lerManifestoSomenteLeitura("u1").get("nome"));
+
+        List<Object> campos = repositorio.lerCamposSomenteLeitura("u1", "ordens", Set.of("cliente"));
+        assertEquals(carregada.size(), campos.size());
+        for (int i = 0; i < campos.size(); i++) {
+            Map<?, ?> recortado = (Map<?, ?>) campos.get(i);
+            Map<?, ?> completo = (Map<?, ?>) carregada.get(i);
+            assertEquals(Set.of("id", "cliente"), recortado.keySet());
+            assertEquals(String.valueOf(completo.get("id")), String.valueOf(recortado.get("id")));
+            assertEquals(completo.get("cliente"), recortado.get("cliente"));
+        }
+    }
+
+    @Test
+    void snapshotTrazOEstadoGravadoESomeComOperacoesPendentes() throws IOException {
+        repositorio.gravar("u1", documento("Loja", 2, List.of(registro(1, "Ana", 1), registro(2, "Bia", 2)), List.of()), COLECOES);
+        repositorio.carregarManifesto("u1");
+
+        UserDataRepository.Snapshot snapshot = repositorio.abrirSnapshot("u1");
+        assumeTrue(snapshot != null, "backend sem cópia direta do estado gravado");
+        try (snapshot) {
+            Map<?, ?> manifesto = objectMapper.readValue(snapshot.getManifesto(), Map.class);
+            assertEquals("Loja", manifesto.get("nome"));
+            List<?> ordens = objectMapper.readValue(snapshot.getColecao("ordens"), List.class);
+            assertEquals(List.of("1:Ana:1", "2:Bia:2"), resumo(ordens));
+        }
+
+        anexar("u1", add("ordens", registro(3, "Caio", 3)));
+        assertNull(repositorio.abrirSnapshot("u1"));
+    }
+
+    @Test
+    void usuariosSaoIsoladosEListados() throws IOException {
+        repositorio.gravar("u1", documento("Loja 1", 1, List.of(registro(1, "Ana", 1)), List.of()), COLECOES);
+        repositorio.carregarManifesto("u2");
+        anexar("u2", add("ordens", registro(1, "Outra", 1)), remove("ordens", 9, 2));
+
+        assertEquals(List.of("1:Ana:1"), resumo(repositorio.carregarColecao("u1", "ordens")));
+        assertEquals(List.of("1:Outra:1"), resumo(repositorio.carregarColecao("u2", "ordens")));
+        assertTrue(Revisoes.removidos(repositorio.carregarManifesto("u1"), "ordens").isEmpty());
+        assertEquals(1, Revisoes.doDocumento(repositorio.carregarManifesto("u1")));
+
+        List<String> usuarios = repositorio.listarUsuarios();
+        assertTrue(usuarios.containsAll(List.of("u1", "u2")), "usuários listados: " + usuarios);
+        List<String> porFragmento = new ArrayList<>();
+        repositorio.listarUsuariosPorFragmento().forEach(porFragmento::addAll);
+        assertEquals(new HashSet<>(usuarios), new HashSet<>(porFragmento));
+    }
+
+    @Test
+    void dadosSobrevivemAoReinicio() throws IOException {
+        assumeTrue(repositorio.isPersistente(), "backend não persistente");
+        repositorio.gravar("u1", documento("Loja", 1, List.of(registro(1, "Ana", 1)), List.of()), COLECOES);
+        repositorio.carregarManifesto("u1");
+        anexar("u1", add("ordens", registro(2, "Bia", 2)), remove("ordens", 1, 3));
+
+        repositorio.fechar();
+        repositorio = criar(diretorio);
+
+        Map<String, Object> manifesto = repositorio.carregarManifesto("u1");
+        assertEquals("Loja", manifesto.get("nome"));
+        assertEquals(3, Revisoes.doDocumento(manifesto));
+        assertTrue(Revisoes.removidos(manifesto, "ordens").containsKey("1"));
+        assertEquals(List.of("2:Bia:2"), resumo(repositorio.carregarColecao("u1", "ordens")));
+        assertTrue(repositorio.listarUsuarios().contains("u1"));
+    }
+
+    @SafeVarargs
+    private void anexar(String userId, Map<String, Object>... operacoes) throws IOException {
+        UserDataRepository.Anexo anexo = repositorio.anexar(userId, Arrays.asList(operacoes));
+        UserDataRepository.Anexo.aguardar(anexo.getConfirmacao());
+    }
+
+    private static Map<String, Object> documento(String nome, long revisao, List<Object> ordens, List<Object> vendas) {
+        Map<String, Object> documento = new LinkedHashMap<>();
+        documento.put("nome", nome);
+        documento.put(Revisoes.CAMPO_DOCUMENTO, revisao);
+        documento.put("ordens", new ArrayList<>(ordens));
+        documento.put("vendas", new ArrayList<>(vendas));
+        documento.put("produtos", new ArrayList<>());
+        return documento;
+    }
+
+    static Map<String, Object> registro(long id, String cliente, long rev) {
+        Map<String, Object> registro = new LinkedHashMap<>();
+        registro.put("id", id);
+        registro.put("cliente", cliente);
+        registro.put(Revisoes.CAMPO_REGISTRO, rev);
+        return registro;
+    }
+
+    private static Map<String, Object> add(String colecao, Map<String, Object> registro) {
+        return Map.of("op", "add", "colecao", colecao, "registro", registro);
+    }
+
+    private static Map<String, Object> upsert(String colecao, Map<String, Object> registro) {
+        return Map.of("op", "upsert", "colecao", colecao, "registro", registro);
+    }
+
+    private static Map<String, Object> remove(String colecao, long id, long rev) {
+        return Map.of("op", "remove", "colecao", colecao, "id", String.valueOf(id), "rev", rev);
+    }
+
+    /**
+     * "id:cliente:rev" de cada registro: compara o conteúdo sem depender do tipo numérico de cada backend
+     */
+    private static List<String> resumo(List<?> registros) {
+        List<String> resumo = new ArrayList<>();
+        for (Object registro : registros) {
+            Map<?, ?> mapa = (Map<?, ?>) registro;
+            resumo.add(mapa.get("id") + ":" + mapa.get("cliente") + ":" + Revisoes.doRegistro(mapa));
+        }
+        return resumo;
+    }
+}